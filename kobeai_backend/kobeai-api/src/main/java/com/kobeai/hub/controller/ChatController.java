@@ -3,12 +3,13 @@ package com.kobeai.hub.controller;
 import com.kobeai.hub.constant.UserConstant;
 import com.kobeai.hub.dto.request.ChatRequest;
 import com.kobeai.hub.dto.response.ApiResponse;
-import com.kobeai.hub.model.AIPlatform;
 import com.kobeai.hub.model.Platform;
 import com.kobeai.hub.model.User;
-import com.kobeai.hub.repository.AIPlatformRepository;
 import com.kobeai.hub.service.ChatService;
 import com.kobeai.hub.service.UserService;
+import com.kobeai.hub.service.platform.AIPlatformRegistry;
+import com.kobeai.hub.service.provider.ChatProviderRegistry;
+import com.kobeai.hub.service.stream.StreamOptions;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -16,8 +17,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import lombok.extern.slf4j.Slf4j;
-import java.util.List;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/chat")
@@ -28,7 +27,8 @@ public class ChatController {
 
     private final ChatService chatService;
     private final UserService userService;
-    private final AIPlatformRepository aiPlatformRepository;
+    private final AIPlatformRegistry platformRegistry;
+    private final ChatProviderRegistry providerRegistry;
 
     @GetMapping("/conversations")
     @Operation(summary = "获取所有会话")
@@ -94,8 +94,17 @@ public class ChatController {
         return chatService.renameConversation(id, title, authHeader);
     }
 
+    @PostMapping("/prepare")
+    @Operation(summary = "预热", description = "输入框获得焦点时调用，提前准备会话上下文并预热平台连接，随后的发送可以更快开始输出")
+    public ApiResponse<?> prepare(@RequestParam(required = false) Long conversationId,
+            @RequestHeader("Authorization") String authHeader,
+            @RequestParam(required = false, defaultValue = "DEEPSEEK") String platformType) {
+        User user = userService.getUserProfile(authHeader);
+        return chatService.prepare(conversationId, user, platformType);
+    }
+
     @PostMapping("/completions")
-    @Operation(summary = "发送消息", description = "发送消息到AI助手并获取回复")
+    @Operation(summary = "发送消息", description = "发送消息到AI助手并获取回复，platformType 为 AUTO 时自动选择最快的可用平台")
     public SseEmitter sendMessage(@RequestBody ChatRequest request,
             @RequestHeader("Authorization") String authHeader, 
             @RequestParam(required = false, defaultValue = "DEEPSEEK") String platformType) {
@@ -106,30 +115,34 @@ public class ChatController {
             // 获取当前用户
             User user = userService.getUserProfile(authHeader);
 
-            // 尝试转换平台类型字符串为枚举
-            Platform platform;
-            try {
-                platform = Platform.valueOf(platformType);
-            } catch (IllegalArgumentException e) {
-                log.error("无效的平台类型: {}", platformType);
-                throw new RuntimeException("无效的平台类型: " + platformType);
-            }
-            
-            // 查找平台
-            List<AIPlatform> allPlatforms = aiPlatformRepository.findAll();
-            
-            // 过滤符合条件的平台（系统平台或用户自己的平台）
-            Optional<AIPlatform> platformOpt = allPlatforms.stream()
-                .filter(p -> p.getType().equals(platform) && 
-                       (p.getUserId() == null || p.getUserId() == 0 || user.getId().equals(p.getUserId())))
-                .findFirst();
-                
-            if (!platformOpt.isPresent()) {
-                throw new RuntimeException("找不到可用的AI平台，或您没有权限使用该平台");
+            if (ChatService.AUTO_PLATFORM.equalsIgnoreCase(platformType)) {
+                // 自动选择平台：至少要有一个已配置密钥的平台
+                if (providerRegistry.availableEndpoints(user.getId()).isEmpty()) {
+                    throw new RuntimeException("找不到可用的AI平台，请先配置平台密钥");
+                }
+            } else {
+                // 尝试转换平台类型字符串为枚举
+                Platform platform;
+                try {
+                    platform = Platform.valueOf(platformType);
+                } catch (IllegalArgumentException e) {
+                    log.error("无效的平台类型: {}", platformType);
+                    throw new RuntimeException("无效的平台类型: " + platformType);
+                }
+
+                // 查找符合条件的平台（用户自己的平台或系统平台）
+                if (!platformRegistry.resolve(platform, user.getId()).isPresent()) {
+                    throw new RuntimeException("找不到可用的AI平台，或您没有权限使用该平台");
+                }
             }
-            
+
             // 调用服务方法，注意参数顺序：conversationId, content, user
-            SseEmitter emitter = chatService.sendMessage(request.getConversationId(), request.getMessage(), user, platformType);
+            StreamOptions options = new StreamOptions();
+            options.setCoalesceChars(request.getCoalesceChars());
+            options.setCoalesceMillis(request.getCoalesceMillis());
+            options.setUseCache(request.getUseCache());
+            SseEmitter emitter = chatService.sendMessage(request.getConversationId(), request.getMessage(), user,
+                    platformType, options);
             log.info("消息发送成功，返回SSE emitter");
             return emitter;
         } catch (Exception e) {
@@ -138,6 +151,16 @@ public class ChatController {
         }
     }
 
+    @GetMapping("/completions/resume")
+    @Operation(summary = "续传回复", description = "断线后根据 Last-Event-ID 重放 AI 回复并继续接收")
+    public SseEmitter resumeMessage(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(required = false) String lastEventId,
+            @RequestHeader("Authorization") String authHeader) {
+        User user = userService.getUserProfile(authHeader);
+        return chatService.resumeStream(lastEventIdHeader != null ? lastEventIdHeader : lastEventId, user);
+    }
+
     @GetMapping("/conversations/{id}/messages")
     @Operation(summary = "获取会话消息")
     public ApiResponse<?> getConversationMessages(@PathVariable Long id,
@@ -41,6 +41,14 @@ public class PlatformController {
         return platformService.deletePlatform(id);
     }
 
+    @Operation(summary = "切换流式直通模式")
+    @PutMapping("/{id}/stream-relay")
+    public ApiResponse<?> updateStreamRelay(
+            @Parameter(description = "平台ID") @PathVariable Long id,
+            @Parameter(description = "是否开启") @RequestParam boolean enabled) {
+        return platformService.updateStreamRelay(id, enabled);
+    }
+
     @Operation(summary = "获取可用AI模型列表")
     @GetMapping("/api/ai-platforms")
     public ApiResponse<?> getAvailableAIPlatforms() {
@@ -0,0 +1,89 @@
+package com.kobeai.hub.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 接口限流过滤器，位于 JWT 认证之后
+ * 按接口类别分别限流：chat（发送消息）、prepare（预热）、conversation（读取会话）、email（发送验证码）。
+ * 已登录请求按用户名限流，未登录的公开接口按客户端地址限流，超出时返回 429 并带上 Retry-After
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final TokenBucketRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String endpointClass = rateLimiter.isEnabled() ? classify(request) : null;
+        if (endpointClass == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String subject = subject(request);
+        long retryAfterMillis = rateLimiter.tryAcquire(endpointClass, subject);
+        if (retryAfterMillis > 0) {
+            log.warn("请求被限流, 接口: {}, 对象: {}, {}ms 后可重试", endpointClass, subject, retryAfterMillis);
+            sendTooManyRequests(response, retryAfterMillis);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private String classify(HttpServletRequest request) {
+        String path = request.getServletPath();
+        String method = request.getMethod();
+        if ("POST".equals(method) && path.equals("/chat/completions")) {
+            return "chat";
+        }
+        if ("POST".equals(method) && path.equals("/chat/prepare")) {
+            return "prepare";
+        }
+        if ("GET".equals(method) && path.startsWith("/chat/conversations")) {
+            return "conversation";
+        }
+        if (path.equals("/user/email/send")) {
+            return "email";
+        }
+        return null;
+    }
+
+    private String subject(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "user:" + authentication.getName();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private void sendTooManyRequests(HttpServletResponse response, long retryAfterMillis) throws IOException {
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf((retryAfterMillis + 999) / 1000));
+        response.setContentType("application/json;charset=UTF-8");
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("code", 429);
+        body.put("message", "请求过于频繁，请稍后重试");
+        response.getWriter().write(objectMapper.writeValueAsString(body));
+    }
+}
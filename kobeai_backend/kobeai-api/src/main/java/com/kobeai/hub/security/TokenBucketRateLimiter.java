@@ -0,0 +1,171 @@
+package com.kobeai.hub.security;
+
+import com.kobeai.hub.constant.RedisKeyConstant;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于 Redis 的分布式令牌桶限流
+ * 每个 (接口类别, 用户) 一个桶，取令牌与补充令牌在 Lua 脚本中原子完成，时间以 Redis 服务器时间为准，各节点共享同一个桶。
+ * 桶内余量充足（取走一批后仍不少于一半容量）时一次多取 local-batch 个令牌放在本地，
+ * 随后的请求在 local-ttl-ms 内直接消耗本地令牌，不再访问 Redis；未用完的本地令牌过期作废，限流只会更严格不会放宽。
+ * Redis 不可用时放行请求
+ *
+ * 配置项（可按接口类别覆盖，如 security.rate-limit.chat.capacity）：
+ * security.rate-limit.enabled / capacity / refill-rate / local-batch / local-ttl-ms
+ */
+@Slf4j
+@Component
+public class TokenBucketRateLimiter {
+
+    private static final String PREFIX = "security.rate-limit.";
+
+    // 返回值：大于 0 为取到的令牌数，否则为需要等待的毫秒数（取负）
+    private static final RedisScript<Long> SCRIPT = new DefaultRedisScript<>(
+            "local capacity = tonumber(ARGV[1])\n"
+                    + "local rate = tonumber(ARGV[2])\n"
+                    + "local wanted = tonumber(ARGV[3])\n"
+                    + "local time = redis.call('TIME')\n"
+                    + "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)\n"
+                    + "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')\n"
+                    + "local tokens = tonumber(bucket[1]) or capacity\n"
+                    + "local ts = tonumber(bucket[2]) or now\n"
+                    + "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000)\n"
+                    + "local granted = 0\n"
+                    + "if tokens >= 1 then\n"
+                    + "  granted = 1\n"
+                    + "  if wanted > 1 and tokens - wanted >= capacity / 2 then granted = wanted end\n"
+                    + "  tokens = tokens - granted\n"
+                    + "end\n"
+                    + "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)\n"
+                    + "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate * 1000) + 1000)\n"
+                    + "if granted > 0 then return granted end\n"
+                    + "return -math.max(1, math.ceil((1 - tokens) * 1000 / rate))\n",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+    private final Map<String, LocalTokens> localTokens = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+    private final int localBatch;
+    private final long localTtlMillis;
+    private final int maxLocalEntries;
+
+    public TokenBucketRateLimiter(StringRedisTemplate redisTemplate, Environment environment,
+            MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.enabled = environment.getProperty(PREFIX + "enabled", Boolean.class, true);
+        this.localBatch = environment.getProperty(PREFIX + "local-batch", Integer.class, 4);
+        this.localTtlMillis = environment.getProperty(PREFIX + "local-ttl-ms", Long.class, 1000L);
+        this.maxLocalEntries = environment.getProperty(PREFIX + "local-max-entries", Integer.class, 10000);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 取一个令牌
+     *
+     * @param endpointClass 接口类别，如 chat
+     * @param subject       限流对象，如 user:{用户名} 或 ip:{地址}
+     * @return 0 表示放行，否则为建议的重试等待毫秒数
+     */
+    public long tryAcquire(String endpointClass, String subject) {
+        String key = RedisKeyConstant.RATE_LIMIT_KEY + endpointClass + ":" + subject;
+        LocalTokens local = localTokens.get(key);
+        if (local != null && local.tryTake()) {
+            record(endpointClass, "local");
+            return 0;
+        }
+
+        Limit limit = limits.computeIfAbsent(endpointClass, this::loadLimit);
+        int wanted = localBatch > 0 ? localBatch + 1 : 1;
+        Long result;
+        try {
+            result = redisTemplate.execute(SCRIPT, Collections.singletonList(key),
+                    String.valueOf(limit.capacity), String.valueOf(limit.refillRate), String.valueOf(wanted));
+        } catch (RuntimeException e) {
+            log.warn("限流检查失败，放行请求: {}", e.getMessage());
+            record(endpointClass, "error");
+            return 0;
+        }
+        if (result == null || result > 0) {
+            if (result != null && result > 1) {
+                storeLocal(key, (int) (result - 1));
+            }
+            record(endpointClass, "allowed");
+            return 0;
+        }
+        record(endpointClass, "rejected");
+        return -result;
+    }
+
+    private void storeLocal(String key, int tokens) {
+        long now = System.currentTimeMillis();
+        if (localTokens.size() >= maxLocalEntries) {
+            localTokens.values().removeIf(entry -> entry.expiresAt <= now);
+            if (localTokens.size() >= maxLocalEntries) {
+                return;
+            }
+        }
+        localTokens.put(key, new LocalTokens(tokens, now + localTtlMillis));
+    }
+
+    private Limit loadLimit(String endpointClass) {
+        int globalCapacity = environment.getProperty(PREFIX + "capacity", Integer.class, 100);
+        double globalRate = environment.getProperty(PREFIX + "refill-rate", Double.class, 1.0);
+        int capacity = environment.getProperty(PREFIX + endpointClass + ".capacity", Integer.class, globalCapacity);
+        double refillRate = environment.getProperty(PREFIX + endpointClass + ".refill-rate", Double.class,
+                globalRate);
+        Limit limit = new Limit(Math.max(1, capacity), Math.max(0.001, refillRate));
+        log.info("接口限流: {}, 容量: {}, 每秒补充: {}", endpointClass, limit.capacity, limit.refillRate);
+        return limit;
+    }
+
+    private void record(String endpointClass, String result) {
+        meterRegistry.counter("security.rate-limit", "class", endpointClass, "result", result).increment();
+    }
+
+    private static final class Limit {
+        private final int capacity;
+        private final double refillRate;
+
+        private Limit(int capacity, double refillRate) {
+            this.capacity = capacity;
+            this.refillRate = refillRate;
+        }
+    }
+
+    /**
+     * 从 Redis 预取、在本节点直接消耗的令牌
+     */
+    private static final class LocalTokens {
+        private final AtomicInteger remaining;
+        private final long expiresAt;
+
+        private LocalTokens(int remaining, long expiresAt) {
+            this.remaining = new AtomicInteger(remaining);
+            this.expiresAt = expiresAt;
+        }
+
+        boolean tryTake() {
+            return System.currentTimeMillis() < expiresAt && remaining.getAndDecrement() > 0;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.kobeai.hub.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kobeai.hub.constant.RedisKeyConstant;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 接口限流测试：本地预取的令牌不再访问 Redis，令牌用完返回 429，Redis 不可用时放行
+ */
+class RateLimitFilterTest {
+
+    private StringRedisTemplate redisTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private RateLimitFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("security.rate-limit.local-batch", "2")
+                .withProperty("security.rate-limit.local-ttl-ms", "60000");
+        filter = new RateLimitFilter(new TokenBucketRateLimiter(redisTemplate, environment, meterRegistry),
+                new ObjectMapper());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("alice", null, Collections.emptyList()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testPrefetchedTokensAreConsumedLocally() throws Exception {
+        // 一次取到 3 个令牌：当前请求用 1 个，其余 2 个留在本地
+        stubScript(3L);
+        FilterChain chain = mock(FilterChain.class);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, doFilter(chat(), chain).getStatus());
+        }
+
+        verify(chain, times(3)).doFilter(any(), any());
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), eq(Collections.singletonList(
+                RedisKeyConstant.RATE_LIMIT_KEY + "chat:user:alice")), any(), any(), any());
+        assertEquals(2.0, meterRegistry.get("security.rate-limit").tag("result", "local").counter().count());
+    }
+
+    @Test
+    void testExhaustedBucketReturnsTooManyRequests() throws Exception {
+        stubScript(-1500L);
+        FilterChain chain = mock(FilterChain.class);
+
+        MockHttpServletResponse response = doFilter(chat(), chain);
+
+        assertEquals(429, response.getStatus());
+        assertEquals("2", response.getHeader("Retry-After"));
+        assertTrue(response.getContentAsString().contains("429"));
+        verifyNoInteractions(chain);
+    }
+
+    @Test
+    void testRedisFailureLetsRequestThrough() throws Exception {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        FilterChain chain = mock(FilterChain.class);
+
+        assertEquals(200, doFilter(chat(), chain).getStatus());
+        verify(chain).doFilter(any(), any());
+    }
+
+    @Test
+    void testUnclassifiedPathIsNotLimited() throws Exception {
+        FilterChain chain = mock(FilterChain.class);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/platforms");
+        request.setServletPath("/platforms");
+
+        doFilter(request, chain);
+
+        verify(chain).doFilter(any(), any());
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubScript(Long result) {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenReturn(result);
+    }
+
+    private MockHttpServletResponse doFilter(MockHttpServletRequest request, FilterChain chain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest chat() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/chat/completions");
+        request.setServletPath("/chat/completions");
+        return request;
+    }
+}
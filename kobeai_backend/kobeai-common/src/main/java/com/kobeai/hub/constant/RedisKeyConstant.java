@@ -8,6 +8,19 @@ public class RedisKeyConstant {
     // Message related keys
     public static final String CHAT_MESSAGES_KEY = "chat:messages:"; // 聊天记录缓存key前缀
     public static final String USER_CONVERSATIONS_KEY = "user:conversations:"; // 用户会话列表缓存key前缀
+    public static final String CHAT_STREAM_KEY = "chat:stream:"; // AI回复流式输出日志key前缀
+    public static final String CHAT_STREAM_READER_KEY = "chat:stream:reader:"; // 续传连接标记key前缀
+    public static final String COMPLETION_CACHE_KEY = "completion:cache:"; // 完全相同请求的回复缓存key前缀
+    public static final String COMPLETION_CACHE_INDEX_KEY = "completion:cache:index"; // 回复缓存写入时间索引（有序集合）
+
+    // Platform related keys
+    public static final String PLATFORM_INVALIDATE_CHANNEL = "platform:invalidate"; // 平台配置变更广播频道
+
+    // Security related keys
+    public static final String RATE_LIMIT_KEY = "rate:limit:"; // 令牌桶限流key前缀，后接 {接口类别}:{用户或IP}
+
+    // ID related keys
+    public static final String ID_NODE_KEY = "id:node:"; // ID 生成器节点号租约key前缀，后接节点号
 
     // System related keys
     public static final String SYSTEM_ANNOUNCEMENT_KEY = "system:announcement"; // 系统公告缓存key
@@ -11,4 +11,10 @@ public class ChatRequest {
     private String message;
     private String platformType; // DEEPSEEK, CHATGPT, CLAUDE
     private Long conversationId; // 可选，用于继续对话
+    @Schema(description = "可选，流式输出合并的字符数阈值，0 表示逐条发送")
+    private Integer coalesceChars;
+    @Schema(description = "可选，流式输出合并的最长等待毫秒数，0 表示逐条发送")
+    private Integer coalesceMillis;
+    @Schema(description = "可选，是否使用回复缓存，false 表示跳过缓存重新生成，不传时使用服务端配置")
+    private Boolean useCache;
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.kobeai.hub.id;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标注在实体主键上，插入前由 {@link SnowflakeIdGenerator} 分配 ID，
+ * 不依赖数据库自增，Hibernate 可以按 hibernate.jdbc.batch_size 批量插入
+ */
+@IdGeneratorType(SnowflakeIdentifierGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface SnowflakeId {
+}
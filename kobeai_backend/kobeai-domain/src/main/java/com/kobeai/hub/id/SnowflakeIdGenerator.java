@@ -0,0 +1,153 @@
+package com.kobeai.hub.id;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 按时间递增的 ID 生成器（Snowflake 布局）
+ * ID 由 41 位毫秒时间戳（自 2024-01-01 起，约 69 年）、5 位节点号与 7 位序列号组成，共 53 位，
+ * 存放在 64 位的 BIGINT 中，同时保证前端 JavaScript 的 Number 能精确表示。
+ * 每个节点每毫秒最多分配 128 个 ID，用完时等待下一毫秒。
+ * 时钟回拨不超过 maxBackwardMillis 时等待时钟追上；回拨更多时沿用上次的时间戳继续分配，
+ * ID 仍然递增且不重复，只是暂时超前于真实时间，直到时钟追上。
+ * 节点号来自租约时，租约到期前未续期或已被释放则拒绝分配 ID，直到重新持有租约，
+ * 避免两个节点使用同一节点号
+ */
+@Slf4j
+public final class SnowflakeIdGenerator {
+
+    public static final int NODE_BITS = 5;
+    public static final int SEQUENCE_BITS = 7;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    public static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final int NO_NODE = -1;
+
+    private static volatile SnowflakeIdGenerator shared;
+
+    private final LongSupplier clock;
+    private final long maxBackwardMillis;
+    // 以下字段只在持有生成器锁时访问
+    private int nodeId;
+    // 租约到期时刻（System.nanoTime），固定节点号时不检查
+    private boolean leased;
+    private long leaseDeadline;
+    private long lastTimestamp = -1;
+    private long sequence;
+    private boolean drifting;
+
+    public SnowflakeIdGenerator(int nodeId, long maxBackwardMillis) {
+        this(nodeId, maxBackwardMillis, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(int nodeId, long maxBackwardMillis, LongSupplier clock) {
+        this.nodeId = checkNodeId(nodeId);
+        this.maxBackwardMillis = Math.max(0, maxBackwardMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * 供 Hibernate 等无法注入 Bean 的调用方使用的全局生成器，启动时由节点号租约安装
+     *
+     * @throws IllegalStateException 尚未安装
+     */
+    public static SnowflakeIdGenerator shared() {
+        SnowflakeIdGenerator generator = shared;
+        if (generator == null) {
+            throw new IllegalStateException("ID 生成器尚未分配节点号");
+        }
+        return generator;
+    }
+
+    public static void install(SnowflakeIdGenerator generator) {
+        shared = generator;
+    }
+
+    /**
+     * @throws IllegalStateException 未持有节点号或租约已到期
+     */
+    public synchronized long nextId() {
+        if (nodeId == NO_NODE) {
+            throw new IllegalStateException("ID 生成器未持有节点号，暂停分配 ID");
+        }
+        if (leased && System.nanoTime() - leaseDeadline >= 0) {
+            throw new IllegalStateException("ID 节点号 " + nodeId + " 的租约已到期，暂停分配 ID");
+        }
+        long now = advanceTo(lastTimestamp);
+        if (now == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                now = advanceTo(lastTimestamp + 1);
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTimestamp = now;
+        return ((now - EPOCH) << (NODE_BITS + SEQUENCE_BITS)) | ((long) nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * 使用固定节点号，不检查租约；已分配的 ID 不受影响
+     */
+    public synchronized void setNodeId(int nodeId) {
+        this.nodeId = checkNodeId(nodeId);
+        this.leased = false;
+    }
+
+    /**
+     * 持有节点号租约直到 deadlineNanos（System.nanoTime），到期前需再次调用续期
+     */
+    public synchronized void lease(int nodeId, long deadlineNanos) {
+        this.nodeId = checkNodeId(nodeId);
+        this.leased = true;
+        this.leaseDeadline = deadlineNanos;
+    }
+
+    /**
+     * 租约已丢失，重新持有前拒绝分配 ID
+     */
+    public synchronized void release() {
+        this.nodeId = NO_NODE;
+        this.leased = false;
+    }
+
+    /**
+     * @return 当前节点号，未持有时为 -1
+     */
+    public synchronized int getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 返回不早于 target 的时间戳：时钟落后不超过 maxBackwardMillis 时等待，落后更多时直接使用 target
+     */
+    private long advanceTo(long target) {
+        long now = clock.getAsLong();
+        while (now < target) {
+            if (target - now > maxBackwardMillis) {
+                if (!drifting) {
+                    drifting = true;
+                    log.warn("检测到时钟回拨 {} ms，沿用上次的时间戳继续分配 ID", target - now);
+                }
+                return target;
+            }
+            Thread.onSpinWait();
+            now = clock.getAsLong();
+        }
+        if (drifting) {
+            drifting = false;
+            log.info("时钟已追上 ID 生成器的时间戳");
+        }
+        return now;
+    }
+
+    private static int checkNodeId(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("节点号超出范围 [0, " + MAX_NODE_ID + "]: " + nodeId);
+        }
+        return nodeId;
+    }
+}
@@ -0,0 +1,15 @@
+package com.kobeai.hub.id;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+
+/**
+ * {@link SnowflakeId} 对应的 Hibernate 主键生成器
+ */
+public class SnowflakeIdentifierGenerator implements IdentifierGenerator {
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return SnowflakeIdGenerator.shared().nextId();
+    }
+}
@@ -32,6 +32,28 @@ public class AIPlatform {
     @Column(nullable = false)
     private boolean enabled = true;
 
+    /**
+     * 模型名称，为空时使用该平台的默认模型
+     */
+    private String model;
+
+    /**
+     * 单次回复的最大 token 数，为空时使用该平台的默认值
+     */
+    @Column(name = "max_tokens")
+    private Integer maxTokens;
+
+    /**
+     * 采样温度，为空时使用该平台的默认值
+     */
+    private Double temperature;
+
+    /**
+     * 流式直通模式：开启后上游 data 负载原样转发给前端，不再重新组装 JSON
+     */
+    @Column(name = "stream_relay", nullable = false)
+    private boolean streamRelay = false;
+
     @Column(nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
 
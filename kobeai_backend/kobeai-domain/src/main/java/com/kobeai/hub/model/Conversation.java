@@ -2,6 +2,7 @@ package com.kobeai.hub.model;
 
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.kobeai.hub.id.SnowflakeId;
 import lombok.Data;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
@@ -15,7 +16,7 @@ import org.hibernate.annotations.OnDeleteAction;
 @Table(name = "conversations")
 public class Conversation {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @Column
@@ -34,6 +35,46 @@ public class Conversation {
     @Column(nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
 
+    /**
+     * 会话中各消息 token 数之和，只通过 {@code ConversationRepository.addTokens} 原子累加
+     */
+    @Column(name = "token_count", insertable = false, updatable = false, columnDefinition = "bigint default 0")
+    private Long tokenCount;
+
+    /**
+     * 平台实际计费的 token 累计（每次请求的 usage.total_tokens），只通过 {@code ConversationRepository.addTokens} 原子累加
+     */
+    @Column(name = "usage_tokens", insertable = false, updatable = false, columnDefinition = "bigint default 0")
+    private Long usageTokens;
+
+    /**
+     * 早期对话的滚动摘要，由后台任务增量更新，只通过 {@code ConversationRepository.updateSummary} 写入
+     */
+    @Column(name = "summary", columnDefinition = "TEXT", insertable = false, updatable = false)
+    private String summary;
+
+    /**
+     * 摘要版本号，每次更新加一，用于并发更新时的乐观校验
+     */
+    @Column(name = "summary_version", insertable = false, updatable = false, columnDefinition = "int default 0")
+    private Integer summaryVersion;
+
+    /**
+     * 已并入摘要的最后一条消息 ID，之后的消息以原文作为上下文
+     */
+    @Column(name = "summary_until_id", insertable = false, updatable = false)
+    private Long summaryUntilMessageId;
+
+    @Column(name = "summary_tokens", insertable = false, updatable = false)
+    private Integer summaryTokens;
+
+    /**
+     * 会话中的消息数，新建时为 0，之后只在写入一轮对话时原子累加，用于判断是否为首条消息；
+     * 为空表示会话创建于引入该计数之前，数量未知
+     */
+    @Column(name = "message_count", updatable = false)
+    private Integer messageCount = 0;
+
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true)
     @OnDelete(action = OnDeleteAction.CASCADE)
     @JsonManagedReference
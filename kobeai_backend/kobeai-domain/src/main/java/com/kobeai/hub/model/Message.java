@@ -1,5 +1,6 @@
 package com.kobeai.hub.model;
 
+import com.kobeai.hub.id.SnowflakeId;
 import lombok.Data;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
@@ -10,7 +11,7 @@ import com.fasterxml.jackson.annotation.JsonBackReference;
 @Table(name = "messages")
 public class Message {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -28,6 +29,25 @@ public class Message {
     @Column(name = "content", columnDefinition = "TEXT")
     private String content;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 16)
+    private Status status = Status.COMPLETED;
+
+    /**
+     * 消息内容的 token 数：AI 回复优先取平台返回的 usage.completion_tokens，否则由本地估算
+     */
+    @Column(name = "token_count")
+    private Integer tokenCount;
+
+    /**
+     * 生成该回复的请求中，提示词命中 / 未命中平台前缀缓存的 token 数，仅 AI 回复且平台返回时记录
+     */
+    @Column(name = "cache_hit_tokens")
+    private Integer cacheHitTokens;
+
+    @Column(name = "cache_miss_tokens")
+    private Integer cacheMissTokens;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -43,4 +63,14 @@ public class Message {
         USER, // 用户消息
         ASSISTANT // AI助手消息
     }
+
+    /**
+     * 消息状态枚举
+     */
+    public enum Status {
+        COMPLETED, // 正常完成
+        TRUNCATED, // 客户端断开、上游超时或服务停止，只保存了部分内容
+        ERROR, // 生成失败
+        STREAMING // 生成中，内容为最近一次检查点；节点崩溃遗留的在下次启动时结束
+    }
 }
\ No newline at end of file
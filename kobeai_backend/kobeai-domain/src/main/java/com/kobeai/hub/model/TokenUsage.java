@@ -0,0 +1,48 @@
+package com.kobeai.hub.model;
+
+import lombok.Data;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 用户每日的 token 用量，每个平台一行
+ * 由 UsageMeter 在内存中聚合后定期批量累加，不随每条消息写入
+ */
+@Data
+@Entity
+@Table(name = "token_usage", uniqueConstraints = @UniqueConstraint(name = "uk_token_usage_user_platform_date",
+        columnNames = { "user_id", "platform", "usage_date" }))
+public class TokenUsage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false, length = 32)
+    private String platform;
+
+    @Column(name = "usage_date", nullable = false)
+    private LocalDate usageDate;
+
+    @Column(name = "prompt_tokens", nullable = false)
+    private Long promptTokens = 0L;
+
+    @Column(name = "completion_tokens", nullable = false)
+    private Long completionTokens = 0L;
+
+    @Column(name = "request_count", nullable = false)
+    private Long requestCount = 0L;
+
+    @Column(name = "cache_hit_tokens", nullable = false)
+    private Long cacheHitTokens = 0L;
+
+    @Column(name = "cache_miss_tokens", nullable = false)
+    private Long cacheMissTokens = 0L;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
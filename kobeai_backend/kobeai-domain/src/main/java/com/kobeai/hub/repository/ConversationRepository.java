@@ -3,7 +3,10 @@ package com.kobeai.hub.repository;
 import com.kobeai.hub.model.Conversation;
 import com.kobeai.hub.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -14,5 +17,48 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
 
     Optional<Conversation> findFirstByUserOrderByCreatedAtDesc(User user);
 
+    Optional<Conversation> findByIdAndUserId(Long id, Long userId);
+
     List<Conversation> findByUserOrderByCreatedAtDesc(User user);
+
+    /**
+     * 只更新会话标题，不覆盖其他字段
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Conversation c SET c.title = :title WHERE c.id = :conversationId")
+    int updateTitle(Long conversationId, String title);
+
+    /**
+     * 清空会话消息后把消息数归零，下一条消息重新生成标题
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Conversation c SET c.messageCount = 0 WHERE c.id = :conversationId")
+    int resetMessageCount(Long conversationId);
+
+    /**
+     * 原子累加会话的 token 统计
+     *
+     * @param tokens      新增消息的 token 数
+     * @param usageTokens 平台计费的 token 数
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Conversation c SET c.tokenCount = COALESCE(c.tokenCount, 0) + :tokens, "
+            + "c.usageTokens = COALESCE(c.usageTokens, 0) + :usageTokens WHERE c.id = :conversationId")
+    int addTokens(Long conversationId, long tokens, long usageTokens);
+
+    /**
+     * 更新滚动摘要，版本号与预期不一致（已被其他任务更新）时不做修改
+     *
+     * @return 更新的行数，0 表示版本冲突
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Conversation c SET c.summary = :summary, c.summaryTokens = :summaryTokens, "
+            + "c.summaryUntilMessageId = :untilMessageId, c.summaryVersion = COALESCE(c.summaryVersion, 0) + 1 "
+            + "WHERE c.id = :conversationId AND COALESCE(c.summaryVersion, 0) = :expectedVersion")
+    int updateSummary(Long conversationId, String summary, int summaryTokens, Long untilMessageId,
+            int expectedVersion);
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -42,6 +43,22 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
         @Query(value = "SELECT * FROM messages WHERE conversation_id = :conversationId ORDER BY created_at DESC LIMIT :limit", nativeQuery = true)
         List<Message> findRecentMessages(Long conversationId, int limit);
 
+        /**
+         * 按主键更新 AI 回复的内容、状态与 token 统计，不先读取实体
+         */
+        @Modifying
+        @Transactional
+        @Query("UPDATE Message m SET m.content = :content, m.status = :status, m.tokenCount = :tokenCount, "
+                        + "m.cacheHitTokens = :cacheHitTokens, m.cacheMissTokens = :cacheMissTokens WHERE m.id = :id")
+        int updateReply(Long id, String content, Message.Status status, Integer tokenCount, Integer cacheHitTokens,
+                        Integer cacheMissTokens);
+
+        /**
+         * 获取会话中指定消息之后的全部消息（按时间正序）
+         */
+        @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId AND m.id > :afterId ORDER BY m.id ASC")
+        List<Message> findMessagesAfter(Long conversationId, Long afterId);
+
         /**
          * 根据会话对象获取消息，按创建时间升序排序
          */
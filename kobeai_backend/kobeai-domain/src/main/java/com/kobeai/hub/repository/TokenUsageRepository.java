@@ -0,0 +1,21 @@
+package com.kobeai.hub.repository;
+
+import com.kobeai.hub.model.TokenUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface TokenUsageRepository extends JpaRepository<TokenUsage, Long> {
+    List<TokenUsage> findByUserIdAndUsageDateBetweenOrderByUsageDateDesc(Long userId, LocalDate from, LocalDate to);
+
+    /**
+     * 用户某一天在各平台已入库的 token 总数
+     */
+    @Query("SELECT COALESCE(SUM(u.promptTokens + u.completionTokens), 0) FROM TokenUsage u "
+            + "WHERE u.userId = :userId AND u.usageDate = :usageDate")
+    long sumTokens(Long userId, LocalDate usageDate);
+}
@@ -0,0 +1,25 @@
+package com.kobeai.hub.service.AI;
+
+import com.kobeai.hub.model.Message;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.model.User;
+import com.kobeai.hub.service.context.ConversationHistory;
+import com.kobeai.hub.service.generation.PreflightTrace;
+import com.kobeai.hub.service.stream.StreamOptions;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface ChatGenerationService {
+
+    /**
+     * 流式生成 AI 回复
+     *
+     * @param platform 平台类型，为空时自动选择最快的可用平台
+     * @param history  会话历史：滚动摘要 + 摘要之后的最近消息，按 token 预算裁剪后作为上下文；
+     *                 可以尚未读取完成，组装上下文时才等待
+     * @param trace    请求的首 token 耗时分解，前置阶段的耗时记录在其中
+     */
+    SseEmitter sendMessage(Platform platform, String message, CompletableFuture<ConversationHistory> history,
+            Message aiMessage, User user, StreamOptions options, PreflightTrace trace);
+}
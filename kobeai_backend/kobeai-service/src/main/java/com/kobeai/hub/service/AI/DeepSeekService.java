@@ -2,6 +2,7 @@ package com.kobeai.hub.service.AI;
 
 import com.kobeai.hub.model.Message;
 import com.kobeai.hub.model.User;
+import com.kobeai.hub.service.stream.StreamOptions;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 public interface DeepSeekService {
@@ -9,5 +10,5 @@ public interface DeepSeekService {
 
     void close();
 
-    SseEmitter sendMessage(String message, Message aiMessage, User user);
+    SseEmitter sendMessage(String message, Message aiMessage, User user, StreamOptions options);
 }
\ No newline at end of file
@@ -3,11 +3,18 @@ package com.kobeai.hub.service;
 import com.kobeai.hub.dto.response.ApiResponse;
 import com.kobeai.hub.model.Message;
 import com.kobeai.hub.model.User;
+import com.kobeai.hub.service.stream.StreamOptions;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.time.LocalDateTime;
 import java.util.List;
 
 public interface ChatService {
+
+    /**
+     * 平台类型参数取该值时由路由器自动选择最快的可用平台
+     */
+    String AUTO_PLATFORM = "AUTO";
+
     ApiResponse<?> getConversations(String authHeader);
 
     ApiResponse<?> getConversationById(Long id, String authHeader);
@@ -22,15 +29,36 @@ public interface ChatService {
 
     ApiResponse<?> renameConversation(Long id, String title, String authHeader);
 
+    /**
+     * 预热：输入框获得焦点时调用，提前准备会话上下文并预热到平台的连接，随后的发送可以更快开始输出
+     *
+     * @param conversationId 即将发送消息的会话ID，可为空
+     * @param user           当前用户
+     * @param platformType   平台类型，AUTO 表示自动选择
+     */
+    ApiResponse<?> prepare(Long conversationId, User user, String platformType);
+
     /**
      * 发送消息并获取AI回复
      * 
      * @param conversationId 会话ID
      * @param content        消息内容
      * @param user           发送消息的用户
+     * @param platformType   平台类型，AUTO 表示自动选择
+     * @param options        流式输出选项
      * @return SSE发射器，用于流式返回AI回复
      */
-    SseEmitter sendMessage(Long conversationId, String content, User user, String platformType);
+    SseEmitter sendMessage(Long conversationId, String content, User user, String platformType,
+            StreamOptions options);
+
+    /**
+     * 断线续传：从 Last-Event-ID 之后重放 AI 回复，并继续接收仍在生成的内容
+     *
+     * @param lastEventId 客户端收到的最后一个事件 id，格式为 {messageId}-{序号}
+     * @param user        当前用户
+     * @return SSE发射器
+     */
+    SseEmitter resumeStream(String lastEventId, User user);
 
     /**
      * 获取指定会话的最近消息
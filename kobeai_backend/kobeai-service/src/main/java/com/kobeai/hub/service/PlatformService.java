@@ -8,5 +8,6 @@ public interface PlatformService {
     ApiResponse<?> addPlatform(String description, String apiKey, String baseUrl);
     ApiResponse<?> listPlatforms();
     ApiResponse<?> deletePlatform(Long id);
+    ApiResponse<?> updateStreamRelay(Long id, boolean enabled);
     List<Map<String, Object>> listEnabledPlatformsSimple();
 }
\ No newline at end of file
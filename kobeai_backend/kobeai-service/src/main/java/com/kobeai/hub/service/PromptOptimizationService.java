@@ -15,6 +15,15 @@ public interface PromptOptimizationService {
      */
     String optimizePrompt(String content, PromptTemplate template, Map<String, Object> variables);
 
+    /**
+     * 取出模板中除 {{content}} 以外的指令部分（已替换变量），用于稳定前缀布局下单独作为系统消息发送
+     * 
+     * @param template  使用的模板
+     * @param variables 变量值
+     * @return 模板指令，模板为空时返回 null
+     */
+    String templateInstructions(PromptTemplate template, Map<String, Object> variables);
+
     /**
      * 压缩上下文内容
      * 
@@ -25,10 +34,10 @@ public interface PromptOptimizationService {
     String compressContext(String context, int maxTokens);
 
     /**
-     * 估算 Token 数量
+     * 计算 Token 数量（本地 BPE 分词，默认词表）
      * 
      * @param content 内容
-     * @return 预估的 token 数量
+     * @return token 数量
      */
     int estimateTokens(String content);
 
@@ -40,4 +49,11 @@ public interface PromptOptimizationService {
      * @return 最适合的模板
      */
     PromptTemplate findBestTemplate(String type, String content);
+
+    /**
+     * 预先读取某类型的候选模板，短时间内的 findBestTemplate 直接使用，不再查询数据库
+     * 
+     * @param type 模板类型
+     */
+    void preloadTemplates(String type);
 }
\ No newline at end of file
@@ -0,0 +1,286 @@
+package com.kobeai.hub.service.cache;
+
+import com.kobeai.hub.constant.RedisKeyConstant;
+import com.kobeai.hub.service.stream.SseCoalescer;
+import com.kobeai.hub.service.stream.StreamOptions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 完全相同请求的回复缓存
+ * 以 (模型, 对话消息, temperature, max_tokens) 的哈希为键保存完整回复，消息内容按空白归一化，
+ * 命中时不再请求平台，按小块定时写出以模拟正常的流式输出。
+ * 定时线程只负责触发，每一块在回放线程池（有界队列，提交不阻塞）中写出；
+ * 同一次回放上一块尚未写完（慢客户端）时跳过本次触发，线程池已满时顺延到下一次触发。
+ * 缓存条目带 TTL，并通过按写入时间排序的索引限制总条数
+ *
+ * 配置项：ai.cache.completion.enabled / ttl-seconds / max-entries / max-entry-chars /
+ * replay-chunk-chars / replay-interval-ms / replay-threads / replay-queue
+ */
+@Slf4j
+@Component
+public class CompletionCache {
+
+    private final StringRedisTemplate redisTemplate;
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor replayExecutor;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    // 默认关闭，开启后单次请求仍可通过 useCache=false 跳过
+    @Value("${ai.cache.completion.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ai.cache.completion.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    @Value("${ai.cache.completion.max-entries:10000}")
+    private long maxEntries;
+
+    @Value("${ai.cache.completion.max-entry-chars:20000}")
+    private int maxEntryChars;
+
+    @Value("${ai.cache.completion.replay-chunk-chars:4}")
+    private int replayChunkChars;
+
+    @Value("${ai.cache.completion.replay-interval-ms:20}")
+    private long replayIntervalMillis;
+
+    public CompletionCache(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+            @Value("${ai.cache.completion.replay-threads:4}") int replayThreads,
+            @Value("${ai.cache.completion.replay-queue:256}") int replayQueue) {
+        this.redisTemplate = redisTemplate;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-cache-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int threads = Math.max(1, replayThreads);
+        AtomicInteger counter = new AtomicInteger();
+        // 队列满时直接拒绝，提交方（定时线程）不等待
+        this.replayExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, replayQueue)), runnable -> {
+                    Thread thread = new Thread(runnable, "ai-cache-replay-worker-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.replayExecutor.allowCoreThreadTimeOut(true);
+        this.hitCounter = Counter.builder("ai.cache.completion")
+                .description("回复缓存查询次数")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("ai.cache.completion")
+                .description("回复缓存查询次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 计算缓存键
+     *
+     * @return 缓存键，本次请求不使用缓存时为空
+     */
+    public String key(StreamOptions options, String model, List<Map<String, String>> messages, double temperature,
+            int maxTokens) {
+        if (!enabled || (options != null && Boolean.FALSE.equals(options.getUseCache()))) {
+            return null;
+        }
+        StringBuilder source = new StringBuilder(model).append('\u0000')
+                .append(temperature).append('\u0000')
+                .append(maxTokens);
+        for (Map<String, String> message : messages) {
+            source.append('\u0000').append(message.get("role"))
+                    .append('\u0001').append(normalize(message.get("content")));
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(source.toString().getBytes(StandardCharsets.UTF_8));
+            return RedisKeyConstant.COMPLETION_CACHE_KEY + HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return 缓存的回复，未命中或 Redis 不可用时为空
+     */
+    public String get(String key) {
+        String cached;
+        try {
+            cached = redisTemplate.opsForValue().get(key);
+        } catch (RuntimeException e) {
+            log.warn("读取回复缓存失败: {}", e.getMessage());
+            cached = null;
+        }
+        (cached != null ? hitCounter : missCounter).increment();
+        return cached;
+    }
+
+    /**
+     * 保存完整回复，超过单条上限的回复不缓存
+     */
+    public void put(String key, String content) {
+        if (content == null || content.isEmpty() || content.length() > maxEntryChars) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForValue().set(key, content, Duration.ofSeconds(ttlSeconds));
+            ZSetOperations<String, String> index = redisTemplate.opsForZSet();
+            index.add(RedisKeyConstant.COMPLETION_CACHE_INDEX_KEY, key, now);
+            // 清理已过期条目的索引，再按写入时间淘汰超出上限的最早条目
+            index.removeRangeByScore(RedisKeyConstant.COMPLETION_CACHE_INDEX_KEY, 0, now - ttlSeconds * 1000);
+            Long size = index.zCard(RedisKeyConstant.COMPLETION_CACHE_INDEX_KEY);
+            if (size != null && size > maxEntries) {
+                Set<ZSetOperations.TypedTuple<String>> evicted = index
+                        .popMin(RedisKeyConstant.COMPLETION_CACHE_INDEX_KEY, size - maxEntries);
+                if (evicted != null && !evicted.isEmpty()) {
+                    List<String> keys = new ArrayList<>(evicted.size());
+                    for (ZSetOperations.TypedTuple<String> tuple : evicted) {
+                        keys.add(tuple.getValue());
+                    }
+                    redisTemplate.delete(keys);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("写入回复缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 将缓存的回复分块写入合并发送层
+     *
+     * @param content   缓存的回复
+     * @param coalescer 合并发送层
+     * @param stopped   客户端已断开且无法续传时返回 true，停止写出
+     * @return 全部写出（或停止）后完成，写出失败时异常完成
+     */
+    public CompletableFuture<Void> replay(String content, SseCoalescer coalescer, BooleanSupplier stopped) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (replayIntervalMillis <= 0 || replayChunkChars <= 0) {
+            try {
+                coalescer.append(content);
+                done.complete(null);
+            } catch (Exception e) {
+                done.completeExceptionally(e);
+            }
+            return done;
+        }
+        Replay replay = new Replay(content, coalescer, stopped, done);
+        replay.task = scheduler.scheduleWithFixedDelay(replay, 0, replayIntervalMillis, TimeUnit.MILLISECONDS);
+        return done;
+    }
+
+    private class Replay implements Runnable {
+
+        private final String content;
+        private final SseCoalescer coalescer;
+        private final BooleanSupplier stopped;
+        private final CompletableFuture<Void> done;
+        private volatile ScheduledFuture<?> task;
+        // 上一块尚未写完时跳过本次触发；position 只在持有该标记时访问
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private int position;
+
+        Replay(String content, SseCoalescer coalescer, BooleanSupplier stopped, CompletableFuture<Void> done) {
+            this.content = content;
+            this.coalescer = coalescer;
+            this.stopped = stopped;
+            this.done = done;
+        }
+
+        /**
+         * 在定时线程上执行：只提交写出，不等待
+         */
+        @Override
+        public void run() {
+            if (done.isDone()) {
+                // 首次执行时可能尚未拿到任务句柄，在此补充取消
+                finish(null);
+                return;
+            }
+            if (!writing.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                replayExecutor.execute(() -> {
+                    try {
+                        writeNext();
+                    } finally {
+                        writing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                writing.set(false);
+            }
+        }
+
+        private void writeNext() {
+            if (done.isDone()) {
+                return;
+            }
+            try {
+                if (stopped.getAsBoolean() || position >= content.length()) {
+                    finish(null);
+                    return;
+                }
+                // 按码点切分，避免拆开代理对
+                int remaining = content.codePointCount(position, content.length());
+                int end = content.offsetByCodePoints(position, Math.min(replayChunkChars, remaining));
+                coalescer.append(content.substring(position, end));
+                position = end;
+            } catch (Exception e) {
+                finish(e);
+            }
+        }
+
+        private void finish(Exception error) {
+            ScheduledFuture<?> current = task;
+            if (current != null) {
+                current.cancel(false);
+            }
+            if (error != null) {
+                done.completeExceptionally(error);
+            } else {
+                done.complete(null);
+            }
+        }
+    }
+
+    private static String normalize(String content) {
+        return content == null ? "" : content.trim().replaceAll("\\s+", " ");
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdown();
+        replayExecutor.shutdown();
+    }
+}
@@ -0,0 +1,123 @@
+package com.kobeai.hub.service.cache;
+
+import com.kobeai.hub.service.stream.StreamOptions;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 近似重复问题的回复缓存（进程内）
+ * 只用于单轮、低 temperature 的请求：同一模型与系统提示下，用户问题的 SimHash 相似度
+ * 达到阈值即视为同一问题，直接重放此前的回复。无需外部向量服务
+ *
+ * 配置项：ai.cache.semantic.enabled / similarity / max-entries / max-temperature /
+ * min-length / max-entry-chars
+ */
+@Component
+public class SemanticCache {
+
+    private static final String PREFIX = "ai.cache.semantic.";
+
+    private final boolean enabled;
+    private final double maxTemperature;
+    private final int minLength;
+    private final int maxEntryChars;
+    private final SimHashIndex index;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public SemanticCache(Environment environment, MeterRegistry meterRegistry) {
+        this.enabled = environment.getProperty(PREFIX + "enabled", Boolean.class, false);
+        this.maxTemperature = environment.getProperty(PREFIX + "max-temperature", Double.class, 0.3);
+        this.minLength = environment.getProperty(PREFIX + "min-length", Integer.class, 8);
+        this.maxEntryChars = environment.getProperty(PREFIX + "max-entry-chars", Integer.class, 20000);
+        this.index = new SimHashIndex(environment.getProperty(PREFIX + "similarity", Double.class, 0.9),
+                environment.getProperty(PREFIX + "max-entries", Integer.class, 5000));
+
+        FunctionCounter.builder("ai.cache.semantic", hits, AtomicLong::get)
+                .description("近似重复缓存查询次数")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("ai.cache.semantic", misses, AtomicLong::get)
+                .description("近似重复缓存查询次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("ai.cache.semantic.hit.ratio", this, SemanticCache::getHitRatio)
+                .description("近似重复缓存命中率")
+                .register(meterRegistry);
+        Gauge.builder("ai.cache.semantic.size", index, SimHashIndex::size)
+                .description("近似重复缓存条目数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 计算缓存键
+     *
+     * @param messages 对话消息，只有「系统提示 + 一条用户消息」的单轮请求可以使用
+     * @return 缓存键，本次请求不适用时为空
+     */
+    public Key key(StreamOptions options, String model, List<Map<String, String>> messages, double temperature,
+            int maxTokens) {
+        if (!enabled || temperature > maxTemperature
+                || (options != null && Boolean.FALSE.equals(options.getUseCache()))) {
+            return null;
+        }
+        StringBuilder scope = new StringBuilder(model).append('\u0000').append(maxTokens);
+        String prompt = null;
+        for (Map<String, String> message : messages) {
+            String role = message.get("role");
+            if ("system".equals(role)) {
+                scope.append('\u0000').append(message.get("content"));
+            } else if ("user".equals(role) && prompt == null) {
+                prompt = message.get("content");
+            } else {
+                // 多轮对话的回复依赖上下文，不做近似匹配
+                return null;
+            }
+        }
+        if (prompt == null || prompt.trim().length() < minLength) {
+            return null;
+        }
+        return new Key(SimHashIndex.hash(scope.toString()), prompt);
+    }
+
+    /**
+     * @return 近似问题的回复，未命中时为空
+     */
+    public String get(Key key) {
+        String cached = index.get(key.scope, key.prompt);
+        (cached != null ? hits : misses).incrementAndGet();
+        return cached;
+    }
+
+    public void put(Key key, String content) {
+        if (content != null && !content.isEmpty() && content.length() <= maxEntryChars) {
+            index.put(key.scope, key.prompt, content);
+        }
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * 近似重复缓存的查询键
+     */
+    public static final class Key {
+        private final long scope;
+        private final String prompt;
+
+        private Key(long scope, String prompt) {
+            this.scope = scope;
+            this.prompt = prompt;
+        }
+    }
+}
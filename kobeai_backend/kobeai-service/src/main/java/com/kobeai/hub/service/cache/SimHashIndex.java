@@ -0,0 +1,256 @@
+package com.kobeai.hub.service.cache;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 基于 SimHash 的近似重复文本索引（进程内，LRU 淘汰）
+ * 文本归一化后切分为单元：汉字等表意字符逐字成为一个单元，连续的字母数字成为一个单词单元，
+ * 以单元及相邻单元二元组为特征计算 64 位 SimHash。
+ * 海明距离不超过 k 的两个指纹，按鸽巢原理在 k+1 个分段中至少有一段完全相同，
+ * 因此按分段建立倒排桶即可只比较少量候选。
+ * 文本中的数字必须完全一致才算命中，避免「1+1 等于几」与「1+2 等于几」互相命中
+ */
+class SimHashIndex {
+
+    private static final int BITS = 64;
+
+    private final int maxDistance;
+    private final int bands;
+    private final int maxEntries;
+    private final Map<Long, List<Entry>> buckets = new HashMap<>();
+    private final LinkedHashMap<Entry, Boolean> entries;
+
+    /**
+     * @param minSimilarity 最低相似度（0~1），按 1 - 海明距离 / 64 计算
+     * @param maxEntries    最多保留的条目数
+     */
+    SimHashIndex(double minSimilarity, int maxEntries) {
+        this.maxDistance = Math.max(0, Math.min(BITS / 4, (int) Math.floor(BITS * (1 - minSimilarity))));
+        this.bands = maxDistance + 1;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Entry, Boolean> eldest) {
+                if (size() > SimHashIndex.this.maxEntries) {
+                    unlink(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 查找同一作用域内最相近的条目
+     *
+     * @param scope 作用域（模型、系统提示等），不同作用域互不命中
+     * @param text  查询文本
+     * @return 命中条目的值，未命中时为空
+     */
+    synchronized String get(long scope, String text) {
+        Entry best = find(scope, fingerprint(text), digits(text));
+        if (best == null) {
+            return null;
+        }
+        // 访问顺序的 LinkedHashMap 在 get 时把条目移到末尾
+        entries.get(best);
+        return best.value;
+    }
+
+    synchronized void put(long scope, String text, String value) {
+        long fingerprint = fingerprint(text);
+        String digits = digits(text);
+        Entry existing = find(scope, fingerprint, digits);
+        if (existing != null && existing.fingerprint == fingerprint) {
+            existing.value = value;
+            entries.get(existing);
+            return;
+        }
+        Entry entry = new Entry(scope, fingerprint, digits, value);
+        for (int band = 0; band < bands; band++) {
+            buckets.computeIfAbsent(bucketKey(scope, band, fingerprint), key -> new ArrayList<>(2)).add(entry);
+        }
+        entries.put(entry, Boolean.TRUE);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private Entry find(long scope, long fingerprint, String digits) {
+        Entry best = null;
+        int bestDistance = maxDistance + 1;
+        for (int band = 0; band < bands; band++) {
+            List<Entry> bucket = buckets.get(bucketKey(scope, band, fingerprint));
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry candidate : bucket) {
+                if (candidate.scope != scope || !candidate.digits.equals(digits)) {
+                    continue;
+                }
+                int distance = Long.bitCount(candidate.fingerprint ^ fingerprint);
+                if (distance < bestDistance) {
+                    best = candidate;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best;
+    }
+
+    private void unlink(Entry entry) {
+        for (int band = 0; band < bands; band++) {
+            long key = bucketKey(entry.scope, band, entry.fingerprint);
+            List<Entry> bucket = buckets.get(key);
+            if (bucket == null) {
+                continue;
+            }
+            Iterator<Entry> iterator = bucket.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() == entry) {
+                    iterator.remove();
+                    break;
+                }
+            }
+            if (bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+    }
+
+    private long bucketKey(long scope, int band, long fingerprint) {
+        int width = BITS / bands;
+        int shift = band * width;
+        // 最后一段包含剩余的位
+        int bits = band == bands - 1 ? BITS - shift : width;
+        long mask = bits == BITS ? -1L : (1L << bits) - 1;
+        long value = (fingerprint >>> shift) & mask;
+        return mix(mix(scope ^ band) ^ value);
+    }
+
+    /**
+     * 计算文本的 64 位 SimHash
+     */
+    static long fingerprint(String text) {
+        List<String> units = units(text);
+        int[] weights = new int[BITS];
+        for (int i = 0; i < units.size(); i++) {
+            addFeature(weights, units.get(i), 1);
+            if (i + 1 < units.size()) {
+                addFeature(weights, units.get(i) + '\u0000' + units.get(i + 1), 2);
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < BITS; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 归一化并切分为单元
+     */
+    static List<String> units(String text) {
+        String normalized = Normalizer.normalize(text == null ? "" : text, Normalizer.Form.NFKC)
+                .toLowerCase(Locale.ROOT);
+        List<String> units = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        int i = 0;
+        while (i < normalized.length()) {
+            int codePoint = normalized.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isIdeographic(codePoint)
+                    || Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HIRAGANA
+                    || Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.KATAKANA
+                    || Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HANGUL) {
+                flush(word, units);
+                units.add(new String(Character.toChars(codePoint)));
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(codePoint);
+            } else {
+                flush(word, units);
+            }
+        }
+        flush(word, units);
+        return units;
+    }
+
+    private static void flush(StringBuilder word, List<String> units) {
+        if (word.length() > 0) {
+            units.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    /**
+     * @return 文本中依次出现的数字，以空格分隔
+     */
+    static String digits(String text) {
+        StringBuilder digits = new StringBuilder();
+        boolean inNumber = false;
+        String normalized = Normalizer.normalize(text == null ? "" : text, Normalizer.Form.NFKC);
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+                inNumber = true;
+            } else if (inNumber) {
+                digits.append(' ');
+                inNumber = false;
+            }
+        }
+        return digits.toString();
+    }
+
+    private static void addFeature(int[] weights, String feature, int weight) {
+        long hash = hash(feature);
+        for (int bit = 0; bit < BITS; bit++) {
+            weights[bit] += ((hash >>> bit) & 1L) != 0 ? weight : -weight;
+        }
+    }
+
+    /**
+     * FNV-1a 后再做一次 64 位混淆，保证各位分布均匀
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static final class Entry {
+        private final long scope;
+        private final long fingerprint;
+        private final String digits;
+        private String value;
+
+        private Entry(long scope, long fingerprint, String digits, String value) {
+            this.scope = scope;
+            this.fingerprint = fingerprint;
+            this.digits = digits;
+            this.value = value;
+        }
+    }
+}
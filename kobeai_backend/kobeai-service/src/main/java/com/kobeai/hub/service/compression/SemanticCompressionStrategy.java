@@ -3,6 +3,7 @@ package com.kobeai.hub.service.compression;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import com.kobeai.hub.service.impl.ContentAnalyzer;
+import com.kobeai.hub.service.impl.SemanticCompressor;
 import com.kobeai.hub.constant.TemplateConstants.CompressionType;
 
 /**
@@ -13,11 +14,12 @@ import com.kobeai.hub.constant.TemplateConstants.CompressionType;
 public class SemanticCompressionStrategy implements CompressionStrategy {
 
     private final ContentAnalyzer contentAnalyzer;
+    private final SemanticCompressor semanticCompressor;
 
     @Override
     public String compress(String content, int maxTokens) {
         // 使用现有的 SemanticCompressor 的逻辑
-        return new com.kobeai.hub.service.impl.SemanticCompressor().compress(content, maxTokens);
+        return semanticCompressor.compress(content, maxTokens);
     }
 
     @Override
@@ -0,0 +1,311 @@
+package com.kobeai.hub.service.context;
+
+import com.kobeai.hub.constant.TemplateConstants.CompressionType;
+import com.kobeai.hub.model.Message;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.service.compression.CompressionStrategy;
+import com.kobeai.hub.service.tokenizer.Tokenizer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按 token 预算组装对话上下文
+ * 从最新的历史消息开始向前装填，直到预算用完为止，保证保留的是连续的最近几轮；
+ * 消息的 token 数优先取写入时保存的 tokenCount，装填过程只做加减法。
+ * 过长的 AI 回复先经 {@link CompressionStrategy} 压缩再参与装填，压缩结果按消息缓存，
+ * 同一条回复只压缩一次。会话有滚动摘要时，摘要作为第二条系统消息发送，历史只装填摘要之后的消息。
+ *
+ * 稳定前缀布局（stable-prefix，默认开启）用于提高平台前缀缓存（prompt cache）的命中率：
+ * 历史窗口的起点按会话记住，之后每轮都从同一条消息开始装填，只在预算或读取窗口放不下时才后移，
+ * 后移时一次退到 retain-percent 的预算与条数，使新的起点能保持若干轮；
+ * 模板指令作为系统消息放在历史之后、本次用户消息之前，用户消息按原文发送，
+ * 因此系统提示、摘要与历史在相邻两轮之间逐字节相同，切换模板也不影响前面的部分
+ *
+ * 配置项（可按平台覆盖，如 ai.context.deepseek.budget-tokens）：
+ * ai.context.budget-tokens / max-messages / compress-threshold-tokens / compressed-tokens /
+ * stable-prefix / retain-percent
+ */
+@Slf4j
+@Component
+public class ContextBuilder {
+
+    private static final String PREFIX = "ai.context.";
+    private static final int COMPRESSED_CACHE_SIZE = 1024;
+    private static final int ANCHOR_CACHE_SIZE = 10000;
+    static final String SUMMARY_PREFIX = "以下是此前对话的摘要：\n";
+
+    private final Environment environment;
+    private final Tokenizer tokenizer;
+    private final List<CompressionStrategy> compressionStrategies;
+    private final Map<Long, Compressed> compressedCache = Collections.synchronizedMap(
+            new LinkedHashMap<Long, Compressed>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Compressed> eldest) {
+                    return size() > COMPRESSED_CACHE_SIZE;
+                }
+            });
+    // 各会话历史窗口起点的消息 ID
+    private final Map<Long, Long> anchors = Collections.synchronizedMap(
+            new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                    return size() > ANCHOR_CACHE_SIZE;
+                }
+            });
+
+    public ContextBuilder(Environment environment, Tokenizer tokenizer,
+            List<CompressionStrategy> compressionStrategies) {
+        this.environment = environment;
+        this.tokenizer = tokenizer;
+        this.compressionStrategies = compressionStrategies;
+    }
+
+    /**
+     * @return 组装上下文时最多读取的历史消息数
+     */
+    public int getMaxMessages() {
+        return environment.getProperty(PREFIX + "max-messages", Integer.class, 20);
+    }
+
+    /**
+     * @return 该平台是否使用稳定前缀布局，是时模板指令应通过 {@code instructions} 单独传入而不是套入用户消息
+     */
+    public boolean isStablePrefix(Platform platform) {
+        String name = platform.name().toLowerCase();
+        boolean global = environment.getProperty(PREFIX + "stable-prefix", Boolean.class, true);
+        return environment.getProperty(PREFIX + name + ".stable-prefix", Boolean.class, global);
+    }
+
+    /**
+     * 组装发给平台的 messages
+     *
+     * @param platform     平台类型，用于读取该平台的预算
+     * @param systemPrompt 系统提示
+     * @param history      会话历史（滚动摘要 + 最近消息），不含本次的用户消息
+     * @param userMessage  本次的用户消息
+     * @return 系统提示 + 摘要 + 预算内的历史 + 本次用户消息
+     */
+    public List<Map<String, String>> build(Platform platform, String systemPrompt, ConversationHistory history,
+            String userMessage) {
+        return build(platform, systemPrompt, null, history, userMessage);
+    }
+
+    /**
+     * 组装发给平台的 messages
+     *
+     * @param instructions 本轮的模板指令，作为系统消息放在本次用户消息之前，可为空
+     * @return 系统提示 + 摘要 + 预算内的历史 + 模板指令 + 本次用户消息
+     */
+    public List<Map<String, String>> build(Platform platform, String systemPrompt, String instructions,
+            ConversationHistory history, String userMessage) {
+        return build(platform, systemPrompt, instructions, history.getConversationId(), history.getSummary(),
+                history.getSummaryTokens(), history.getRecentMessages(), userMessage);
+    }
+
+    /**
+     * 组装发给平台的 messages（没有摘要）
+     *
+     * @param history 历史消息，按时间倒序（最新在前），不含本次的用户消息
+     */
+    public List<Map<String, String>> build(Platform platform, String systemPrompt, List<Message> history,
+            String userMessage) {
+        return build(platform, systemPrompt, null, null, null, null, history, userMessage);
+    }
+
+    private List<Map<String, String>> build(Platform platform, String systemPrompt, String instructions,
+            Long conversationId, String summary, Integer summaryTokens, List<Message> history, String userMessage) {
+        String name = platform.name().toLowerCase();
+        int budget = property(name, "budget-tokens", 3000);
+        int compressThreshold = property(name, "compress-threshold-tokens", 400);
+        int compressedTokens = property(name, "compressed-tokens", 200);
+
+        int remaining = budget - tokenizer.count(platform, systemPrompt) - tokenizer.count(platform, userMessage);
+        if (instructions != null) {
+            remaining -= tokenizer.count(platform, instructions);
+        }
+        String summaryContent = null;
+        if (summary != null) {
+            // 摘要紧跟在固定的系统提示之后，总是保留
+            summaryContent = SUMMARY_PREFIX + summary;
+            remaining -= summaryTokens != null ? summaryTokens : tokenizer.count(platform, summaryContent);
+        }
+        List<Turn> turns = new ArrayList<>();
+        if (history != null) {
+            for (Message message : history) {
+                String content = message.getContent();
+                // 生成中的回复只有部分内容，不作为历史
+                if (content == null || content.isEmpty() || message.getStatus() == Message.Status.ERROR
+                        || message.getStatus() == Message.Status.STREAMING) {
+                    continue;
+                }
+                int tokens = message.getTokenCount() != null ? message.getTokenCount()
+                        : tokenizer.count(platform, content);
+                if (message.getRole() == Message.Role.ASSISTANT && tokens > compressThreshold) {
+                    Compressed compressed = compressed(platform, message, compressedTokens);
+                    content = compressed.content;
+                    tokens = compressed.tokens;
+                }
+                if (tokens > remaining) {
+                    break;
+                }
+                turns.add(new Turn(message.getId(),
+                        message(message.getRole() == Message.Role.ASSISTANT ? "assistant" : "user", content), tokens));
+                remaining -= tokens;
+            }
+        }
+        if (conversationId != null && isStablePrefix(platform)) {
+            turns = anchored(conversationId, turns, remaining + tokens(turns), property(name, "retain-percent", 50));
+        }
+
+        List<Map<String, String>> messages = new ArrayList<>(turns.size() + 4);
+        messages.add(message("system", systemPrompt));
+        if (summaryContent != null) {
+            messages.add(message("system", summaryContent));
+        }
+        for (int i = turns.size() - 1; i >= 0; i--) {
+            messages.add(turns.get(i).message);
+        }
+        if (instructions != null) {
+            messages.add(message("system", instructions));
+        }
+        messages.add(message("user", userMessage));
+        return messages;
+    }
+
+    /**
+     * 从会话上次的起点开始装填历史
+     * 起点仍在预算内时截到起点为止；起点已放不下或不在读取的消息中（读取窗口后移、已并入摘要）时，
+     * 按 retain-percent 退到更近的位置作为新起点
+     *
+     * @param turns          按预算从最新开始装填的历史，按时间倒序
+     * @param historyBudget  历史可用的 token 预算
+     * @param retainPercent  重新选择起点时保留的预算与条数比例
+     */
+    private List<Turn> anchored(Long conversationId, List<Turn> turns, int historyBudget, int retainPercent) {
+        if (turns.isEmpty()) {
+            anchors.remove(conversationId);
+            return turns;
+        }
+        Long anchor = anchors.get(conversationId);
+        List<Turn> result = turns;
+        if (anchor != null) {
+            int anchorIndex = -1;
+            for (int i = 0; i < turns.size(); i++) {
+                if (anchor.equals(turns.get(i).messageId)) {
+                    anchorIndex = i;
+                    break;
+                }
+            }
+            if (anchorIndex >= 0) {
+                result = turns.subList(0, anchorIndex + 1);
+            } else {
+                int tokenLimit = historyBudget * retainPercent / 100;
+                int countLimit = Math.max(1, getMaxMessages() * retainPercent / 100);
+                int count = 1;
+                int used = turns.get(0).tokens;
+                while (count < turns.size() && count < countLimit && used + turns.get(count).tokens <= tokenLimit) {
+                    used += turns.get(count).tokens;
+                    count++;
+                }
+                result = turns.subList(0, count);
+                log.debug("历史窗口起点后移，会话ID: {}，保留 {} 条", conversationId, count);
+            }
+        }
+        Long start = result.get(result.size() - 1).messageId;
+        if (start != null) {
+            anchors.put(conversationId, start);
+        }
+        return result;
+    }
+
+    private static int tokens(List<Turn> turns) {
+        int total = 0;
+        for (Turn turn : turns) {
+            total += turn.tokens;
+        }
+        return total;
+    }
+
+    private Compressed compressed(Platform platform, Message message, int maxTokens) {
+        if (message.getId() == null) {
+            return compress(platform, message.getContent(), maxTokens);
+        }
+        return compressedCache.computeIfAbsent(message.getId(),
+                id -> compress(platform, message.getContent(), maxTokens));
+    }
+
+    private Compressed compress(Platform platform, String content, int maxTokens) {
+        String compressed = compressContent(content, maxTokens);
+        return new Compressed(compressed, tokenizer.count(platform, compressed));
+    }
+
+    private String compressContent(String content, int maxTokens) {
+        CompressionStrategy strategy = compressionStrategies.stream()
+                .filter(candidate -> candidate.isApplicable(content))
+                .findFirst()
+                .orElseGet(() -> compressionStrategies.stream()
+                        .filter(candidate -> CompressionType.SEMANTIC.equals(candidate.getStrategyName()))
+                        .findFirst()
+                        .orElse(null));
+        if (strategy == null) {
+            return content;
+        }
+        String compressed = strategy.compress(content, maxTokens);
+        if (compressed == null || compressed.isEmpty()) {
+            return content;
+        }
+        log.debug("历史回复已压缩，策略: {}，长度 {} -> {}", strategy.getStrategyName(), content.length(),
+                compressed.length());
+        return compressed;
+    }
+
+    /**
+     * 字段顺序固定（role、content），保证相同内容序列化出相同的字节
+     */
+    private static Map<String, String> message(String role, String content) {
+        Map<String, String> message = new LinkedHashMap<>(4);
+        message.put("role", role);
+        message.put("content", content);
+        return message;
+    }
+
+    private int property(String platform, String key, int defaultValue) {
+        int global = environment.getProperty(PREFIX + key, Integer.class, defaultValue);
+        return environment.getProperty(PREFIX + platform + "." + key, Integer.class, global);
+    }
+
+    /**
+     * 装填的一条历史消息
+     */
+    private static final class Turn {
+        private final Long messageId;
+        private final Map<String, String> message;
+        private final int tokens;
+
+        private Turn(Long messageId, Map<String, String> message, int tokens) {
+            this.messageId = messageId;
+            this.message = message;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * 压缩后的回复及其 token 数
+     */
+    private static final class Compressed {
+        private final String content;
+        private final int tokens;
+
+        private Compressed(String content, int tokens) {
+            this.content = content;
+            this.tokens = tokens;
+        }
+    }
+}
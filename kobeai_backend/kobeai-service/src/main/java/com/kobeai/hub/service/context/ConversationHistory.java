@@ -0,0 +1,82 @@
+package com.kobeai.hub.service.context;
+
+import com.kobeai.hub.model.Conversation;
+import com.kobeai.hub.model.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 组装上下文所需的会话历史：早期对话的滚动摘要 + 摘要之后的最近消息
+ */
+public class ConversationHistory {
+
+    private static final ConversationHistory EMPTY = new ConversationHistory(null, null, null,
+            Collections.emptyList());
+
+    private final Long conversationId;
+    private final String summary;
+    private final Integer summaryTokens;
+    private final List<Message> recentMessages;
+
+    private ConversationHistory(Long conversationId, String summary, Integer summaryTokens,
+            List<Message> recentMessages) {
+        this.conversationId = conversationId;
+        this.summary = summary;
+        this.summaryTokens = summaryTokens;
+        this.recentMessages = recentMessages;
+    }
+
+    public static ConversationHistory empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param conversation   会话，携带滚动摘要
+     * @param recentMessages 最近的消息，按时间倒序（最新在前）；已并入摘要的消息会被去掉
+     */
+    public static ConversationHistory of(Conversation conversation, List<Message> recentMessages) {
+        Long summarizedUntil = conversation.getSummaryUntilMessageId();
+        List<Message> messages = recentMessages;
+        if (summarizedUntil != null) {
+            messages = new ArrayList<>(recentMessages.size());
+            for (Message message : recentMessages) {
+                if (message.getId() == null || message.getId() > summarizedUntil) {
+                    messages.add(message);
+                }
+            }
+        }
+        String summary = conversation.getSummary();
+        return new ConversationHistory(conversation.getId(), summary == null || summary.isBlank() ? null : summary,
+                conversation.getSummaryTokens(), messages);
+    }
+
+    /**
+     * @return 会话 ID，没有会话时为 null
+     */
+    public Long getConversationId() {
+        return conversationId;
+    }
+
+    /**
+     * @return 滚动摘要，没有时为 null
+     */
+    public String getSummary() {
+        return summary;
+    }
+
+    /**
+     * @return 摘要的 token 数，未记录时为 null
+     */
+    public Integer getSummaryTokens() {
+        return summaryTokens;
+    }
+
+    /**
+     * @return 摘要之后的最近消息，按时间倒序（最新在前）
+     */
+    public List<Message> getRecentMessages() {
+        return recentMessages;
+    }
+}
@@ -0,0 +1,243 @@
+package com.kobeai.hub.service.context;
+
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.model.Conversation;
+import com.kobeai.hub.model.Message;
+import com.kobeai.hub.repository.ConversationRepository;
+import com.kobeai.hub.repository.MessageRepository;
+import com.kobeai.hub.service.generation.GenerationScheduler;
+import com.kobeai.hub.service.provider.ProviderRouter;
+import com.kobeai.hub.service.provider.RoutedCall;
+import com.kobeai.hub.service.stream.ChatChunk;
+import com.kobeai.hub.service.stream.ChatChunkParser;
+import com.kobeai.hub.service.stream.StreamListener;
+import com.kobeai.hub.service.tokenizer.Tokenizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话滚动摘要
+ * 每轮回复完成后在后台低优先级任务池中检查：摘要之后的消息超过 trigger-tokens 时，
+ * 把较早的完整轮次与已有摘要合并成新的摘要，只保留最近 keep-tokens 的原文。
+ * 摘要写回 Conversation 并递增版本号，版本冲突（期间已被其他任务更新）时放弃本次结果。
+ * 请求路径上只读取已有摘要，从不等待摘要生成
+ *
+ * 配置项：ai.context.summary.enabled / trigger-tokens / keep-tokens / max-input-tokens / max-summary-chars
+ */
+@Slf4j
+@Component
+public class ConversationSummarizer {
+
+    private static final String PREFIX = "ai.context.summary.";
+    private static final String SUMMARY_PROMPT = "你是对话摘要助手。请把已有摘要和新增的对话合并成一份新的摘要，"
+            + "保留用户的目标、偏好、已确认的事实与结论、未解决的问题以及关键的代码或数据，省略寒暄和重复内容。"
+            + "直接输出摘要正文，不要添加标题或解释。";
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final ProviderRouter providerRouter;
+    private final GenerationScheduler generationScheduler;
+    private final Tokenizer tokenizer;
+    private final MeterRegistry meterRegistry;
+    private final ChatChunkParser chunkParser = new ChatChunkParser();
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    private final boolean enabled;
+    private final int triggerTokens;
+    private final int keepTokens;
+    private final int maxInputTokens;
+    private final int maxSummaryChars;
+
+    public ConversationSummarizer(ConversationRepository conversationRepository,
+            MessageRepository messageRepository, ProviderRouter providerRouter,
+            GenerationScheduler generationScheduler, Tokenizer tokenizer, Environment environment,
+            MeterRegistry meterRegistry) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.providerRouter = providerRouter;
+        this.generationScheduler = generationScheduler;
+        this.tokenizer = tokenizer;
+        this.meterRegistry = meterRegistry;
+        this.enabled = environment.getProperty(PREFIX + "enabled", Boolean.class, true);
+        this.triggerTokens = environment.getProperty(PREFIX + "trigger-tokens", Integer.class, 3000);
+        this.keepTokens = environment.getProperty(PREFIX + "keep-tokens", Integer.class, 1500);
+        this.maxInputTokens = environment.getProperty(PREFIX + "max-input-tokens", Integer.class, 6000);
+        this.maxSummaryChars = environment.getProperty(PREFIX + "max-summary-chars", Integer.class, 800);
+    }
+
+    /**
+     * 一轮回复完成后调用，在后台检查并更新摘要，同一会话同时只有一个摘要任务
+     *
+     * @param conversationId 会话 ID
+     * @param endpoint       生成本轮回复的接入点，摘要使用同一接入点
+     */
+    public void onTurnCompleted(Long conversationId, AIPlatform endpoint) {
+        if (!enabled || conversationId == null || endpoint == null || !running.add(conversationId)) {
+            return;
+        }
+        generationScheduler.submitBackground(() -> run(conversationId, endpoint)
+                .whenComplete((ignored, error) -> {
+                    running.remove(conversationId);
+                    if (error != null) {
+                        record("failed");
+                        log.warn("更新会话摘要失败，会话ID: {}，原因: {}", conversationId, error.getMessage());
+                    }
+                }), reason -> {
+                    running.remove(conversationId);
+                    log.debug("会话摘要任务被拒绝，会话ID: {}，原因: {}", conversationId, reason);
+                });
+    }
+
+    private CompletableFuture<Void> run(Long conversationId, AIPlatform endpoint) {
+        try {
+            return summarize(conversationId, endpoint);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<Void> summarize(Long conversationId, AIPlatform endpoint) {
+        Conversation conversation = conversationRepository.findById(conversationId).orElse(null);
+        if (conversation == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Long summarizedUntil = conversation.getSummaryUntilMessageId();
+        List<Message> pending = new ArrayList<>();
+        int pendingTokens = 0;
+        for (Message message : messageRepository.findMessagesAfter(conversationId,
+                summarizedUntil != null ? summarizedUntil : 0L)) {
+            // 生成中的回复只有检查点内容，不并入摘要
+            if (message.getContent() == null || message.getContent().isEmpty()
+                    || message.getStatus() == Message.Status.ERROR
+                    || message.getStatus() == Message.Status.STREAMING) {
+                continue;
+            }
+            pending.add(message);
+            pendingTokens += tokens(endpoint, message);
+        }
+        if (pendingTokens <= triggerTokens) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // 从最早的消息开始并入摘要，直到剩余原文不超过 keep-tokens；只在 AI 回复处截断，保证并入的是完整轮次
+        int remaining = pendingTokens;
+        int folded = 0;
+        int foldedEnd = 0;
+        for (int i = 0; i < pending.size() && remaining > keepTokens; i++) {
+            int tokens = tokens(endpoint, pending.get(i));
+            if (folded + tokens > maxInputTokens && foldedEnd > 0) {
+                break;
+            }
+            folded += tokens;
+            remaining -= tokens;
+            if (pending.get(i).getRole() == Message.Role.ASSISTANT) {
+                foldedEnd = i + 1;
+            }
+        }
+        if (foldedEnd == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Message> turns = pending.subList(0, foldedEnd);
+        Long untilMessageId = turns.get(turns.size() - 1).getId();
+        int expectedVersion = conversation.getSummaryVersion() != null ? conversation.getSummaryVersion() : 0;
+
+        SummaryListener listener = new SummaryListener();
+        RoutedCall call = providerRouter.open(Collections.singletonList(endpoint),
+                summaryMessages(conversation.getSummary(), turns), false, listener);
+        call.start();
+        return listener.result.thenAccept(summary -> {
+            if (summary.isBlank()) {
+                record("failed");
+                return;
+            }
+            int updated = conversationRepository.updateSummary(conversationId, summary,
+                    tokenizer.count(endpoint.getType(), summary), untilMessageId, expectedVersion);
+            record(updated > 0 ? "updated" : "conflict");
+            log.info("会话摘要已更新，会话ID: {}，并入消息 {} 条，摘要长度: {}", conversationId, turns.size(),
+                    summary.length());
+        });
+    }
+
+    private List<Map<String, String>> summaryMessages(String previousSummary, List<Message> turns) {
+        StringBuilder content = new StringBuilder();
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            content.append("已有摘要：\n").append(previousSummary).append("\n\n");
+        }
+        content.append("新增对话：\n");
+        for (Message message : turns) {
+            content.append(message.getRole() == Message.Role.ASSISTANT ? "助手：" : "用户：")
+                    .append(message.getContent())
+                    .append('\n');
+        }
+        content.append("\n请输出合并后的摘要，不超过 ").append(maxSummaryChars).append(" 字。");
+
+        List<Map<String, String>> messages = new ArrayList<>(2);
+        Map<String, String> system = new LinkedHashMap<>();
+        system.put("role", "system");
+        system.put("content", SUMMARY_PROMPT);
+        messages.add(system);
+        Map<String, String> user = new LinkedHashMap<>();
+        user.put("role", "user");
+        user.put("content", content.toString());
+        messages.add(user);
+        return messages;
+    }
+
+    private int tokens(AIPlatform endpoint, Message message) {
+        return message.getTokenCount() != null ? message.getTokenCount()
+                : tokenizer.count(endpoint.getType(), message.getContent());
+    }
+
+    private void record(String result) {
+        meterRegistry.counter("ai.context.summary", "result", result).increment();
+    }
+
+    /**
+     * 收集摘要回复的全部内容
+     */
+    private class SummaryListener implements StreamListener {
+
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final StringBuilder content = new StringBuilder();
+        private final ChatChunk chunk = new ChatChunk();
+
+        @Override
+        public synchronized void onData(byte[] buffer, int offset, int length) {
+            try {
+                chunkParser.parse(buffer, offset, length, chunk);
+            } catch (IOException e) {
+                return;
+            }
+            if (chunk.getContent() != null) {
+                content.append(chunk.getContent());
+            }
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            result.complete(content.toString().trim());
+        }
+
+        @Override
+        public void onHttpError(int statusCode, String body) {
+            result.completeExceptionally(new IllegalStateException("摘要请求失败，状态码: " + statusCode));
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            result.completeExceptionally(error);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.kobeai.hub.service.generation;
+
+import com.kobeai.hub.constant.UserRole;
+import com.kobeai.hub.model.User;
+
+import java.util.function.IntConsumer;
+
+/**
+ * 生成任务的准入信息：所属用户、按用户角色划分的优先级，以及排队位置变化时的回调
+ */
+public final class Admission {
+
+    private static final Admission ANONYMOUS = new Admission(null, UserRole.NORMAL, null);
+
+    private final Long userId;
+    private final UserRole role;
+    private final IntConsumer onQueued;
+
+    private Admission(Long userId, UserRole role, IntConsumer onQueued) {
+        this.userId = userId;
+        this.role = role;
+        this.onQueued = onQueued;
+    }
+
+    /**
+     * @param user     发起生成的用户，为空时按普通用户处理且不受单用户并发限制
+     * @param onQueued 进入等待队列及排队位置变化时的回调，参数为从 1 开始的位置，可为空
+     */
+    public static Admission of(User user, IntConsumer onQueued) {
+        if (user == null) {
+            return new Admission(null, UserRole.NORMAL, onQueued);
+        }
+        return new Admission(user.getId(), user.getUserRole() != null ? user.getUserRole() : UserRole.NORMAL,
+                onQueued);
+    }
+
+    /**
+     * 不属于任何用户的任务（如后台任务）
+     */
+    public static Admission anonymous() {
+        return ANONYMOUS;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public UserRole getRole() {
+        return role;
+    }
+
+    void queued(int position) {
+        if (onQueued != null) {
+            onQueued.accept(position);
+        }
+    }
+}
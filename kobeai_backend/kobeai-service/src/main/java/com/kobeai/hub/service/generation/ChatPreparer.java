@@ -0,0 +1,252 @@
+package com.kobeai.hub.service.generation;
+
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.model.Conversation;
+import com.kobeai.hub.model.Message;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.repository.ConversationRepository;
+import com.kobeai.hub.repository.MessageRepository;
+import com.kobeai.hub.service.PromptOptimizationService;
+import com.kobeai.hub.service.context.ContextBuilder;
+import com.kobeai.hub.service.provider.ChatProviderRegistry;
+import com.kobeai.hub.service.provider.ProviderRouter;
+import com.kobeai.hub.service.stream.ProviderStreamClient;
+import com.kobeai.hub.service.tokenizer.Tokenizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 输入框获得焦点时的预热
+ * 提前解析接入点并预热到该平台的连接、预读候选模板，并把会话与最近的历史（已分词）放入按用户划分的短期缓存，
+ * 随后的发送请求直接取用，省去读取会话与历史的数据库往返。
+ * 每个用户只保留最近一次预热的结果，取用一次即失效；会话正在生成回复时不缓存历史，避免读到未完成的回复。
+ * 预热开始时先放入占位，完成时只在占位仍在时替换为结果：预热期间已被取用或失效（本轮已写入）时丢弃结果，
+ * 避免把本轮之前的历史留给下一次发送。
+ * 预热在独立的小线程池中执行，队列已满时直接丢弃，不占用发送请求的前置处理线程。
+ * 缓存只在本节点内有效，发送请求落到其他节点时按正常流程处理
+ *
+ * 配置项：ai.prepare.enabled / ttl-ms / max-entries / warm-up-interval-ms / threads / queue
+ */
+@Slf4j
+@Component
+public class ChatPreparer {
+
+    private static final String PREFIX = "ai.prepare.";
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final ChatProviderRegistry providerRegistry;
+    private final ProviderRouter providerRouter;
+    private final ProviderStreamClient streamClient;
+    private final PromptOptimizationService promptOptimizationService;
+    private final ContextBuilder contextBuilder;
+    private final ThreadPoolExecutor executor;
+    private final Tokenizer tokenizer;
+    private final MeterRegistry meterRegistry;
+    private final Map<Long, Prepared> prepared = new ConcurrentHashMap<>();
+    // 各平台地址最近一次预热连接的时间
+    private final Map<String, Long> warmedAt = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final long warmUpIntervalMillis;
+
+    public ChatPreparer(ConversationRepository conversationRepository, MessageRepository messageRepository,
+            ChatProviderRegistry providerRegistry, ProviderRouter providerRouter, ProviderStreamClient streamClient,
+            PromptOptimizationService promptOptimizationService, ContextBuilder contextBuilder,
+            Tokenizer tokenizer, Environment environment,
+            MeterRegistry meterRegistry) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.providerRegistry = providerRegistry;
+        this.providerRouter = providerRouter;
+        this.streamClient = streamClient;
+        this.promptOptimizationService = promptOptimizationService;
+        this.contextBuilder = contextBuilder;
+        this.tokenizer = tokenizer;
+        this.meterRegistry = meterRegistry;
+        this.enabled = environment.getProperty(PREFIX + "enabled", Boolean.class, true);
+        this.ttlMillis = environment.getProperty(PREFIX + "ttl-ms", Long.class, 30000L);
+        this.maxEntries = environment.getProperty(PREFIX + "max-entries", Integer.class, 10000);
+        this.warmUpIntervalMillis = environment.getProperty(PREFIX + "warm-up-interval-ms", Long.class, 60000L);
+        int threads = Math.max(1, environment.getProperty(PREFIX + "threads", Integer.class, 2));
+        int queueCapacity = Math.max(1, environment.getProperty(PREFIX + "queue", Integer.class, 64));
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "ai-prepare-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, pool) -> meterRegistry.counter("ai.prepare", "result", "dropped").increment());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 在后台执行预热，立即返回
+     *
+     * @param userId         用户ID
+     * @param conversationId 即将发送消息的会话ID，为空时只预热连接与模板
+     * @param platform       平台类型，为空表示自动选择
+     */
+    public void prepare(Long userId, Long conversationId, Platform platform) {
+        if (!enabled) {
+            return;
+        }
+        Prepared pending = null;
+        if (conversationId != null && userId != null) {
+            // 占位同样带过期时间，预热被丢弃时由容量清理回收
+            pending = new Prepared(null, Collections.emptyList(), System.currentTimeMillis() + ttlMillis);
+            prepared.put(userId, pending);
+        }
+        Prepared placeholder = pending;
+        executor.execute(() -> {
+            try {
+                doPrepare(userId, conversationId, platform, placeholder);
+            } catch (Exception e) {
+                log.warn("预热失败: {}", e.getMessage());
+            } finally {
+                if (placeholder != null) {
+                    prepared.remove(userId, placeholder);
+                }
+            }
+        });
+    }
+
+    /**
+     * 取出用户预热的会话数据，取出后即失效
+     *
+     * @return 与会话ID匹配且未过期的预热数据，没有时为 null
+     */
+    public Prepared take(Long userId, Long conversationId) {
+        if (!enabled || userId == null) {
+            return null;
+        }
+        Prepared entry = prepared.remove(userId);
+        // 占位表示预热尚未完成，移除后其结果不再写入
+        boolean hit = entry != null && entry.conversation != null
+                && Objects.equals(entry.conversation.getId(), conversationId)
+                && entry.expiresAt > System.currentTimeMillis();
+        meterRegistry.counter("ai.prepare", "result", hit ? "hit" : "miss").increment();
+        return hit ? entry : null;
+    }
+
+    /**
+     * 会话被删除、清空或本轮消息已写入时丢弃该用户的预热数据，进行中的预热的结果也随之作废
+     */
+    public void invalidate(Long userId) {
+        if (userId != null) {
+            prepared.remove(userId);
+        }
+    }
+
+    private void doPrepare(Long userId, Long conversationId, Platform platform, Prepared placeholder) {
+        // 接入点已在内存中索引，这里只用于预热连接
+        List<AIPlatform> endpoints = platform != null
+                ? Collections.singletonList(providerRegistry.resolveEndpoint(platform, userId))
+                : providerRouter.rank(providerRegistry.availableEndpoints(userId));
+        Platform tokenizerPlatform = platform;
+        if (!endpoints.isEmpty()) {
+            AIPlatform endpoint = endpoints.get(0);
+            tokenizerPlatform = endpoint.getType();
+            warmUp(endpoint.getBaseUrl());
+        }
+        promptOptimizationService.preloadTemplates("chat");
+
+        if (placeholder == null) {
+            return;
+        }
+        Conversation conversation = conversationRepository.findByIdAndUserId(conversationId, userId).orElse(null);
+        if (conversation == null) {
+            return;
+        }
+        List<Message> recentMessages = messageRepository.findRecentMessages(conversationId,
+                contextBuilder.getMaxMessages());
+        if (!recentMessages.isEmpty() && isGenerating(recentMessages.get(0))) {
+            log.debug("会话正在生成回复，不缓存历史，会话ID: {}", conversationId);
+            return;
+        }
+        for (Message message : recentMessages) {
+            if (message.getTokenCount() == null && message.getContent() != null) {
+                message.setTokenCount(tokenizer.count(tokenizerPlatform, message.getContent()));
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        if (prepared.size() > maxEntries) {
+            prepared.values().removeIf(entry -> entry.expiresAt <= now);
+            if (prepared.size() > maxEntries) {
+                return;
+            }
+        }
+        prepared.replace(userId, placeholder, new Prepared(conversation, recentMessages, now + ttlMillis));
+    }
+
+    private void warmUp(String baseUrl) {
+        if (baseUrl == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Long last = warmedAt.get(baseUrl);
+        if (last != null && now - last < warmUpIntervalMillis) {
+            return;
+        }
+        warmedAt.put(baseUrl, now);
+        streamClient.warmUp(baseUrl);
+    }
+
+    private static boolean isGenerating(Message newest) {
+        if (newest.getRole() != Message.Role.ASSISTANT) {
+            return false;
+        }
+        // 引入 STREAMING 状态之前的占位以 COMPLETED 状态、空内容写入
+        return newest.getStatus() == Message.Status.STREAMING
+                || ((newest.getContent() == null || newest.getContent().isEmpty())
+                        && newest.getStatus() != Message.Status.ERROR);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 预热的会话数据，会话为空时表示预热尚未完成的占位
+     */
+    public static final class Prepared {
+
+        private final Conversation conversation;
+        private final List<Message> recentMessages;
+        private final long expiresAt;
+
+        private Prepared(Conversation conversation, List<Message> recentMessages, long expiresAt) {
+            this.conversation = conversation;
+            this.recentMessages = recentMessages;
+            this.expiresAt = expiresAt;
+        }
+
+        public Conversation getConversation() {
+            return conversation;
+        }
+
+        /**
+         * @return 最近的消息，按时间倒序（最新在前），已填充 token 数
+         */
+        public List<Message> getRecentMessages() {
+            return recentMessages;
+        }
+    }
+}
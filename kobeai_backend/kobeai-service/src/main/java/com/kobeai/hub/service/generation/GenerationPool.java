@@ -0,0 +1,271 @@
+package com.kobeai.hub.service.generation;
+
+import com.kobeai.hub.constant.UserRole;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 单个平台的生成任务池
+ * 同时进行的生成数不超过 maxConcurrency，超出的请求进入有界等待队列，
+ * 队列已满或等待超过 queueTimeout 的请求被拒绝。
+ * 等待队列按用户角色做加权公平排队（WFQ）：每个角色一个逻辑队列，入队时按角色权重计算虚拟完成时间，
+ * 名额空出时放行虚拟完成时间最小的任务，权重越高的角色排队越短，低权重角色也不会被饿死。
+ * 每个用户同时进行的生成数不超过 maxPerUser，超出的任务留在队列中，不占用其他用户的名额
+ */
+@Slf4j
+class GenerationPool {
+
+    static final String REJECT_QUEUE_FULL = "当前请求过多，请稍后重试";
+    static final String REJECT_QUEUE_TIMEOUT = "排队等待超时，请稍后重试";
+
+    private static final Comparator<Pending> ORDER = Comparator.<Pending>comparingDouble(p -> p.finishTag)
+            .thenComparingLong(p -> p.sequence);
+
+    private final String name;
+    private final int maxConcurrency;
+    private final int queueCapacity;
+    private final long queueTimeoutMillis;
+    private final Map<UserRole, Integer> weights;
+    private final int maxPerUser;
+    private final Executor workerExecutor;
+    private final ScheduledExecutorService timer;
+    private final MeterRegistry meterRegistry;
+
+    private final TreeSet<Pending> waiting = new TreeSet<>(ORDER);
+    // 各角色最近入队任务的虚拟完成时间
+    private final Map<UserRole, Double> lastFinishTags = new EnumMap<>(UserRole.class);
+    private final Map<Long, Integer> activeByUser = new HashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+    private int active;
+    private double virtualTime;
+    private long sequence;
+
+    GenerationPool(String name, int maxConcurrency, int queueCapacity, long queueTimeoutMillis,
+            Map<UserRole, Integer> weights, int maxPerUser, long reportIntervalMillis, Executor workerExecutor,
+            ScheduledExecutorService timer, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.weights = weights;
+        this.maxPerUser = maxPerUser;
+        this.workerExecutor = workerExecutor;
+        this.timer = timer;
+        this.meterRegistry = meterRegistry;
+        if (reportIntervalMillis > 0) {
+            timer.scheduleWithFixedDelay(this::reportPositions, reportIntervalMillis, reportIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void submit(Admission admission, GenerationTask task, Consumer<String> onRejected) {
+        Pending pending = new Pending(admission, task, onRejected);
+        int position;
+        synchronized (this) {
+            if (active < maxConcurrency && belowUserLimit(admission.getUserId())) {
+                acquire(pending);
+                position = 0;
+            } else if (waiting.size() < queueCapacity) {
+                double weight = Math.max(1, weights.getOrDefault(admission.getRole(), 1));
+                double start = Math.max(virtualTime, lastFinishTags.getOrDefault(admission.getRole(), 0.0));
+                pending.finishTag = start + 1.0 / weight;
+                pending.sequence = sequence++;
+                lastFinishTags.put(admission.getRole(), pending.finishTag);
+                waiting.add(pending);
+                position = waiting.headSet(pending).size() + 1;
+                pending.reportedPosition = position;
+                timer.schedule(() -> expire(pending), queueTimeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                position = -1;
+            }
+        }
+        if (position == 0) {
+            dispatch(pending);
+        } else if (position > 0) {
+            notifyQueued(pending, position);
+        } else {
+            reject(onRejected, REJECT_QUEUE_FULL);
+        }
+    }
+
+    private void expire(Pending pending) {
+        boolean removed;
+        synchronized (this) {
+            removed = waiting.remove(pending);
+        }
+        if (removed) {
+            reject(pending.onRejected, REJECT_QUEUE_TIMEOUT);
+        }
+    }
+
+    private void release(Pending finished) {
+        List<Pending> next = new ArrayList<>();
+        synchronized (this) {
+            active--;
+            Long userId = finished.admission.getUserId();
+            if (userId != null) {
+                activeByUser.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+            }
+            // 名额直接转交给队列中虚拟完成时间最小、且所属用户未达上限的任务
+            while (active < maxConcurrency) {
+                Pending candidate = pollEligible();
+                if (candidate == null) {
+                    break;
+                }
+                virtualTime = Math.max(virtualTime, candidate.finishTag);
+                acquire(candidate);
+                next.add(candidate);
+            }
+        }
+        for (Pending pending : next) {
+            dispatch(pending);
+        }
+    }
+
+    private Pending pollEligible() {
+        Iterator<Pending> iterator = waiting.iterator();
+        while (iterator.hasNext()) {
+            Pending pending = iterator.next();
+            if (belowUserLimit(pending.admission.getUserId())) {
+                iterator.remove();
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    private boolean belowUserLimit(Long userId) {
+        return userId == null || maxPerUser <= 0 || activeByUser.getOrDefault(userId, 0) < maxPerUser;
+    }
+
+    private void acquire(Pending pending) {
+        active++;
+        Long userId = pending.admission.getUserId();
+        if (userId != null) {
+            activeByUser.merge(userId, 1, Integer::sum);
+        }
+    }
+
+    private void dispatch(Pending pending) {
+        Timer.builder("ai.generation.queue.wait")
+                .description("生成任务的排队时间")
+                .tag("pool", name)
+                .tag("role", pending.admission.getRole().name().toLowerCase())
+                .register(meterRegistry)
+                .record(System.nanoTime() - pending.submittedAt, TimeUnit.NANOSECONDS);
+        try {
+            workerExecutor.execute(() -> {
+                CompletableFuture<?> finished;
+                try {
+                    finished = pending.task.start();
+                } catch (Throwable e) {
+                    log.error("生成任务启动失败, pool: {}, {}", name, e.getMessage(), e);
+                    finished = null;
+                }
+                if (finished == null) {
+                    release(pending);
+                } else {
+                    finished.whenComplete((result, error) -> release(pending));
+                }
+            });
+        } catch (Exception e) {
+            log.error("生成任务提交失败, pool: {}, {}", name, e.getMessage());
+            release(pending);
+        }
+    }
+
+    /**
+     * 向排队位置发生变化的任务报告新的位置
+     */
+    private void reportPositions() {
+        List<Pending> changed = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        synchronized (this) {
+            int position = 0;
+            for (Pending pending : waiting) {
+                position++;
+                if (pending.reportedPosition != position) {
+                    pending.reportedPosition = position;
+                    changed.add(pending);
+                    positions.add(position);
+                }
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        // 回调会写 SSE，放到工作线程上执行，不占用定时器线程
+        try {
+            workerExecutor.execute(() -> {
+                for (int i = 0; i < changed.size(); i++) {
+                    notifyQueued(changed.get(i), positions.get(i));
+                }
+            });
+        } catch (Exception e) {
+            log.debug("报告排队位置失败, pool: {}, {}", name, e.getMessage());
+        }
+    }
+
+    private void notifyQueued(Pending pending, int position) {
+        try {
+            pending.admission.queued(position);
+        } catch (Exception e) {
+            log.debug("报告排队位置失败, pool: {}, {}", name, e.getMessage());
+        }
+    }
+
+    private void reject(Consumer<String> onRejected, String reason) {
+        rejected.incrementAndGet();
+        log.warn("生成请求被拒绝, pool: {}, reason: {}", name, reason);
+        try {
+            onRejected.accept(reason);
+        } catch (Exception e) {
+            log.error("处理拒绝回调失败: {}", e.getMessage());
+        }
+    }
+
+    synchronized int getActive() {
+        return active;
+    }
+
+    synchronized int getQueued() {
+        return waiting.size();
+    }
+
+    long getRejected() {
+        return rejected.get();
+    }
+
+    private static final class Pending {
+        private final Admission admission;
+        private final GenerationTask task;
+        private final Consumer<String> onRejected;
+        private final long submittedAt = System.nanoTime();
+        // 以下字段只在持有任务池锁时访问
+        private double finishTag;
+        private long sequence;
+        private int reportedPosition;
+
+        private Pending(Admission admission, GenerationTask task, Consumer<String> onRejected) {
+            this.admission = admission;
+            this.task = task;
+            this.onRejected = onRejected;
+        }
+    }
+}
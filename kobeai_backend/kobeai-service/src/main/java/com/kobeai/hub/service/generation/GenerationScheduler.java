@@ -0,0 +1,146 @@
+package com.kobeai.hub.service.generation;
+
+import com.kobeai.hub.constant.UserRole;
+import com.kobeai.hub.model.Platform;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * AI 生成调度器，所有平台实现共用
+ * 每个平台一个独立的任务池，限制最大并发并提供有界等待队列，
+ * 避免流量突增时无限制地创建线程。
+ * 等待队列按用户角色加权公平排队，并限制单个用户同时进行的生成数，排队位置通过回调报告给客户端。
+ * 会话摘要等后台任务进入独立的低优先级任务池（background），并发与队列都很小，不占用对话生成的名额
+ *
+ * 配置项（可按平台覆盖，如 ai.generation.deepseek.max-concurrency）：
+ * ai.generation.max-concurrency / queue-capacity / queue-timeout-ms / worker-threads /
+ * weights.{normal|vip|svip|admin} / max-per-user / queue-report-ms；
+ * 后台任务池使用 ai.generation.background.*
+ */
+@Slf4j
+@Component
+public class GenerationScheduler {
+
+    private static final String PREFIX = "ai.generation.";
+    private static final String BACKGROUND_POOL = "background";
+    private static final Map<UserRole, Integer> DEFAULT_WEIGHTS = Map.of(
+            UserRole.NORMAL, 1, UserRole.VIP, 2, UserRole.SVIP, 4, UserRole.ADMIN, 4);
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService workerExecutor;
+    private final ScheduledExecutorService timer;
+    private final Map<String, GenerationPool> pools = new ConcurrentHashMap<>();
+
+    public GenerationScheduler(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        int workerThreads = environment.getProperty(PREFIX + "worker-threads", Integer.class, 16);
+        this.workerExecutor = Executors.newFixedThreadPool(workerThreads, namedThreadFactory("ai-generation-"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("ai-generation-timer-"));
+    }
+
+    /**
+     * 提交生成任务
+     *
+     * @param platform   平台类型
+     * @param admission  所属用户与优先级
+     * @param task       生成任务
+     * @param onRejected 队列已满或等待超时时的回调，参数为拒绝原因
+     */
+    public void submit(Platform platform, Admission admission, GenerationTask task, Consumer<String> onRejected) {
+        submit(platform.name().toLowerCase(), admission, task, onRejected);
+    }
+
+    /**
+     * 提交低优先级的后台任务
+     *
+     * @param task       后台任务
+     * @param onRejected 队列已满或等待超时时的回调，参数为拒绝原因
+     */
+    public void submitBackground(GenerationTask task, Consumer<String> onRejected) {
+        submit(BACKGROUND_POOL, Admission.anonymous(), task, onRejected);
+    }
+
+    void submit(String poolName, Admission admission, GenerationTask task, Consumer<String> onRejected) {
+        pools.computeIfAbsent(poolName, this::createPool).submit(admission, task, onRejected);
+    }
+
+    private GenerationPool createPool(String name) {
+        boolean background = BACKGROUND_POOL.equals(name);
+        int maxConcurrency = background ? poolProperty(name, "max-concurrency", 2)
+                : property(name, "max-concurrency", 64);
+        int queueCapacity = background ? poolProperty(name, "queue-capacity", 64)
+                : property(name, "queue-capacity", 256);
+        long queueTimeoutMillis = background ? poolProperty(name, "queue-timeout-ms", 120000)
+                : property(name, "queue-timeout-ms", 30000);
+
+        Map<UserRole, Integer> weights = new EnumMap<>(UserRole.class);
+        for (UserRole role : UserRole.values()) {
+            weights.put(role, property(name, "weights." + role.name().toLowerCase(), DEFAULT_WEIGHTS.get(role)));
+        }
+        int maxPerUser = background ? 0 : property(name, "max-per-user", 3);
+        int reportMillis = background ? 0 : property(name, "queue-report-ms", 1000);
+
+        GenerationPool pool = new GenerationPool(name, maxConcurrency, queueCapacity, queueTimeoutMillis,
+                weights, maxPerUser, reportMillis, workerExecutor, timer, meterRegistry);
+        Gauge.builder("ai.generation.active", pool, GenerationPool::getActive)
+                .description("进行中的生成任务数")
+                .tag("pool", name)
+                .register(meterRegistry);
+        Gauge.builder("ai.generation.queued", pool, GenerationPool::getQueued)
+                .description("排队等待的生成任务数")
+                .tag("pool", name)
+                .register(meterRegistry);
+        FunctionCounter.builder("ai.generation.rejected", pool, GenerationPool::getRejected)
+                .description("被拒绝的生成任务数")
+                .tag("pool", name)
+                .register(meterRegistry);
+
+        log.info("创建生成任务池: {}, maxConcurrency: {}, queueCapacity: {}, queueTimeout: {}ms, weights: {}, "
+                + "maxPerUser: {}", name, maxConcurrency, queueCapacity, queueTimeoutMillis, weights, maxPerUser);
+        return pool;
+    }
+
+    private int property(String pool, String key, int defaultValue) {
+        int global = environment.getProperty(PREFIX + key, Integer.class, defaultValue);
+        return environment.getProperty(PREFIX + pool + "." + key, Integer.class, global);
+    }
+
+    /**
+     * 只读取任务池自身的配置，不继承全局值
+     */
+    private int poolProperty(String pool, String key, int defaultValue) {
+        return environment.getProperty(PREFIX + pool + "." + key, Integer.class, defaultValue);
+    }
+
+    @PreDestroy
+    public void close() {
+        timer.shutdown();
+        workerExecutor.shutdown();
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,17 @@
+package com.kobeai.hub.service.generation;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 一次 AI 生成任务
+ */
+@FunctionalInterface
+public interface GenerationTask {
+
+    /**
+     * 启动生成，在调度器的工作线程上执行
+     *
+     * @return 生成结束（成功、失败或取消）时完成的 Future，调度器据此释放并发名额
+     */
+    CompletableFuture<?> start();
+}
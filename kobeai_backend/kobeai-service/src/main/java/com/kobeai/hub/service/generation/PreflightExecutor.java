@@ -0,0 +1,107 @@
+package com.kobeai.hub.service.generation;
+
+import com.kobeai.hub.model.Platform;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 对话请求前置步骤的并行执行器
+ * 读取历史、保存消息、解析接入点、查找模板等互不依赖的步骤在独立的线程池中并行执行，
+ * 按依赖关系用 CompletableFuture 组合，只在真正需要结果时等待；各阶段耗时记录在 {@link PreflightTrace} 中，
+ * 首个 token 到达时输出耗时分解
+ *
+ * 配置项：ai.generation.preflight-threads
+ * 监控指标：ai.preflight.stage（按阶段）、ai.request.ttft（从收到请求到首个 token）
+ */
+@Slf4j
+@Component
+public class PreflightExecutor {
+
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor;
+
+    public PreflightExecutor(Environment environment, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        int threads = environment.getProperty("ai.generation.preflight-threads", Integer.class, 16);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ai-preflight-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 异步执行一个阶段并记录耗时
+     */
+    public <T> CompletableFuture<T> supply(PreflightTrace trace, String stage, Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(() -> trace.time(stage, supplier), executor);
+    }
+
+    /**
+     * 异步执行不在关键路径上的操作，失败只记录日志
+     */
+    public void run(String name, Runnable task) {
+        CompletableFuture.runAsync(task, executor).whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.warn("{}失败: {}", name, error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 等待阶段结果，失败时抛出原始异常
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 首个 token 到达（或开始重放缓存）时输出耗时分解，每个请求只输出一次
+     */
+    public void report(PreflightTrace trace, Platform platform) {
+        if (!trace.markReported()) {
+            return;
+        }
+        long total = trace.elapsedNanos();
+        for (Map.Entry<String, Long> stage : trace.stages().entrySet()) {
+            Timer.builder("ai.preflight.stage")
+                    .description("对话请求各前置阶段的耗时")
+                    .tag("stage", stage.getKey())
+                    .register(meterRegistry)
+                    .record(stage.getValue(), TimeUnit.NANOSECONDS);
+        }
+        String platformName = platform != null ? platform.name().toLowerCase() : "unknown";
+        Timer.builder("ai.request.ttft")
+                .description("从收到请求到首个 token 的耗时")
+                .tag("platform", platformName)
+                .register(meterRegistry)
+                .record(total, TimeUnit.NANOSECONDS);
+        log.info("首 token 耗时 {}ms，平台: {}，各阶段: {}", TimeUnit.NANOSECONDS.toMillis(total), platformName, trace);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,75 @@
+package com.kobeai.hub.service.generation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 单次对话请求的首 token 耗时分解
+ * 记录从收到请求到上游返回首个 token 之间各阶段的耗时，由 {@link PreflightExecutor#report} 统一输出。
+ * 各阶段可能在不同线程上并行执行，耗时之和可以大于总耗时
+ */
+public class PreflightTrace {
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+    private boolean reported;
+
+    /**
+     * 在当前线程执行一个阶段并记录耗时
+     */
+    public <T> T time(String stage, Supplier<T> supplier) {
+        long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            record(stage, start);
+        }
+    }
+
+    /**
+     * 记录从 stageStartNanos 到现在的阶段耗时
+     */
+    public synchronized void record(String stage, long stageStartNanos) {
+        stages.put(stage, System.nanoTime() - stageStartNanos);
+    }
+
+    /**
+     * @return 从请求开始到现在的耗时（纳秒）
+     */
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * 标记为已输出，只有第一次调用返回 true
+     */
+    synchronized boolean markReported() {
+        if (reported) {
+            return false;
+        }
+        reported = true;
+        return true;
+    }
+
+    /**
+     * @return 各阶段耗时（纳秒），按记录顺序
+     */
+    public synchronized Map<String, Long> stages() {
+        return new LinkedHashMap<>(stages);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> stage : stages.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(stage.getKey()).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMillis(stage.getValue())).append("ms");
+        }
+        return builder.toString();
+    }
+}
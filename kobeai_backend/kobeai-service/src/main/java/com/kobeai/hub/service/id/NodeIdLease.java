@@ -0,0 +1,170 @@
+package com.kobeai.hub.service.id;
+
+import com.kobeai.hub.constant.RedisKeyConstant;
+import com.kobeai.hub.id.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID 生成器的节点号租约
+ * 启动时在 Redis 中用 SET NX 占用一个空闲的节点号（带过期时间），并定期续期，保证同时运行的节点不会使用相同的节点号；
+ * 生成器只在租约有效期内（以申请或续期前的本地时刻起算 lease-ttl-ms）分配 ID：
+ * 续期失败时租约到期后自动暂停分配，租约被其他节点占用时立即暂停并重新申请，重新持有后恢复。停止时主动释放。
+ * 配置了固定节点号时不使用 Redis；未配置时启动阶段必须申请到节点号，否则启动失败
+ *
+ * 配置项：app.id.node-id / lease-ttl-ms / renew-interval-ms / max-backward-ms
+ */
+@Slf4j
+@Component
+public class NodeIdLease {
+
+    private static final String PREFIX = "app.id.";
+    // 持有者一致时续期，返回 1；否则返回 0
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('PEXPIRE', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final SnowflakeIdGenerator generator;
+    private final String owner = UUID.randomUUID().toString();
+    private final long leaseTtlMillis;
+    private final long leaseTtlNanos;
+    private final ScheduledExecutorService renewer;
+    // 当前持有的节点号，未持有租约时为 -1
+    private volatile int leasedNodeId = -1;
+
+    public NodeIdLease(StringRedisTemplate redisTemplate, Environment environment) {
+        this.redisTemplate = redisTemplate;
+        this.leaseTtlMillis = environment.getProperty(PREFIX + "lease-ttl-ms", Long.class, 60000L);
+        this.leaseTtlNanos = TimeUnit.MILLISECONDS.toNanos(leaseTtlMillis);
+        long maxBackwardMillis = environment.getProperty(PREFIX + "max-backward-ms", Long.class, 5L);
+        int fixedNodeId = environment.getProperty(PREFIX + "node-id", Integer.class, -1);
+
+        if (fixedNodeId >= 0) {
+            this.generator = new SnowflakeIdGenerator(fixedNodeId, maxBackwardMillis);
+        } else {
+            long startedAt = System.nanoTime();
+            int nodeId = acquire();
+            if (nodeId < 0) {
+                throw new IllegalStateException("无法从 Redis 申请 ID 节点号，请检查 Redis 或配置 " + PREFIX + "node-id");
+            }
+            this.generator = new SnowflakeIdGenerator(nodeId, maxBackwardMillis);
+            generator.lease(nodeId, startedAt + leaseTtlNanos);
+        }
+        SnowflakeIdGenerator.install(generator);
+        log.info("ID 生成器节点号: {}{}", generator.getNodeId(), fixedNodeId >= 0 ? "（固定配置）" : "（Redis 租约）");
+
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "id-node-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fixedNodeId < 0) {
+            long renewIntervalMillis = environment.getProperty(PREFIX + "renew-interval-ms", Long.class,
+                    leaseTtlMillis / 3);
+            renewer.scheduleWithFixedDelay(this::renew, renewIntervalMillis, renewIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public int getNodeId() {
+        return generator.getNodeId();
+    }
+
+    /**
+     * 供 Bean 注入使用的生成器，与 {@link SnowflakeIdGenerator#shared()} 是同一个实例
+     */
+    public SnowflakeIdGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * 从随机位置开始依次尝试占用节点号
+     *
+     * @return 占用到的节点号，全部被占用或 Redis 不可用时为 -1
+     */
+    private int acquire() {
+        int slots = SnowflakeIdGenerator.MAX_NODE_ID + 1;
+        int start = ThreadLocalRandom.current().nextInt(slots);
+        try {
+            for (int i = 0; i < slots; i++) {
+                int nodeId = (start + i) % slots;
+                if (tryLease(nodeId)) {
+                    leasedNodeId = nodeId;
+                    return nodeId;
+                }
+            }
+            log.error("ID 节点号已全部被占用（共 {} 个）", slots);
+        } catch (Exception e) {
+            log.warn("申请 ID 节点号失败: {}", e.getMessage());
+        }
+        leasedNodeId = -1;
+        return -1;
+    }
+
+    private boolean tryLease(int nodeId) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key(nodeId), owner,
+                Duration.ofMillis(leaseTtlMillis)));
+    }
+
+    private void renew() {
+        // 有效期从发出请求前起算，早于 Redis 中的过期时刻
+        long startedAt = System.nanoTime();
+        try {
+            int nodeId = leasedNodeId;
+            if (nodeId >= 0) {
+                Long renewed = redisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key(nodeId)), owner,
+                        String.valueOf(leaseTtlMillis));
+                // 租约已过期但未被占用时直接重新占用，节点号不变
+                if ((renewed != null && renewed == 1) || tryLease(nodeId)) {
+                    generator.lease(nodeId, startedAt + leaseTtlNanos);
+                    return;
+                }
+                generator.release();
+                log.warn("ID 节点号 {} 的租约已被其他节点占用，暂停分配 ID 并重新申请", nodeId);
+            }
+            int acquired = acquire();
+            if (acquired >= 0) {
+                generator.lease(acquired, startedAt + leaseTtlNanos);
+                log.info("ID 生成器切换到节点号: {}", acquired);
+            }
+        } catch (Exception e) {
+            // 租约到期前未能续期时生成器自行暂停，下次续期成功后恢复
+            log.warn("续期 ID 节点号失败: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renewer.shutdownNow();
+        int nodeId = leasedNodeId;
+        if (nodeId < 0) {
+            return;
+        }
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(key(nodeId)), owner);
+        } catch (Exception e) {
+            log.warn("释放 ID 节点号失败: {}", e.getMessage());
+        }
+    }
+
+    private static String key(int nodeId) {
+        return RedisKeyConstant.ID_NODE_KEY + nodeId;
+    }
+}
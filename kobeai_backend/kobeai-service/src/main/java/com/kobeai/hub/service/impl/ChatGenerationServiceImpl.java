@@ -0,0 +1,720 @@
+package com.kobeai.hub.service.impl;
+
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.model.Message;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.model.PromptTemplate;
+import com.kobeai.hub.model.User;
+import com.kobeai.hub.service.AI.ChatGenerationService;
+import com.kobeai.hub.service.PromptOptimizationService;
+import com.kobeai.hub.service.cache.CompletionCache;
+import com.kobeai.hub.service.cache.SemanticCache;
+import com.kobeai.hub.service.context.ContextBuilder;
+import com.kobeai.hub.service.context.ConversationHistory;
+import com.kobeai.hub.service.context.ConversationSummarizer;
+import com.kobeai.hub.service.generation.Admission;
+import com.kobeai.hub.service.generation.GenerationScheduler;
+import com.kobeai.hub.service.generation.PreflightExecutor;
+import com.kobeai.hub.service.generation.PreflightTrace;
+import com.kobeai.hub.service.provider.ChatProvider;
+import com.kobeai.hub.service.provider.ChatProviderRegistry;
+import com.kobeai.hub.service.provider.ProviderRouter;
+import com.kobeai.hub.service.provider.RoutedCall;
+import com.kobeai.hub.service.stream.ChatChunk;
+import com.kobeai.hub.service.stream.ChatChunkParser;
+import com.kobeai.hub.service.stream.ChatEvent;
+import com.kobeai.hub.service.stream.ChatEventStream;
+import com.kobeai.hub.service.stream.ReplyCheckpoint;
+import com.kobeai.hub.service.stream.ReplyCheckpointer;
+import com.kobeai.hub.service.stream.SseCoalescer;
+import com.kobeai.hub.service.stream.SseCoalescerFactory;
+import com.kobeai.hub.service.stream.StreamJournal;
+import com.kobeai.hub.service.stream.StreamListener;
+import com.kobeai.hub.service.stream.StreamOptions;
+import com.kobeai.hub.service.stream.UpstreamTimeoutException;
+import com.kobeai.hub.service.tokenizer.Tokenizer;
+import com.kobeai.hub.service.usage.UsageAllowance;
+import com.kobeai.hub.service.usage.UsageMeter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 各平台共用的流式生成流程
+ * 指定平台时直接请求该平台；未指定时由 {@link ProviderRouter} 按 TTFT 与错误率选择平台，
+ * 并在主请求迟迟不出字或失败时对冲/切换到次优平台
+ */
+@Slf4j
+@Service
+public class ChatGenerationServiceImpl implements ChatGenerationService {
+
+    private static final String SYSTEM_PROMPT = "你是一个专业、友好的AI助手，请用简洁专业的方式回答用户的问题。";
+    private static final String QUOTA_EXHAUSTED = "今日 token 额度已用完，请明天再试";
+    private static final String UPSTREAM_TIMEOUT = "AI 平台响应超时，回复不完整";
+
+    private final ChatChunkParser chunkParser = new ChatChunkParser();
+    private final GenerationScheduler generationScheduler;
+    private final ChatTurnWriter chatTurnWriter;
+    private final ChatProviderRegistry providerRegistry;
+    private final ProviderRouter providerRouter;
+    private final SseCoalescerFactory coalescerFactory;
+    private final StreamJournal streamJournal;
+    private final CompletionCache completionCache;
+    private final SemanticCache semanticCache;
+    private final ContextBuilder contextBuilder;
+    private final ConversationSummarizer conversationSummarizer;
+    private final PreflightExecutor preflightExecutor;
+    private final Tokenizer tokenizer;
+    private final UsageMeter usageMeter;
+    private final ReplyCheckpointer replyCheckpointer;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    private PromptOptimizationService promptOptimizationService;
+
+    public ChatGenerationServiceImpl(ChatTurnWriter chatTurnWriter, ChatProviderRegistry providerRegistry,
+            ProviderRouter providerRouter, GenerationScheduler generationScheduler,
+            SseCoalescerFactory coalescerFactory, StreamJournal streamJournal, CompletionCache completionCache,
+            SemanticCache semanticCache, ContextBuilder contextBuilder, ConversationSummarizer conversationSummarizer,
+            PreflightExecutor preflightExecutor, Tokenizer tokenizer, UsageMeter usageMeter,
+            ReplyCheckpointer replyCheckpointer, MeterRegistry meterRegistry) {
+        this.generationScheduler = generationScheduler;
+        this.chatTurnWriter = chatTurnWriter;
+        this.providerRegistry = providerRegistry;
+        this.providerRouter = providerRouter;
+        this.coalescerFactory = coalescerFactory;
+        this.streamJournal = streamJournal;
+        this.completionCache = completionCache;
+        this.semanticCache = semanticCache;
+        this.contextBuilder = contextBuilder;
+        this.conversationSummarizer = conversationSummarizer;
+        this.preflightExecutor = preflightExecutor;
+        this.tokenizer = tokenizer;
+        this.usageMeter = usageMeter;
+        this.replyCheckpointer = replyCheckpointer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public SseEmitter sendMessage(Platform platform, String message, CompletableFuture<ConversationHistory> history,
+            Message aiMessage, User user, StreamOptions options, PreflightTrace trace) {
+        Long userId = user != null ? user.getId() : null;
+        // 解析接入点与查找模板互不依赖，并行执行
+        // 指定平台时只请求该平台；自动模式下按延迟与健康状况排序，失败时依次切换
+        CompletableFuture<List<AIPlatform>> endpointsFuture = preflightExecutor.supply(trace, "endpoint",
+                () -> platform != null
+                        ? Collections.singletonList(providerRegistry.resolveEndpoint(platform, userId))
+                        : providerRouter.rank(providerRegistry.availableEndpoints(userId)));
+        CompletableFuture<PromptTemplate> templateFuture = preflightExecutor.supply(trace, "template",
+                () -> promptOptimizationService.findBestTemplate("chat", message));
+        // 指定平台时任务池已确定，无需等待接入点解析
+        Platform primary = platform;
+        if (primary == null) {
+            List<AIPlatform> ranked = PreflightExecutor.await(endpointsFuture);
+            primary = ranked.isEmpty() ? Platform.DEEPSEEK : ranked.get(0).getType();
+        }
+        log.info("准备发送消息到 {} API{}", primary, platform == null ? "（自动选择）" : "");
+
+        SseEmitter emitter = new SseEmitter(30 * 60 * 1000L);
+        // 事件带递增 id 并写入流式输出日志，断线后可通过续传接口继续接收
+        ChatEventStream events = streamJournal.open(emitter, aiMessage.getId());
+
+        // 客户端断开（超时、出错或连接关闭）时停止写连接；不支持续传时直接取消上游请求，
+        // 正常结束时该回调不产生影响
+        AtomicBoolean disconnected = new AtomicBoolean(false);
+        AtomicReference<ReplyListener> activeListener = new AtomicReference<>();
+        Runnable onDisconnect = () -> {
+            disconnected.set(true);
+            events.detach();
+            ReplyListener listener = activeListener.get();
+            if (listener != null) {
+                listener.clientDisconnected();
+            }
+        };
+        emitter.onTimeout(onDisconnect);
+        emitter.onError(e -> onDisconnect.run());
+        emitter.onCompletion(onDisconnect);
+
+        // 交由生成调度器执行，超出并发与排队上限时直接返回错误事件
+        long submittedAt = System.nanoTime();
+        // 按用户角色加权排队，排队期间向客户端报告位置
+        Admission admission = Admission.of(user, position -> {
+            try {
+                events.send(ChatEvent.of("queued", String.valueOf(position)));
+            } catch (IOException e) {
+                log.debug("发送排队位置失败: {}", e.getMessage());
+            }
+        });
+        generationScheduler.submit(primary, admission, () -> {
+            trace.record("queue", submittedAt);
+            if (disconnected.get() && !events.isResumable()) {
+                log.info("客户端已断开，跳过本次生成");
+                return CompletableFuture.completedFuture(null);
+            }
+            UsageAllowance allowance = usageMeter.open(user);
+            try {
+                if (allowance.isExhausted()) {
+                    handleRejection(QUOTA_EXHAUSTED, aiMessage, events);
+                    return CompletableFuture.completedFuture(null);
+                }
+                log.info("开始处理消息发送");
+                events.send(ChatEvent.of("init", "连接已建立"));
+
+                List<AIPlatform> endpoints = PreflightExecutor.await(endpointsFuture);
+                if (endpoints.isEmpty()) {
+                    throw new RuntimeException("没有可用的AI平台，请先配置平台密钥");
+                }
+                AIPlatform endpoint = endpoints.get(0);
+                // 验证配置是否有效
+                if (endpoint.getApiKey() == null || endpoint.getApiKey().trim().isEmpty()) {
+                    throw new RuntimeException(endpoint.getType() + " API密钥未配置");
+                }
+                if (endpoint.getBaseUrl() == null || endpoint.getBaseUrl().trim().isEmpty()) {
+                    throw new RuntimeException(endpoint.getType() + " API基础URL未配置");
+                }
+                ChatProvider provider = providerRegistry.get(endpoint.getType());
+
+                // 使用 Prompt 优化引擎优化消息；稳定前缀布局下模板指令单独发送，用户消息保持原文
+                PromptTemplate template = PreflightExecutor.await(templateFuture);
+                boolean stablePrefix = contextBuilder.isStablePrefix(endpoint.getType());
+                String optimizedMessage = message;
+                String instructions = null;
+                if (template != null) {
+                    Map<String, Object> variables = new LinkedHashMap<>();
+                    variables.put("model", provider.getModel(endpoint));
+                    variables.put("temperature", provider.getTemperature(endpoint));
+                    if (stablePrefix) {
+                        instructions = promptOptimizationService.templateInstructions(template, variables);
+                    } else {
+                        optimizedMessage = trace.time("optimize",
+                                () -> promptOptimizationService.optimizePrompt(message, template, variables));
+                        int originalTokens = tokenizer.count(endpoint.getType(), message);
+                        if (originalTokens > 0) {
+                            log.info("消息已优化，Token 减少: {}%", (originalTokens
+                                    - tokenizer.count(endpoint.getType(), optimizedMessage)) * 100.0
+                                    / originalTokens);
+                        }
+                    }
+                }
+
+                // 系统提示 + 按 token 预算装填的历史 + 模板指令 + 本次消息
+                ConversationHistory conversationHistory = PreflightExecutor.await(history);
+                String userMessage = optimizedMessage;
+                String templateInstructions = instructions;
+                List<Map<String, String>> messages = trace.time("context", () -> contextBuilder.build(
+                        endpoint.getType(), SYSTEM_PROMPT, templateInstructions, conversationHistory, userMessage));
+
+                SseCoalescer coalescer = coalescerFactory.create(endpoint.getType(), events, options);
+
+                // 完全相同或近似重复的请求直接重放缓存的回复，不再请求平台
+                String model = endpoint.getType() + "/" + provider.getModel(endpoint);
+                double temperature = provider.getTemperature(endpoint);
+                int maxTokens = provider.getMaxTokens(endpoint);
+                String cacheKey = completionCache.key(options, model, messages, temperature, maxTokens);
+                SemanticCache.Key semanticKey = semanticCache.key(options, model, messages, temperature, maxTokens);
+                String cached = trace.time("cache", () -> {
+                    String hit = cacheKey != null ? completionCache.get(cacheKey) : null;
+                    return hit == null && semanticKey != null ? semanticCache.get(semanticKey) : hit;
+                });
+                if (cached != null) {
+                    preflightExecutor.report(trace, endpoint.getType());
+                    return replayCached(cached, endpoint.getType(), aiMessage, events, coalescer,
+                            () -> disconnected.get() && !events.isResumable());
+                }
+
+                // 按提示词预占额度，生成过程中按增量继续预占
+                int promptTokens = 0;
+                for (Map<String, String> item : messages) {
+                    promptTokens += tokenizer.count(endpoint.getType(), item.get("content"));
+                }
+                if (!allowance.reserve(promptTokens)) {
+                    allowance.close();
+                    handleRejection(QUOTA_EXHAUSTED, aiMessage, events);
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                // 异步流式读取，当前线程在请求发出后即返回
+                ReplyListener listener = new ReplyListener(aiMessage, promptTokens, events, coalescer, cacheKey,
+                        semanticKey, endpoint, trace, allowance, template != null ? template.getName() : "none");
+                listener.finished.whenComplete((ignored, error) -> allowance.close());
+                RoutedCall call = providerRouter.open(endpoints, messages, platform == null, listener);
+                listener.attach(call);
+                activeListener.set(listener);
+                call.start();
+                if (disconnected.get()) {
+                    listener.clientDisconnected();
+                }
+                return listener.finished;
+            } catch (Exception e) {
+                allowance.close();
+                handleException(e, aiMessage, events);
+                return CompletableFuture.completedFuture(null);
+            }
+        }, reason -> handleRejection(reason, aiMessage, events));
+
+        return emitter;
+    }
+
+    /**
+     * 以流式方式重放缓存的回复，消息直接保存为完整回复
+     */
+    private CompletableFuture<Void> replayCached(String cached, Platform platform, Message aiMessage,
+            ChatEventStream events,
+            SseCoalescer coalescer, BooleanSupplier stopped) {
+        log.info("命中回复缓存，消息ID: {}，长度: {}", aiMessage.getId(), cached.length());
+        aiMessage.setContent(cached);
+        aiMessage.setStatus(Message.Status.COMPLETED);
+        aiMessage.setTokenCount(tokenizer.count(platform, cached));
+        // 缓存命中不产生平台计费
+        saveReply(aiMessage, 0);
+        return completionCache.replay(cached, coalescer, stopped).handle((ignored, error) -> {
+            if (error != null || stopped.getAsBoolean()) {
+                coalescer.discard();
+                return null;
+            }
+            try {
+                coalescer.close();
+                events.send(ChatEvent.of("done", cached));
+                events.complete();
+            } catch (Exception e) {
+                log.warn("重放缓存回复失败: {}", e.getMessage());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 将上游的流式响应转发给前端，并在结束时保存 AI 回复
+     * 直通模式下上游 data 负载按字节原样转发，仅抽取 content 用于持久化。
+     * 客户端断开且宽限期内没有续传时取消上游请求，并将已生成的部分内容以 TRUNCATED 状态保存；
+     * 用户当日额度在生成过程中用完时同样中止并保存部分内容。
+     * 生成过程中已生成的内容经 {@link ReplyCheckpointer} 定期写入，结束时的最终写入覆盖检查点
+     */
+    private class ReplyListener implements StreamListener {
+
+        private final Message aiMessage;
+        // 本地估算的提示词 token 数，平台未返回 usage 时使用
+        private final int estimatedPromptTokens;
+        private final ChatEventStream events;
+        private final SseCoalescer coalescer;
+        // 回复缓存键与计算该键所用的接入点，只有该接入点生成的完整回复才写入缓存
+        private final String cacheKey;
+        private final SemanticCache.Key semanticKey;
+        private final AIPlatform cacheEndpoint;
+        private final StringBuilder contentBuilder = new StringBuilder();
+        private final ChatChunk chunk = new ChatChunk();
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        // 正常结束、出错或被取消三者只处理其一
+        private final AtomicBoolean settled = new AtomicBoolean(false);
+        private volatile boolean aborted;
+        private volatile RoutedCall call;
+        // 已收到的增量条数，每条增量约为一个 token
+        private int deltas;
+        private String finishReason;
+        // 平台在流末尾返回的 usage，未返回时为 -1
+        private int usagePromptTokens = -1;
+        private int usageCompletionTokens = -1;
+        private int usageCacheHitTokens = -1;
+        private final PreflightTrace trace;
+        private final UsageAllowance allowance;
+        // 本轮使用的模板名称，用于按模板统计平台前缀缓存命中率
+        private final String templateName;
+        // 生成过程中定期把已生成的内容写入数据库
+        private final ReplyCheckpoint checkpoint;
+        private volatile long dispatchedAt;
+
+        ReplyListener(Message aiMessage, int estimatedPromptTokens, ChatEventStream events,
+                SseCoalescer coalescer, String cacheKey, SemanticCache.Key semanticKey, AIPlatform cacheEndpoint,
+                PreflightTrace trace, UsageAllowance allowance, String templateName) {
+            this.aiMessage = aiMessage;
+            this.estimatedPromptTokens = estimatedPromptTokens;
+            this.events = events;
+            this.coalescer = coalescer;
+            this.cacheKey = cacheKey;
+            this.semanticKey = semanticKey;
+            this.cacheEndpoint = cacheEndpoint;
+            this.trace = trace;
+            this.allowance = allowance;
+            this.templateName = templateName;
+            this.checkpoint = replyCheckpointer.open(aiMessage.getId(), this::snapshot);
+            finished.whenComplete((ignored, error) -> checkpoint.close());
+            coalescer.onSendFailure(this::clientDisconnected);
+        }
+
+        void attach(RoutedCall call) {
+            this.call = call;
+            this.dispatchedAt = System.nanoTime();
+            if (aborted) {
+                call.cancel();
+            }
+        }
+
+        /**
+         * 客户端已断开：支持续传时继续生成并等待重连，否则立即取消
+         */
+        void clientDisconnected() {
+            if (settled.get()) {
+                return;
+            }
+            events.detach();
+            if (events.isResumable()) {
+                log.info("客户端已断开，继续生成以等待续传，消息ID: {}", aiMessage.getId());
+                streamJournal.watchDetached(aiMessage.getId(), settled::get, this::abort);
+            } else {
+                abort();
+            }
+        }
+
+        /**
+         * 取消上游请求并保存部分回复
+         */
+        void abort() {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            aborted = true;
+            RoutedCall current = call;
+            if (current != null) {
+                current.cancel();
+            }
+            coalescer.discard();
+            try {
+                String partialContent;
+                int generated;
+                synchronized (this) {
+                    partialContent = contentBuilder.toString();
+                    generated = deltas;
+                }
+                aiMessage.setContent(partialContent);
+                aiMessage.setStatus(Message.Status.TRUNCATED);
+                recordTokens(partialContent);
+
+                AIPlatform endpoint = current != null ? current.getSelected() : null;
+                String platformName = endpoint != null
+                        ? ChatProviderRegistry.configName(endpoint.getType())
+                        : "unknown";
+                int maxTokens = endpoint != null ? providerRegistry.get(endpoint.getType()).getMaxTokens(endpoint) : 0;
+                int saved = Math.max(0, maxTokens - generated);
+                Counter.builder("ai.stream.cancelled")
+                        .description("因客户端断开而取消的生成数")
+                        .tag("platform", platformName)
+                        .register(meterRegistry)
+                        .increment();
+                Counter.builder("ai.stream.tokens.saved")
+                        .description("提前取消生成节省的 token 数（按 max_tokens 减去已生成数估算）")
+                        .tag("platform", platformName)
+                        .register(meterRegistry)
+                        .increment(saved);
+                log.info("客户端已断开，已取消上游生成并保存部分回复，长度: {}，预计节省 {} tokens",
+                        partialContent.length(), saved);
+            } catch (Exception e) {
+                log.error("保存部分回复失败: {}", e.getMessage());
+            } finally {
+                finished.complete(null);
+            }
+        }
+
+        /**
+         * 额度已用完：取消上游请求，保存部分回复并通知客户端
+         */
+        void quotaExhausted() {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            aborted = true;
+            call.cancel();
+            try {
+                closeCoalescer();
+                String partialContent;
+                synchronized (this) {
+                    partialContent = contentBuilder.toString();
+                }
+                aiMessage.setContent(partialContent);
+                aiMessage.setStatus(Message.Status.TRUNCATED);
+                recordTokens(partialContent);
+                log.info("用户当日额度已用完，已中止生成，消息ID: {}，长度: {}", aiMessage.getId(),
+                        partialContent.length());
+                events.send(ChatEvent.of("error", QUOTA_EXHAUSTED));
+                events.complete();
+            } catch (Exception e) {
+                log.error("保存部分回复失败: {}", e.getMessage());
+            } finally {
+                finished.complete(null);
+            }
+        }
+
+        @Override
+        public void onData(byte[] buffer, int offset, int length) {
+            if (settled.get()) {
+                return;
+            }
+            String content;
+            boolean exhausted = false;
+            synchronized (this) {
+                try {
+                    chunkParser.parse(buffer, offset, length, chunk);
+                } catch (IOException e) {
+                    log.error("解析响应数据失败: {}", e.getMessage());
+                    return;
+                }
+                content = chunk.getContent();
+                if (content != null) {
+                    contentBuilder.append(content);
+                    checkpoint.onDelta();
+                    if (deltas++ == 0) {
+                        trace.record("upstream", dispatchedAt);
+                        preflightExecutor.report(trace, call.getSelected().getType());
+                    }
+                    exhausted = !allowance.reserve(1);
+                }
+                if (chunk.getFinishReason() != null) {
+                    finishReason = chunk.getFinishReason();
+                }
+                if (chunk.hasUsage()) {
+                    usagePromptTokens = chunk.getPromptTokens();
+                    usageCompletionTokens = chunk.getCompletionTokens();
+                    usageCacheHitTokens = chunk.getCacheHitTokens();
+                }
+            }
+            if (exhausted) {
+                quotaExhausted();
+                return;
+            }
+            try {
+                if (content == null && chunk.getFinishReason() == null && chunk.hasUsage()) {
+                    // 只携带 usage 的末尾 chunk（choices 为空）不转发给前端
+                    return;
+                }
+                if (call.getSelected().isStreamRelay()) {
+                    // 字节数组由解码器复用，需拷贝出本次负载
+                    coalescer.appendFrame(Arrays.copyOfRange(buffer, offset, offset + length),
+                            content == null ? 0 : content.length());
+                } else if (content != null) {
+                    coalescer.append(content);
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.warn("向客户端发送数据失败，连接可能已断开: {}", e.getMessage());
+                clientDisconnected();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                coalescer.close();
+                // 若contentBuilder有累积内容，则保存并发送完成事件；否则，返回错误提示
+                if (contentBuilder.length() > 0) {
+                    String finalContent = contentBuilder.toString();
+                    aiMessage.setContent(finalContent);
+                    aiMessage.setStatus(Message.Status.COMPLETED);
+                    recordTokens(finalContent);
+                    // 后台检查是否需要把较早的对话并入滚动摘要
+                    conversationSummarizer.onTurnCompleted(aiMessage.getConversation().getId(), call.getSelected());
+                    log.info("AI 响应已保存到数据库，平台: {}", call.getSelected().getType());
+
+                    events.send(ChatEvent.of("done", finalContent));
+                    // 只缓存平台明确正常结束的回复，因长度截断或连接提前关闭（没有 finish_reason）的不缓存
+                    if (call.getSelected() == cacheEndpoint && "stop".equals(finishReason)) {
+                        if (cacheKey != null) {
+                            completionCache.put(cacheKey, finalContent);
+                        }
+                        if (semanticKey != null) {
+                            semanticCache.put(semanticKey, finalContent);
+                        }
+                    }
+                } else {
+                    log.warn("未收到有效的响应数据");
+                    aiMessage.setStatus(Message.Status.ERROR);
+                    chatTurnWriter.failReply(aiMessage);
+                    events.send(ChatEvent.of("error", "未收到有效的响应数据"));
+                }
+                log.info("消息处理完成");
+                events.complete();
+            } catch (Exception e) {
+                handleException(e, aiMessage, events);
+            } finally {
+                finished.complete(null);
+            }
+        }
+
+        @Override
+        public void onHttpError(int statusCode, String body) {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                closeCoalescer();
+                handleErrorResponse(statusCode, body, aiMessage, events);
+            } finally {
+                finished.complete(null);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                closeCoalescer();
+                if (error instanceof UpstreamTimeoutException && contentBuilder.length() > 0) {
+                    saveTimedOut(error);
+                } else {
+                    handleException(error, aiMessage, events);
+                }
+            } finally {
+                finished.complete(null);
+            }
+        }
+
+        /**
+         * 上游空闲超时：已生成的部分内容以 TRUNCATED 状态保存，不写入回复缓存，并通知客户端回复不完整
+         */
+        private void saveTimedOut(Throwable error) {
+            try {
+                String partialContent;
+                synchronized (this) {
+                    partialContent = contentBuilder.toString();
+                }
+                aiMessage.setContent(partialContent);
+                aiMessage.setStatus(Message.Status.TRUNCATED);
+                recordTokens(partialContent);
+                log.warn("{}，已保存部分回复，消息ID: {}，长度: {}", error.getMessage(), aiMessage.getId(),
+                        partialContent.length());
+                events.send(ChatEvent.of("error", UPSTREAM_TIMEOUT));
+                events.complete();
+            } catch (Exception e) {
+                log.error("保存部分回复失败: {}", e.getMessage());
+            }
+        }
+
+        /**
+         * 保存回复，累加会话的 token 统计并计入用户用量，平台未返回 usage 时按本地估算
+         */
+        private void recordTokens(String content) {
+            int promptTokens;
+            int completionTokens;
+            int cacheHitTokens;
+            synchronized (this) {
+                promptTokens = usagePromptTokens;
+                completionTokens = usageCompletionTokens;
+                cacheHitTokens = usageCacheHitTokens;
+            }
+            if (completionTokens < 0) {
+                completionTokens = tokenizer.count(call.getSelected().getType(), content);
+            }
+            if (promptTokens < 0) {
+                promptTokens = estimatedPromptTokens;
+                cacheHitTokens = -1;
+            }
+            Platform platform = call.getSelected().getType();
+            if (cacheHitTokens >= 0) {
+                int cacheMissTokens = Math.max(0, promptTokens - cacheHitTokens);
+                aiMessage.setCacheHitTokens(cacheHitTokens);
+                aiMessage.setCacheMissTokens(cacheMissTokens);
+                recordPromptCache(platform, cacheHitTokens, cacheMissTokens);
+            }
+            aiMessage.setTokenCount(completionTokens);
+            saveReply(aiMessage, promptTokens + completionTokens);
+            allowance.record(platform, promptTokens, completionTokens, cacheHitTokens);
+        }
+
+        private void recordPromptCache(Platform platform, int hitTokens, int missTokens) {
+            String platformName = ChatProviderRegistry.configName(platform);
+            Counter.builder("ai.prompt.cache.tokens")
+                    .description("提示词命中 / 未命中平台前缀缓存的 token 数")
+                    .tag("platform", platformName)
+                    .tag("template", templateName)
+                    .tag("result", "hit")
+                    .register(meterRegistry)
+                    .increment(hitTokens);
+            Counter.builder("ai.prompt.cache.tokens")
+                    .description("提示词命中 / 未命中平台前缀缓存的 token 数")
+                    .tag("platform", platformName)
+                    .tag("template", templateName)
+                    .tag("result", "miss")
+                    .register(meterRegistry)
+                    .increment(missTokens);
+        }
+
+        private synchronized String snapshot() {
+            return contentBuilder.toString();
+        }
+
+        private void closeCoalescer() {
+            try {
+                coalescer.close();
+            } catch (Exception e) {
+                log.warn("写出剩余内容失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 按主键保存回复并累加会话的 token 统计，两者在同一事务内提交
+     */
+    private void saveReply(Message aiMessage, long usageTokens) {
+        try {
+            chatTurnWriter.completeReply(aiMessage, usageTokens);
+        } catch (Exception e) {
+            log.error("保存回复失败，消息ID: {}, {}", aiMessage.getId(), e.getMessage());
+        }
+    }
+
+    private void handleRejection(String reason, Message aiMessage, ChatEventStream events) {
+        try {
+            aiMessage.setContent("Error: " + reason);
+            aiMessage.setStatus(Message.Status.ERROR);
+            chatTurnWriter.failReply(aiMessage);
+
+            events.send(ChatEvent.of("error", reason));
+            events.complete();
+        } catch (Exception e) {
+            log.error("发送拒绝消息失败: {}", e.getMessage());
+        }
+    }
+
+    private void handleErrorResponse(int statusCode, String errorBody, Message aiMessage, ChatEventStream events) {
+        try {
+            String errorMessage = String.format("API请求失败，状态码: %d, 错误信息: %s",
+                    statusCode, errorBody);
+            log.error(errorMessage);
+
+            aiMessage.setContent("Error: " + errorMessage);
+            aiMessage.setStatus(Message.Status.ERROR);
+            chatTurnWriter.failReply(aiMessage);
+
+            events.send(ChatEvent.of("error", errorMessage));
+            events.complete();
+        } catch (IOException e) {
+            log.error("处理错误响应失败: {}", e.getMessage());
+        }
+    }
+
+    private void handleException(Throwable e, Message aiMessage, ChatEventStream events) {
+        log.error("消息处理过程中发生错误: {}", e.getMessage());
+        try {
+            aiMessage.setContent("Error: " + e.getMessage());
+            aiMessage.setStatus(Message.Status.ERROR);
+            chatTurnWriter.failReply(aiMessage);
+
+            events.send(ChatEvent.of("error", "发送消息失败: " + e.getMessage()));
+            events.complete();
+        } catch (IOException ex) {
+            log.error("发送错误消息失败: {}", ex.getMessage());
+        }
+    }
+}
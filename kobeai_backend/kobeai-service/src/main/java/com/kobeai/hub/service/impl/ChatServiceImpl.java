@@ -5,10 +5,17 @@ import com.kobeai.hub.model.*;
 import com.kobeai.hub.repository.AIPlatformRepository;
 import com.kobeai.hub.repository.ConversationRepository;
 import com.kobeai.hub.repository.MessageRepository;
-import com.kobeai.hub.service.AI.DouBaoService;
+import com.kobeai.hub.service.AI.ChatGenerationService;
 import com.kobeai.hub.service.ChatService;
-import com.kobeai.hub.service.AI.DeepSeekService;
 import com.kobeai.hub.service.UserService;
+import com.kobeai.hub.service.context.ContextBuilder;
+import com.kobeai.hub.service.context.ConversationHistory;
+import com.kobeai.hub.service.generation.ChatPreparer;
+import com.kobeai.hub.service.generation.PreflightExecutor;
+import com.kobeai.hub.service.generation.PreflightTrace;
+import com.kobeai.hub.service.tokenizer.Tokenizer;
+import com.kobeai.hub.service.stream.StreamJournal;
+import com.kobeai.hub.service.stream.StreamOptions;
 import com.kobeai.hub.util.JwtUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -19,9 +26,12 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Service
@@ -32,8 +42,13 @@ public class ChatServiceImpl implements ChatService {
     private final MessageRepository messageRepository;
     private final AIPlatformRepository platformRepository;
     private final UserService userService;
-    private final DeepSeekService deepseekService;
-    private final DouBaoService doubaoService;
+    private final ChatGenerationService chatGenerationService;
+    private final StreamJournal streamJournal;
+    private final ContextBuilder contextBuilder;
+    private final Tokenizer tokenizer;
+    private final PreflightExecutor preflightExecutor;
+    private final ChatPreparer chatPreparer;
+    private final ChatTurnWriter chatTurnWriter;
     private final JwtUtil jwtUtil;
 
     private String extractToken(String authHeader) {
@@ -90,77 +105,142 @@ public class ChatServiceImpl implements ChatService {
     }
 
     @Override
-    @Transactional
-    public SseEmitter sendMessage(Long conversationId, String content, User user, String platformType) {
-        // 获取或创建会话
-        Conversation conversation = conversationRepository.findById(conversationId)
-                .orElseGet(() -> {
-                    Conversation newConversation = new Conversation();
-                    newConversation.setUser(user);
-                    newConversation.setCreatedAt(LocalDateTime.now());
-                    return conversationRepository.save(newConversation);
-                });
+    public ApiResponse<?> prepare(Long conversationId, User user, String platformType) {
+        chatPreparer.prepare(user.getId(), conversationId, parsePlatform(platformType));
+        return ApiResponse.success("预热已开始");
+    }
+
+    /**
+     * 发送消息
+     * 有预热数据时直接使用其中的会话与历史；会话确定后，用户消息与 AI 回复占位在一个事务内批量插入，
+     * 同一事务中累加会话的消息数与 token 数，首条消息时顺带写入标题，读取历史与写入并行执行。
+     * 会话的消息数为 0 时说明是首条消息，无需读取历史；历史在生成任务真正组装上下文时才等待。
+     * 写入使用独立的短事务，因此方法本身不开启事务，避免新建的会话在提交前被其他线程引用
+     */
+    @Override
+    public SseEmitter sendMessage(Long conversationId, String content, User user, String platformType,
+            StreamOptions options) {
+        PreflightTrace trace = new PreflightTrace();
+        // 根据platformType选择AI平台，AUTO 表示由路由器自动选择
+        Platform platform = parsePlatform(platformType);
+
+        // 获取或创建会话，只使用当前用户自己的会话，不存在或不属于当前用户时新建
+        ChatPreparer.Prepared prepared = chatPreparer.take(user.getId(), conversationId);
+        Conversation conversation = prepared != null ? prepared.getConversation()
+                : trace.time("conversation", () -> conversationRepository
+                        .findByIdAndUserId(conversationId, user.getId())
+                        .orElseGet(() -> {
+                            Conversation newConversation = new Conversation();
+                            newConversation.setUser(user);
+                            newConversation.setCreatedAt(LocalDateTime.now());
+                            return conversationRepository.save(newConversation);
+                        }));
+        LocalDateTime now = LocalDateTime.now();
+        boolean firstTurn = Integer.valueOf(0).equals(conversation.getMessageCount());
+
+        // 读取历史（最新在前）；与本轮消息的写入并行，多读两条以便去掉本轮刚写入的消息
+        int maxMessages = contextBuilder.getMaxMessages();
+        CompletableFuture<List<Message>> recentMessages;
+        if (prepared != null) {
+            recentMessages = CompletableFuture.completedFuture(prepared.getRecentMessages());
+        } else if (firstTurn) {
+            recentMessages = CompletableFuture.completedFuture(Collections.emptyList());
+        } else {
+            recentMessages = preflightExecutor.supply(trace, "history",
+                    () -> messageRepository.findRecentMessages(conversation.getId(), maxMessages + 2));
+        }
 
         // 创建用户消息
         Message userMessage = new Message();
-        userMessage.setConversation(conversation);
         userMessage.setSenderId(user.getId());
         userMessage.setRole(Message.Role.USER);
         userMessage.setContent(content);
-        userMessage.setCreatedAt(LocalDateTime.now());
-        messageRepository.save(userMessage);
-
-        // 检查是否是第一条消息，如果是则更新对话标题
-        List<Message> existingMessages = messageRepository.findMessages(conversation.getId(), PageRequest.of(0, 1));
-        if (existingMessages.size() == 1) { // 只有一条消息说明是第一次发送
-            String title = generateTitleFromMessage(content);
-            conversation.setTitle(title);
-            conversationRepository.save(conversation);
-        }
+        userMessage.setTokenCount(tokenizer.count(platform, content));
+        userMessage.setCreatedAt(now);
 
-        // 创建AI回复消息
+        // 创建AI回复消息，续传需要消息ID，因此占位与用户消息一起写入并等待完成
         Message aiMessage = new Message();
-        aiMessage.setConversation(conversation);
         aiMessage.setSenderId(-1L); // 使用 -1 作为 AI 消息的发送者ID
         aiMessage.setRole(Message.Role.ASSISTANT);
         aiMessage.setContent("");
-        aiMessage.setCreatedAt(LocalDateTime.now());
-        messageRepository.save(aiMessage);
+        aiMessage.setStatus(Message.Status.STREAMING);
+        aiMessage.setCreatedAt(now);
+        trace.time("persist", () -> {
+            chatTurnWriter.insertTurn(conversation, userMessage, aiMessage, generateTitleFromMessage(content));
+            return null;
+        });
+        // 本轮写入前开始的预热读到的是旧历史
+        chatPreparer.invalidate(user.getId());
+
+        CompletableFuture<List<Message>> historyMessages = recentMessages.thenApply(
+                messages -> previousMessages(messages, maxMessages, userMessage.getId(), aiMessage.getId()));
+        if (conversation.getMessageCount() == null) {
+            // 会话创建于引入消息数之前，仍按有无更早的消息判断是否为首条消息
+            historyMessages.thenAccept(messages -> {
+                if (messages.isEmpty()) {
+                    preflightExecutor.run("更新会话标题", () -> conversationRepository.updateTitle(
+                            conversation.getId(), generateTitleFromMessage(content)));
+                }
+            });
+        }
 
-        // 获取历史消息用于上下文
-        List<Message> historyMessages = messageRepository.findRecentMessages(conversation.getId(), 10);
+        return chatGenerationService.sendMessage(platform, content,
+                historyMessages.thenApply(messages -> ConversationHistory.of(conversation, messages)),
+                aiMessage, user, options, trace);
+    }
 
-        // 根据platformType调用对应的AI服务生成回复
-        Platform platform;
+    private static Platform parsePlatform(String platformType) {
+        if (platformType == null || AUTO_PLATFORM.equalsIgnoreCase(platformType)) {
+            return null;
+        }
         try {
-            platform = Platform.valueOf(platformType.toUpperCase());
+            return Platform.valueOf(platformType.toUpperCase());
         } catch (IllegalArgumentException e) {
             log.error("无效的平台类型: {}", platformType);
             throw new RuntimeException("无效的平台类型: " + platformType);
         }
-        
-        // 根据不同的平台类型调用不同的服务实现
-        switch (platform) {
-            case DEEPSEEK:
-                return deepseekService.sendMessage(content, aiMessage, user);
-            case CHATGPT:
-                // todo:如果后续实现了ChatGPT服务，可以在这里调用
-                // return chatgptService.sendMessage(content, aiMessage);
-                throw new RuntimeException("ChatGPT服务尚未实现");
-            case CLAUDE:
-                // todo:如果后续实现了Claude服务，可以在这里调用
-                // return claudeService.sendMessage(content, aiMessage);
-                throw new RuntimeException("Claude服务尚未实现");
-            case BAIDU_WENXIN:
-                // todo:如果后续实现了百度文心一言服务，可以在这里调用
-                // return baiduWenxinService.sendMessage(content, aiMessage);
-                throw new RuntimeException("百度文心一言服务尚未实现");
-            case DOUBAO:
-                 return doubaoService.sendMessage(content, aiMessage);
-            default:
-                log.error("不支持的AI平台类型: {}", platform);
-                throw new RuntimeException("不支持的AI平台类型: " + platform);
+    }
+
+    /**
+     * 去掉本轮保存的消息，保留最近 limit 条
+     */
+    private static List<Message> previousMessages(List<Message> messages, int limit, Long userMessageId,
+            Long aiMessageId) {
+        List<Message> previous = new ArrayList<>(Math.min(limit, messages.size()));
+        for (Message message : messages) {
+            if (previous.size() >= limit) {
+                break;
+            }
+            if (!message.getId().equals(userMessageId) && !message.getId().equals(aiMessageId)) {
+                previous.add(message);
+            }
+        }
+        return previous;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public SseEmitter resumeStream(String lastEventId, User user) {
+        int separator = lastEventId == null ? -1 : lastEventId.lastIndexOf('-');
+        if (separator <= 0) {
+            throw new RuntimeException("无效的 Last-Event-ID: " + lastEventId);
+        }
+        Long messageId;
+        long lastSequence;
+        try {
+            messageId = Long.parseLong(lastEventId.substring(0, separator));
+            lastSequence = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("无效的 Last-Event-ID: " + lastEventId);
+        }
+
+        Message message = messageRepository.findById(messageId)
+                .orElseThrow(() -> new RuntimeException("消息不存在"));
+        if (!user.getId().equals(message.getConversation().getUser().getId())) {
+            throw new RuntimeException("无权访问该消息");
         }
+        log.info("续传 AI 回复，消息ID: {}, 从序号 {} 之后开始", messageId, lastSequence);
+        return streamJournal.resume(messageId, lastSequence);
     }
 
     // 根据消息内容生成标题
@@ -210,6 +290,7 @@ public class ChatServiceImpl implements ChatService {
             Conversation conversation = conversationRepository.findFirstByUserOrderByCreatedAtDesc(user)
                     .orElseThrow(() -> new RuntimeException("会话不存在"));
             conversationRepository.delete(conversation);
+            chatPreparer.invalidate(user.getId());
             return ApiResponse.success("删除成功");
         } catch (Exception e) {
             log.error("删除会话失败: {}", e.getMessage(), e);
@@ -357,10 +438,12 @@ public class ChatServiceImpl implements ChatService {
 
             // 清空会话消息
             messageRepository.deleteByConversationId(conversation.getId());
+            chatPreparer.invalidate(user.getId());
 
-            // 重置会话标题
+            // 重置会话标题与消息数
             conversation.setTitle("新对话");
             conversationRepository.save(conversation);
+            conversationRepository.resetMessageCount(conversation.getId());
 
             return ApiResponse.success("清空成功");
         } catch (Exception e) {
@@ -485,6 +568,7 @@ public class ChatServiceImpl implements ChatService {
             messageRepository.deleteByConversationId(id);
             // 直接通过 ID 删除会话，避免 orphanRemoval 导致更新 conversation_id 为 null
             conversationRepository.deleteById(id);
+            chatPreparer.invalidate(user.getId());
             return ApiResponse.success("删除成功");
         } catch (Exception e) {
             log.error("删除会话失败: {}", e.getMessage(), e);
@@ -0,0 +1,95 @@
+package com.kobeai.hub.service.impl;
+
+import com.kobeai.hub.id.SnowflakeIdGenerator;
+import com.kobeai.hub.model.Conversation;
+import com.kobeai.hub.model.Message;
+import com.kobeai.hub.repository.ConversationRepository;
+import com.kobeai.hub.repository.MessageRepository;
+import com.kobeai.hub.service.id.NodeIdLease;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一轮对话的写入路径
+ * 用户消息与 AI 回复占位在同一个 JDBC 批次中插入，会话的消息数、token 数以及首条消息的标题由同一条 UPDATE 完成，
+ * 两步在一个事务内提交；回复结束时按主键直接更新回复内容并累加会话统计，不再先读取实体再合并
+ */
+@Component
+@RequiredArgsConstructor
+public class ChatTurnWriter {
+
+    private static final String INSERT_MESSAGE_SQL = "INSERT INTO messages "
+            + "(id, conversation_id, sender_id, role, content, status, token_count, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    // MySQL 按从左到右的顺序执行赋值，标题判断读到的是累加前的消息数
+    private static final String UPDATE_CONVERSATION_SQL = "UPDATE conversations SET "
+            + "title = CASE WHEN message_count = 0 THEN ? ELSE title END, "
+            + "message_count = message_count + ?, token_count = COALESCE(token_count, 0) + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MessageRepository messageRepository;
+    private final ConversationRepository conversationRepository;
+    // 通过构造注入依赖节点号租约，保证写入前租约已初始化
+    private final NodeIdLease nodeIdLease;
+
+    /**
+     * 为本轮的用户消息与 AI 回复占位分配 ID 并写入
+     *
+     * @param conversation 所属会话
+     * @param userMessage  用户消息，tokenCount 计入会话的 token 统计
+     * @param aiMessage    AI 回复占位
+     * @param title        会话还没有消息时设置的标题
+     */
+    public void insertTurn(Conversation conversation, Message userMessage, Message aiMessage, String title) {
+        SnowflakeIdGenerator idGenerator = nodeIdLease.getGenerator();
+        userMessage.setId(idGenerator.nextId());
+        aiMessage.setId(idGenerator.nextId());
+        List<Object[]> rows = Arrays.asList(row(conversation.getId(), userMessage),
+                row(conversation.getId(), aiMessage));
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_MESSAGE_SQL, rows);
+            long tokens = userMessage.getTokenCount() != null ? userMessage.getTokenCount() : 0;
+            jdbcTemplate.update(UPDATE_CONVERSATION_SQL, title, 2, tokens, conversation.getId());
+        });
+        userMessage.setConversation(conversation);
+        aiMessage.setConversation(conversation);
+    }
+
+    /**
+     * 保存完成（或被截断）的回复，并把回复的 token 数与平台计费的 token 数累加到会话
+     *
+     * @param usageTokens 平台计费的 token 数，缓存命中时为 0
+     */
+    public void completeReply(Message aiMessage, long usageTokens) {
+        transactionTemplate.executeWithoutResult(status -> {
+            updateReply(aiMessage);
+            conversationRepository.addTokens(aiMessage.getConversation().getId(),
+                    aiMessage.getTokenCount() != null ? aiMessage.getTokenCount() : 0, usageTokens);
+        });
+    }
+
+    /**
+     * 保存失败或被拒绝的回复，不计入会话统计
+     */
+    public void failReply(Message aiMessage) {
+        updateReply(aiMessage);
+    }
+
+    private void updateReply(Message aiMessage) {
+        messageRepository.updateReply(aiMessage.getId(), aiMessage.getContent(), aiMessage.getStatus(),
+                aiMessage.getTokenCount(), aiMessage.getCacheHitTokens(), aiMessage.getCacheMissTokens());
+    }
+
+    private static Object[] row(Long conversationId, Message message) {
+        return new Object[] { message.getId(), conversationId, message.getSenderId(), message.getRole().name(),
+                message.getContent(), message.getStatus() != null ? message.getStatus().name() : null,
+                message.getTokenCount(), Timestamp.valueOf(message.getCreatedAt()) };
+    }
+}
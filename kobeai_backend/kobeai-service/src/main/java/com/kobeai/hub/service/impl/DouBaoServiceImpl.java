@@ -1,23 +1,36 @@
 package com.kobeai.hub.service.impl;
 
 import com.kobeai.hub.model.Message;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.service.AI.ChatGenerationService;
 import com.kobeai.hub.service.AI.DouBaoService;
+import com.kobeai.hub.service.context.ConversationHistory;
+import com.kobeai.hub.service.generation.PreflightTrace;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 豆包平台（方舟 OpenAI 兼容接口），生成流程见 {@link ChatGenerationServiceImpl}
+ */
 @Service
+@RequiredArgsConstructor
 public class DouBaoServiceImpl implements DouBaoService {
+
+    private final ChatGenerationService chatGenerationService;
+
     @Override
     public void close() {
-        // todo:实现豆包平台的关闭发送消息逻辑
-
+        // 上游连接由 ProviderStreamClient 统一管理，无需单独关闭
     }
 
     @Override
     public SseEmitter sendMessage(String message, Message aiMessage) {
-        // todo:实现豆包平台的发送消息逻辑
-        return null;
+        // 未指定用户时使用系统平台配置
+        return chatGenerationService.sendMessage(Platform.DOUBAO, message,
+                CompletableFuture.completedFuture(ConversationHistory.empty()), aiMessage, null, null,
+                new PreflightTrace());
     }
 }
-
-
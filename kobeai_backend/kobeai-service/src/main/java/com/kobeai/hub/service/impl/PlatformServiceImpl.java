@@ -5,6 +5,7 @@ import com.kobeai.hub.model.AIPlatform;
 import com.kobeai.hub.model.Platform;
 import com.kobeai.hub.repository.AIPlatformRepository;
 import com.kobeai.hub.service.PlatformService;
+import com.kobeai.hub.service.platform.AIPlatformRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -24,6 +25,7 @@ import java.util.Optional;
 public class PlatformServiceImpl implements PlatformService {
 
     private final AIPlatformRepository platformRepository;
+    private final AIPlatformRegistry platformRegistry;
 
     @Override
     @Transactional
@@ -38,6 +40,7 @@ public class PlatformServiceImpl implements PlatformService {
             platform.setEnabled(true);
             platform.setCreatedAt(LocalDateTime.now());
             platformRepository.save(platform);
+            platformRegistry.invalidate();
             return ApiResponse.success("添加成功");
         } catch (Exception e) {
             log.error("添加平台失败: {}", e.getMessage(), e);
@@ -61,6 +64,7 @@ public class PlatformServiceImpl implements PlatformService {
     public ApiResponse<?> deletePlatform(Long id) {
         try {
             platformRepository.deleteById(id);
+            platformRegistry.invalidate();
             return ApiResponse.success("删除成功");
         } catch (Exception e) {
             log.error("删除平台失败: {}", e.getMessage(), e);
@@ -68,6 +72,24 @@ public class PlatformServiceImpl implements PlatformService {
         }
     }
 
+    @Override
+    @Transactional
+    public ApiResponse<?> updateStreamRelay(Long id, boolean enabled) {
+        try {
+            Optional<AIPlatform> platform = platformRepository.findById(id);
+            if (!platform.isPresent()) {
+                return ApiResponse.error("平台不存在");
+            }
+            platform.get().setStreamRelay(enabled);
+            platformRepository.save(platform.get());
+            platformRegistry.invalidate();
+            return ApiResponse.success("更新成功");
+        } catch (Exception e) {
+            log.error("更新平台直通模式失败: {}", e.getMessage(), e);
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
     @Override
     public List<Map<String, Object>> listEnabledPlatformsSimple() {
         List<AIPlatform> platforms = platformRepository.findByEnabledTrue();
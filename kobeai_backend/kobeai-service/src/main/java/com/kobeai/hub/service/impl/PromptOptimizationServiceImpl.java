@@ -3,11 +3,14 @@ package com.kobeai.hub.service.impl;
 import com.kobeai.hub.model.PromptTemplate;
 import com.kobeai.hub.repository.PromptTemplateRepository;
 import com.kobeai.hub.service.PromptOptimizationService;
+import com.kobeai.hub.service.tokenizer.Tokenizer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -21,18 +24,22 @@ public class PromptOptimizationServiceImpl implements PromptOptimizationService
     @Autowired
     private PromptTemplateRepository templateRepository;
 
-    private static final Map<String, Integer> TOKEN_WEIGHTS = new HashMap<>();
+    @Autowired
+    private Tokenizer tokenizer;
+
+    // 预读的候选模板有效期，与预热缓存一致
+    @Value("${ai.prepare.ttl-ms:30000}")
+    private long preloadTtlMillis;
+
+    // 预读的候选模板（按类型）
+    private final Map<String, PreloadedTemplates> preloadedTemplates = new ConcurrentHashMap<>();
+
+    private static final String CONTENT_PLACEHOLDER = "{{content}}";
 
     // 定义关键词映射
     private static final Map<String, String> KEYWORD_TYPE_MAPPING = new HashMap<>();
 
     static {
-        // 初始化不同类型内容的 token 权重
-        TOKEN_WEIGHTS.put("code", 2); // 代码片段权重更高
-        TOKEN_WEIGHTS.put("url", 1); // URL 权重正常
-        TOKEN_WEIGHTS.put("number", 1); // 数字权重正常
-        TOKEN_WEIGHTS.put("text", 1); // 普通文本权重正常
-
         // 初始化关键词到模板类型的映射
         KEYWORD_TYPE_MAPPING.put("代码生成", "code_generation");
         KEYWORD_TYPE_MAPPING.put("优化代码", "code_optimization");
@@ -73,6 +80,24 @@ public class PromptOptimizationServiceImpl implements PromptOptimizationService
         }
     }
 
+    @Override
+    public String templateInstructions(PromptTemplate template, Map<String, Object> variables) {
+        if (template == null || template.getContent() == null) {
+            return null;
+        }
+        String applied = applyTemplate(CONTENT_PLACEHOLDER, template, variables);
+        int index = applied.indexOf(CONTENT_PLACEHOLDER);
+        if (index < 0) {
+            return applied.trim();
+        }
+        String before = applied.substring(0, index).trim();
+        String after = applied.substring(index + CONTENT_PLACEHOLDER.length()).trim();
+        if (before.isEmpty() || after.isEmpty()) {
+            return before.isEmpty() ? after : before;
+        }
+        return before + "\n" + after;
+    }
+
     @Override
     public String compressContext(String context, int maxTokens) {
         try {
@@ -110,35 +135,17 @@ public class PromptOptimizationServiceImpl implements PromptOptimizationService
 
     @Override
     public int estimateTokens(String content) {
-        if (content == null || content.isEmpty()) {
-            return 0;
-        }
-
-        // 1. 分词
-        String[] words = content.split("\\s+");
-        int totalTokens = 0;
-
-        // 2. 根据不同类型计算 token
-        for (String word : words) {
-            if (isCode(word)) {
-                totalTokens += word.length() * TOKEN_WEIGHTS.get("code");
-            } else if (isUrl(word)) {
-                totalTokens += TOKEN_WEIGHTS.get("url");
-            } else if (isNumber(word)) {
-                totalTokens += TOKEN_WEIGHTS.get("number");
-            } else {
-                totalTokens += word.length() * TOKEN_WEIGHTS.get("text");
-            }
-        }
-
-        return totalTokens;
+        return tokenizer.count(content);
     }
 
     @Override
     public PromptTemplate findBestTemplate(String type, String content) {
         try {
-            // 1. 首先尝试根据提供的类型直接查找
-            List<PromptTemplate> templates = templateRepository.findByType(type);
+            // 1. 首先尝试根据提供的类型直接查找（优先使用预读的候选模板）
+            List<PromptTemplate> templates = preloadedTemplates(type);
+            if (templates == null) {
+                templates = templateRepository.findByType(type);
+            }
 
             // 2. 如果没有找到，尝试通过内容关键词匹配
             if (templates.isEmpty()) {
@@ -163,6 +170,40 @@ public class PromptOptimizationServiceImpl implements PromptOptimizationService
         }
     }
 
+    @Override
+    public void preloadTemplates(String type) {
+        PreloadedTemplates current = preloadedTemplates.get(type);
+        // 剩余有效期超过一半时不重复读取
+        if (current != null && current.expiresAt - System.currentTimeMillis() > preloadTtlMillis / 2) {
+            return;
+        }
+        try {
+            List<PromptTemplate> templates = templateRepository.findByType(type);
+            preloadedTemplates.put(type,
+                    new PreloadedTemplates(templates, System.currentTimeMillis() + preloadTtlMillis));
+        } catch (Exception e) {
+            log.warn("预读模板失败: {}", e.getMessage());
+        }
+    }
+
+    private List<PromptTemplate> preloadedTemplates(String type) {
+        PreloadedTemplates preloaded = preloadedTemplates.get(type);
+        if (preloaded == null || preloaded.expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        return preloaded.templates;
+    }
+
+    private static final class PreloadedTemplates {
+        private final List<PromptTemplate> templates;
+        private final long expiresAt;
+
+        private PreloadedTemplates(List<PromptTemplate> templates, long expiresAt) {
+            this.templates = templates;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     private String findTypeByContent(String content) {
         // 将内容转换为小写进行匹配
         String lowerContent = content.toLowerCase();
@@ -255,7 +296,7 @@ public class PromptOptimizationServiceImpl implements PromptOptimizationService
         }
 
         // 插入原始内容
-        result = result.replace("{{content}}", content);
+        result = result.replace(CONTENT_PLACEHOLDER, content);
 
         return result;
     }
@@ -335,19 +376,6 @@ public class PromptOptimizationServiceImpl implements PromptOptimizationService
         return compressed.toString().trim();
     }
 
-    private boolean isCode(String word) {
-        return word.contains("{") || word.contains("}") || word.contains("(") ||
-                word.contains(")") || word.contains(";") || word.startsWith("//");
-    }
-
-    private boolean isUrl(String word) {
-        return word.startsWith("http://") || word.startsWith("https://");
-    }
-
-    private boolean isNumber(String word) {
-        return word.matches("\\d+");
-    }
-
     private String compressWithKeywords(String content) {
         // 保留关键词的压缩策略
         return content.replaceAll("\\s+", " ") // 合并空白字符
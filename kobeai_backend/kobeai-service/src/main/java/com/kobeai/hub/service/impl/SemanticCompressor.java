@@ -1,5 +1,7 @@
 package com.kobeai.hub.service.impl;
 
+import com.kobeai.hub.service.tokenizer.Tokenizer;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -12,12 +14,15 @@ import java.util.regex.Pattern;
  */
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class SemanticCompressor {
 
     private static final double KEYWORD_WEIGHT = 0.5;
     private static final double POSITION_WEIGHT = 0.3;
     private static final double LENGTH_WEIGHT = 0.2;
 
+    private final Tokenizer tokenizer;
+
     /**
      * 压缩内容
      * 
@@ -183,10 +188,10 @@ public class SemanticCompressor {
     }
 
     /**
-     * 估算token数量
+     * 计算token数量
      */
     private int estimateTokens(String text) {
-        return text.split("\\s+").length;
+        return tokenizer.count(text);
     }
 
     /**
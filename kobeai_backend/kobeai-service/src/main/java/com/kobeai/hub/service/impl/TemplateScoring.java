@@ -3,6 +3,8 @@ package com.kobeai.hub.service.impl;
 import com.kobeai.hub.model.PromptTemplate;
 import com.kobeai.hub.constant.TemplateConstants.Score;
 import com.kobeai.hub.constant.TemplateConstants.Patterns;
+import com.kobeai.hub.service.tokenizer.Tokenizer;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
@@ -12,8 +14,11 @@ import org.springframework.stereotype.Component;
  */
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class TemplateScoring {
 
+    private final Tokenizer tokenizer;
+
     /**
      * 计算模板得分
      * 
@@ -94,8 +99,7 @@ public class TemplateScoring {
     }
 
     private int estimateTokens(String content) {
-        // TODO: 实现token估算算法
-        return content.length() / 4;
+        return tokenizer.count(content);
     }
 
     private boolean containsCodeFeatures(String content) {
@@ -0,0 +1,149 @@
+package com.kobeai.hub.service.platform;
+
+import com.kobeai.hub.constant.RedisKeyConstant;
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.repository.AIPlatformRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * AI 平台配置的内存索引
+ * 按 (平台类型, 用户ID) 建立索引，找不到用户自定义配置时回退到系统配置，
+ * 聊天链路解析平台凭证不再访问数据库。
+ * 平台增删改后调用 {@link #invalidate()} 重新加载，并通过 Redis 发布订阅通知其他节点
+ */
+@Slf4j
+@Component
+public class AIPlatformRegistry implements MessageListener {
+
+    private final AIPlatformRepository platformRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    // 用于忽略本节点自己发出的通知
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private volatile Snapshot snapshot;
+
+    public AIPlatformRegistry(AIPlatformRepository platformRepository, StringRedisTemplate redisTemplate,
+            RedisMessageListenerContainer listenerContainer) {
+        this.platformRepository = platformRepository;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(RedisKeyConstant.PLATFORM_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 启动完成（初始化数据写入之后）时加载
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        reload();
+    }
+
+    /**
+     * 查找平台配置，优先使用用户自定义配置，其次使用系统配置
+     *
+     * @param type   平台类型
+     * @param userId 用户ID，可为空
+     * @return 平台配置，不存在时为空
+     */
+    public Optional<AIPlatform> resolve(Platform type, Long userId) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = reload();
+        }
+        if (userId != null) {
+            Map<Long, AIPlatform> byUser = current.userPlatforms.get(type);
+            AIPlatform userPlatform = byUser != null ? byUser.get(userId) : null;
+            if (userPlatform != null) {
+                return Optional.of(userPlatform);
+            }
+        }
+        return Optional.ofNullable(current.systemPlatforms.get(type));
+    }
+
+    /**
+     * 平台配置已变更：事务提交后重新加载并通知其他节点
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reloadAndBroadcast();
+                }
+            });
+        } else {
+            reloadAndBroadcast();
+        }
+    }
+
+    private void reloadAndBroadcast() {
+        reload();
+        try {
+            redisTemplate.convertAndSend(RedisKeyConstant.PLATFORM_INVALIDATE_CHANNEL, nodeId);
+        } catch (Exception e) {
+            log.warn("广播平台配置变更失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String sender = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!nodeId.equals(sender)) {
+            log.info("收到平台配置变更通知，重新加载");
+            reload();
+        }
+    }
+
+    private synchronized Snapshot reload() {
+        Map<Platform, Map<Long, AIPlatform>> userPlatforms = new EnumMap<>(Platform.class);
+        Map<Platform, AIPlatform> systemPlatforms = new EnumMap<>(Platform.class);
+        for (AIPlatform platform : platformRepository.findAll()) {
+            Long userId = platform.getUserId();
+            if (userId == null || userId == 0) {
+                systemPlatforms.putIfAbsent(platform.getType(), platform);
+            } else {
+                userPlatforms.computeIfAbsent(platform.getType(), type -> new HashMap<>())
+                        .putIfAbsent(userId, platform);
+            }
+        }
+        Snapshot loaded = new Snapshot(userPlatforms, systemPlatforms);
+        snapshot = loaded;
+        log.info("平台配置已加载，系统平台: {}，用户平台: {}", systemPlatforms.size(),
+                userPlatforms.values().stream().mapToInt(Map::size).sum());
+        return loaded;
+    }
+
+    private static final class Snapshot {
+        private final Map<Platform, Map<Long, AIPlatform>> userPlatforms;
+        private final Map<Platform, AIPlatform> systemPlatforms;
+
+        private Snapshot(Map<Platform, Map<Long, AIPlatform>> userPlatforms, Map<Platform, AIPlatform> systemPlatforms) {
+            this.userPlatforms = userPlatforms;
+            this.systemPlatforms = systemPlatforms;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.kobeai.hub.service.provider;
+
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.model.Platform;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AI 平台接入点
+ * 每个平台对应一个实现，负责给出默认配置并构建上游流式请求，
+ * 响应统一按 OpenAI 兼容的 SSE 格式解析。
+ * 注册为 Spring Bean 即可覆盖 {@link ChatProviderRegistry} 中的默认实现
+ */
+public interface ChatProvider {
+
+    Platform getPlatform();
+
+    /**
+     * 数据库中没有平台配置时使用的默认配置
+     */
+    AIPlatform defaultPlatform();
+
+    /**
+     * @return 实际使用的模型名称
+     */
+    String getModel(AIPlatform platform);
+
+    /**
+     * @return 单次回复的最大 token 数
+     */
+    int getMaxTokens(AIPlatform platform);
+
+    /**
+     * @return 采样温度
+     */
+    double getTemperature(AIPlatform platform);
+
+    /**
+     * @return 流式对话接口地址
+     */
+    URI completionsUri(AIPlatform platform);
+
+    /**
+     * 构建流式请求体
+     *
+     * @param platform 平台配置
+     * @param messages 对话消息，每条包含 role 与 content
+     */
+    String buildRequestBody(AIPlatform platform, List<Map<String, String>> messages) throws IOException;
+}
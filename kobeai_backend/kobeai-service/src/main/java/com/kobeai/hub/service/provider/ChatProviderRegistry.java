@@ -0,0 +1,110 @@
+package com.kobeai.hub.service.provider;
+
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.service.platform.AIPlatformRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 平台接入点注册表
+ * 自定义的 {@link ChatProvider} Bean 优先，其余平台使用 OpenAI 兼容的默认实现，
+ * 默认配置读取 ai.{平台}.base-url / api-key / model / max-tokens / temperature / stream-relay
+ * （平台名小写、下划线换成连字符，如 ai.baidu-wenxin.model）
+ */
+@Slf4j
+@Component
+public class ChatProviderRegistry {
+
+    private static final Map<Platform, String[]> DEFAULTS = new EnumMap<>(Platform.class);
+
+    static {
+        // 名称、接口地址、模型
+        DEFAULTS.put(Platform.DEEPSEEK, new String[] { "DeepSeek AI", "https://api.deepseek.com/v1", "deepseek-chat" });
+        DEFAULTS.put(Platform.CHATGPT, new String[] { "ChatGPT", "https://api.openai.com/v1", "gpt-4o-mini" });
+        // Anthropic 官方接口不兼容 OpenAI 的请求体与 Bearer 鉴权，需通过 ai.claude.base-url 配置 OpenAI 兼容网关
+        DEFAULTS.put(Platform.CLAUDE, new String[] { "Claude", "", "claude-sonnet-4-5" });
+        DEFAULTS.put(Platform.BAIDU_WENXIN,
+                new String[] { "文心一言", "https://qianfan.baidubce.com/v2", "ernie-4.0-8k" });
+        DEFAULTS.put(Platform.DOUBAO,
+                new String[] { "豆包", "https://ark.cn-beijing.volces.com/api/v3", "doubao-pro-32k" });
+    }
+
+    private final Map<Platform, ChatProvider> providers = new EnumMap<>(Platform.class);
+    private final AIPlatformRegistry platformRegistry;
+
+    public ChatProviderRegistry(ObjectProvider<ChatProvider> customProviders, Environment environment,
+            AIPlatformRegistry platformRegistry) {
+        this.platformRegistry = platformRegistry;
+        customProviders.orderedStream().forEach(provider -> providers.putIfAbsent(provider.getPlatform(), provider));
+        for (Platform platform : Platform.values()) {
+            providers.computeIfAbsent(platform, type -> createDefault(type, environment));
+        }
+    }
+
+    private static ChatProvider createDefault(Platform platform, Environment environment) {
+        String prefix = "ai." + configName(platform) + ".";
+        String[] defaults = DEFAULTS.getOrDefault(platform,
+                new String[] { platform.name(), "", "" });
+        return new OpenAiCompatibleProvider(platform, defaults[0],
+                environment.getProperty(prefix + "base-url", defaults[1]),
+                environment.getProperty(prefix + "api-key", ""),
+                environment.getProperty(prefix + "model", defaults[2]),
+                environment.getProperty(prefix + "max-tokens", Integer.class, 2000),
+                environment.getProperty(prefix + "temperature", Double.class, 0.7),
+                environment.getProperty(prefix + "stream-relay", Boolean.class, false));
+    }
+
+    /**
+     * @return 配置项中使用的平台名，如 baidu-wenxin
+     */
+    public static String configName(Platform platform) {
+        return platform.name().toLowerCase().replace('_', '-');
+    }
+
+    public ChatProvider get(Platform platform) {
+        return providers.get(platform);
+    }
+
+    /**
+     * 解析用户在指定平台上使用的接入点
+     * 优先使用数据库中的用户配置和系统配置，都没有时使用配置文件中的默认值
+     */
+    public AIPlatform resolveEndpoint(Platform platform, Long userId) {
+        Optional<AIPlatform> configured = platformRegistry.resolve(platform, userId);
+        if (configured.isPresent()) {
+            return configured.get();
+        }
+        log.warn("未在数据库中找到{}平台配置，使用默认配置。请检查系统初始化是否正确。", platform);
+        return providers.get(platform).defaultPlatform();
+    }
+
+    /**
+     * 自动选择平台时的候选接入点：已启用且配置了接口地址与密钥
+     */
+    public List<AIPlatform> availableEndpoints(Long userId) {
+        List<AIPlatform> endpoints = new ArrayList<>();
+        for (Platform platform : Platform.values()) {
+            AIPlatform endpoint = platformRegistry.resolve(platform, userId)
+                    .orElseGet(() -> providers.get(platform).defaultPlatform());
+            if (isUsable(endpoint)) {
+                endpoints.add(endpoint);
+            }
+        }
+        return endpoints;
+    }
+
+    public static boolean isUsable(AIPlatform endpoint) {
+        return endpoint.isEnabled()
+                && endpoint.getApiKey() != null && !endpoint.getApiKey().trim().isEmpty()
+                && endpoint.getBaseUrl() != null && !endpoint.getBaseUrl().trim().isEmpty();
+    }
+}
@@ -0,0 +1,115 @@
+package com.kobeai.hub.service.provider;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 单个接入点的自适应并发限制与熔断器
+ * 并发上限按 AIMD 调整：请求成功且并发已用到上限一半以上时每轮加 1，
+ * 上游返回 429/5xx 或连接失败时乘以回退系数；
+ * 连续失败达到阈值后熔断，熔断期过后进入半开状态，只放行少量探测请求，
+ * 探测成功则恢复，失败则重新熔断
+ */
+@Slf4j
+class EndpointLimiter {
+
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final int halfOpenProbes;
+
+    private double limit;
+    private int inflight;
+    private int consecutiveFailures;
+    private State state = State.CLOSED;
+    private long openedAt;
+
+    EndpointLimiter(String name, int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+            int failureThreshold, long openMillis, int halfOpenProbes) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(initialLimit, this.maxLimit));
+        this.backoffRatio = backoffRatio;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+    }
+
+    /**
+     * @return 是否获得调用许可
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            log.info("{} 熔断期结束，进入半开状态", name);
+        }
+        int allowed = state == State.HALF_OPEN ? halfOpenProbes : (int) limit;
+        if (inflight >= allowed) {
+            return false;
+        }
+        inflight++;
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        int used = inflight--;
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            log.info("{} 探测成功，熔断器恢复，当前并发上限: {}", name, (int) limit);
+            return;
+        }
+        // 只有并发确实用到上限附近时才放大，避免空闲期把上限抬得过高
+        if (used * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    synchronized void onDropped() {
+        inflight--;
+        limit = Math.max(minLimit, limit * backoffRatio);
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            log.warn("{} 连续失败 {} 次，熔断 {} ms，当前并发上限: {}", name, consecutiveFailures, openMillis,
+                    (int) limit);
+        }
+    }
+
+    /**
+     * 调用被取消或失败原因与上游负载无关，只归还许可
+     */
+    synchronized void onIgnored() {
+        inflight--;
+    }
+
+    /**
+     * @return 是否处于熔断期（熔断期已过、等待探测的不算）
+     */
+    synchronized boolean isOpen() {
+        return state == State.OPEN && System.currentTimeMillis() - openedAt < openMillis;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    synchronized double getLimit() {
+        return limit;
+    }
+
+    synchronized int getInflight() {
+        return inflight;
+    }
+}
@@ -0,0 +1,61 @@
+package com.kobeai.hub.service.provider;
+
+import java.util.Arrays;
+
+/**
+ * 单个接入点的滚动统计
+ * 保留最近 N 次首 token 耗时（TTFT）样本用于计算分位数，错误率按指数加权移动平均
+ */
+class EndpointStats {
+
+    // 错误率的平滑系数，约等于最近 10 次请求的加权
+    private static final double ERROR_ALPHA = 0.1;
+
+    private final long[] samples;
+    private int count;
+    private int next;
+    private double errorRate;
+    private long lastFailureAt;
+
+    EndpointStats(int window) {
+        this.samples = new long[Math.max(1, window)];
+    }
+
+    synchronized void recordTtft(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    synchronized void recordSuccess() {
+        errorRate = errorRate * (1 - ERROR_ALPHA);
+    }
+
+    synchronized void recordFailure() {
+        errorRate = errorRate * (1 - ERROR_ALPHA) + ERROR_ALPHA;
+        lastFailureAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return TTFT 分位数（毫秒），没有样本时为 -1
+     */
+    synchronized long percentile(double quantile) {
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(quantile * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+
+    synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    synchronized long getLastFailureAt() {
+        return lastFailureAt;
+    }
+}
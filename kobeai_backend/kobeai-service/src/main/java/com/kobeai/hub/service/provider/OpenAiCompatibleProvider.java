@@ -0,0 +1,100 @@
+package com.kobeai.hub.service.provider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.model.Platform;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OpenAI 兼容协议的默认实现（POST {baseUrl}/chat/completions，stream=true，stream_options.include_usage=true）
+ * DeepSeek、OpenAI、Claude、文心（千帆 v2）、豆包（方舟 v3）均提供该协议的接口
+ */
+public class OpenAiCompatibleProvider implements ChatProvider {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Platform platform;
+    private final String displayName;
+    private final String baseUrl;
+    private final String apiKey;
+    private final String model;
+    private final int maxTokens;
+    private final double temperature;
+    private final boolean streamRelay;
+
+    public OpenAiCompatibleProvider(Platform platform, String displayName, String baseUrl, String apiKey,
+            String model, int maxTokens, double temperature, boolean streamRelay) {
+        this.platform = platform;
+        this.displayName = displayName;
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+        this.model = model;
+        this.maxTokens = maxTokens;
+        this.temperature = temperature;
+        this.streamRelay = streamRelay;
+    }
+
+    @Override
+    public Platform getPlatform() {
+        return platform;
+    }
+
+    @Override
+    public AIPlatform defaultPlatform() {
+        AIPlatform defaultPlatform = new AIPlatform();
+        defaultPlatform.setType(platform);
+        defaultPlatform.setName(displayName);
+        defaultPlatform.setBaseUrl(baseUrl);
+        defaultPlatform.setApiKey(apiKey);
+        defaultPlatform.setModel(model);
+        defaultPlatform.setMaxTokens(maxTokens);
+        defaultPlatform.setTemperature(temperature);
+        defaultPlatform.setStreamRelay(streamRelay);
+        return defaultPlatform;
+    }
+
+    @Override
+    public String getModel(AIPlatform platform) {
+        String configured = platform.getModel();
+        return configured != null && !configured.isBlank() ? configured : model;
+    }
+
+    @Override
+    public int getMaxTokens(AIPlatform platform) {
+        Integer configured = platform.getMaxTokens();
+        return configured != null && configured > 0 ? configured : maxTokens;
+    }
+
+    @Override
+    public double getTemperature(AIPlatform platform) {
+        Double configured = platform.getTemperature();
+        return configured != null && configured >= 0 ? configured : temperature;
+    }
+
+    @Override
+    public URI completionsUri(AIPlatform platform) {
+        String url = platform.getBaseUrl().trim();
+        if (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        return URI.create(url + "/chat/completions");
+    }
+
+    @Override
+    public String buildRequestBody(AIPlatform platform, List<Map<String, String>> messages) throws IOException {
+        Map<String, Object> requestBody = new LinkedHashMap<>();
+        requestBody.put("model", getModel(platform));
+        requestBody.put("messages", messages);
+        requestBody.put("stream", true);
+        // 要求在流末尾返回 usage，用于记录消息的 token 数
+        requestBody.put("stream_options", Map.of("include_usage", true));
+        requestBody.put("max_tokens", getMaxTokens(platform));
+        requestBody.put("temperature", getTemperature(platform));
+        return OBJECT_MAPPER.writeValueAsString(requestBody);
+    }
+}
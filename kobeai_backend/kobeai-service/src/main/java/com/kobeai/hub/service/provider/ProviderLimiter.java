@@ -0,0 +1,161 @@
+package com.kobeai.hub.service.provider;
+
+import com.kobeai.hub.model.AIPlatform;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按接入点（平台类型 + 接口地址）的自适应并发限制与熔断
+ * 上游开始返回 429/5xx 时收缩并发、连续失败时熔断并快速失败，避免重试风暴，
+ * 吞吐最终稳定在平台实际能承受的水平
+ *
+ * 配置项（可按平台覆盖，如 ai.limiter.deepseek.max-limit）：
+ * ai.limiter.initial-limit / min-limit / max-limit / backoff-ratio，
+ * ai.limiter.failure-threshold / open-ms / half-open-probes
+ */
+@Component
+public class ProviderLimiter {
+
+    private static final String PREFIX = "ai.limiter.";
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, EndpointLimiter> limiters = new ConcurrentHashMap<>();
+
+    public ProviderLimiter(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 申请一次上游调用许可
+     *
+     * @return 许可，被限流或熔断时为空
+     */
+    Permit tryAcquire(AIPlatform endpoint) {
+        EndpointLimiter limiter = limiterOf(endpoint);
+        if (limiter.tryAcquire()) {
+            return new Permit(limiter);
+        }
+        Counter.builder("ai.provider.rejected")
+                .description("因并发上限或熔断被快速失败的上游调用数")
+                .tag("platform", ChatProviderRegistry.configName(endpoint.getType()))
+                .tag("reason", limiter.isOpen() ? "circuit" : "limit")
+                .register(meterRegistry)
+                .increment();
+        return null;
+    }
+
+    /**
+     * @return 接入点是否处于熔断期
+     */
+    boolean isOpen(AIPlatform endpoint) {
+        return limiterOf(endpoint).isOpen();
+    }
+
+    /**
+     * @return 快速失败时返回给前端的原因
+     */
+    String rejectionReason(AIPlatform endpoint) {
+        return limiterOf(endpoint).isOpen()
+                ? endpoint.getType() + " 近期连续请求失败，已暂停调用，请稍后重试"
+                : endpoint.getType() + " 当前请求过多，请稍后重试";
+    }
+
+    private EndpointLimiter limiterOf(AIPlatform endpoint) {
+        return limiters.computeIfAbsent(endpoint.getType() + "|" + endpoint.getBaseUrl(),
+                key -> createLimiter(endpoint));
+    }
+
+    private EndpointLimiter createLimiter(AIPlatform endpoint) {
+        String platform = ChatProviderRegistry.configName(endpoint.getType());
+        String host = hostOf(endpoint.getBaseUrl());
+        EndpointLimiter limiter = new EndpointLimiter(platform + "(" + host + ")",
+                property(platform, "initial-limit", Integer.class, 20),
+                property(platform, "min-limit", Integer.class, 1),
+                property(platform, "max-limit", Integer.class, 200),
+                property(platform, "backoff-ratio", Double.class, 0.7),
+                property(platform, "failure-threshold", Integer.class, 5),
+                property(platform, "open-ms", Long.class, 10000L),
+                property(platform, "half-open-probes", Integer.class, 1));
+
+        Gauge.builder("ai.provider.concurrency.limit", limiter, EndpointLimiter::getLimit)
+                .description("接入点当前的自适应并发上限")
+                .tag("platform", platform)
+                .tag("endpoint", host)
+                .register(meterRegistry);
+        Gauge.builder("ai.provider.concurrency.inflight", limiter, EndpointLimiter::getInflight)
+                .description("接入点进行中的上游调用数")
+                .tag("platform", platform)
+                .tag("endpoint", host)
+                .register(meterRegistry);
+        Gauge.builder("ai.provider.circuit.state", limiter, l -> l.getState().ordinal())
+                .description("熔断器状态：0 关闭，1 半开，2 熔断")
+                .tag("platform", platform)
+                .tag("endpoint", host)
+                .register(meterRegistry);
+        return limiter;
+    }
+
+    private <T> T property(String platform, String key, Class<T> type, T defaultValue) {
+        T global = environment.getProperty(PREFIX + key, type, defaultValue);
+        return environment.getProperty(PREFIX + platform + "." + key, type, global);
+    }
+
+    private static String hostOf(String baseUrl) {
+        try {
+            String host = URI.create(baseUrl.trim()).getHost();
+            return host != null ? host : baseUrl;
+        } catch (IllegalArgumentException e) {
+            return String.valueOf(baseUrl);
+        }
+    }
+
+    /**
+     * 一次上游调用许可，按调用结果归还且只归还一次
+     */
+    static class Permit {
+
+        private final EndpointLimiter limiter;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(EndpointLimiter limiter) {
+            this.limiter = limiter;
+        }
+
+        /**
+         * 上游正常完成
+         */
+        void success() {
+            if (released.compareAndSet(false, true)) {
+                limiter.onSuccess();
+            }
+        }
+
+        /**
+         * 上游过载（429/5xx）或连接失败
+         */
+        void dropped() {
+            if (released.compareAndSet(false, true)) {
+                limiter.onDropped();
+            }
+        }
+
+        /**
+         * 调用被取消，或失败与上游负载无关
+         */
+        void ignore() {
+            if (released.compareAndSet(false, true)) {
+                limiter.onIgnored();
+            }
+        }
+    }
+}
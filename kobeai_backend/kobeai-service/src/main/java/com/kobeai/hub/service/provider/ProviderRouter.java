@@ -0,0 +1,186 @@
+package com.kobeai.hub.service.provider;
+
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.service.stream.ProviderStreamClient;
+import com.kobeai.hub.service.stream.StreamListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按延迟选择平台的路由器
+ * 按接入点（平台类型 + 接口地址）统计滚动 TTFT 与错误率，自动模式下优先选择最快的健康接入点；
+ * 开启对冲时，主请求超过其 p95 TTFT 仍未收到首个 token 则向次优接入点再发一次，保留先出字的一路。
+ *
+ * 配置项：ai.router.window / max-error-rate / recovery-ms，
+ * ai.router.hedge.enabled / percentile / min-delay-ms / default-delay-ms
+ */
+@Slf4j
+@Component
+public class ProviderRouter {
+
+    private final ChatProviderRegistry providerRegistry;
+    private final ProviderStreamClient providerStreamClient;
+    private final ProviderLimiter providerLimiter;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService hedgeTimer;
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+    private final Counter hedgeCounter;
+    private final Counter hedgeWinCounter;
+
+    @Value("${ai.router.window:64}")
+    private int window;
+
+    @Value("${ai.router.max-error-rate:0.5}")
+    private double maxErrorRate;
+
+    // 不健康的接入点在最后一次失败之后经过该时间重新参与选择
+    @Value("${ai.router.recovery-ms:30000}")
+    private long recoveryMillis;
+
+    @Value("${ai.router.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    @Value("${ai.router.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${ai.router.hedge.min-delay-ms:500}")
+    private long hedgeMinDelayMillis;
+
+    // 没有 TTFT 样本时的对冲等待时间
+    @Value("${ai.router.hedge.default-delay-ms:4000}")
+    private long hedgeDefaultDelayMillis;
+
+    public ProviderRouter(ChatProviderRegistry providerRegistry, ProviderStreamClient providerStreamClient,
+            ProviderLimiter providerLimiter, MeterRegistry meterRegistry) {
+        this.providerRegistry = providerRegistry;
+        this.providerStreamClient = providerStreamClient;
+        this.providerLimiter = providerLimiter;
+        this.meterRegistry = meterRegistry;
+        this.hedgeTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-router-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hedgeCounter = Counter.builder("ai.router.hedges")
+                .description("发出的对冲请求数")
+                .register(meterRegistry);
+        this.hedgeWinCounter = Counter.builder("ai.router.hedge.wins")
+                .description("对冲请求先于主请求出字的次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 按健康状况与 TTFT 中位数排序，没有样本的接入点排在健康接入点最前面以便采样，
+     * 处于熔断期的接入点视为不健康
+     */
+    public List<AIPlatform> rank(List<AIPlatform> endpoints) {
+        long now = System.currentTimeMillis();
+        List<AIPlatform> healthy = new ArrayList<>();
+        List<AIPlatform> unhealthy = new ArrayList<>();
+        for (AIPlatform endpoint : endpoints) {
+            EndpointStats endpointStats = statsOf(endpoint);
+            boolean recovered = endpointStats.getErrorRate() <= maxErrorRate
+                    || now - endpointStats.getLastFailureAt() > recoveryMillis;
+            if (recovered && !providerLimiter.isOpen(endpoint)) {
+                healthy.add(endpoint);
+            } else {
+                unhealthy.add(endpoint);
+            }
+        }
+        healthy.sort(Comparator.comparingLong(endpoint -> statsOf(endpoint).percentile(0.5)));
+        unhealthy.sort(Comparator.comparingDouble(endpoint -> statsOf(endpoint).getErrorRate()));
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    /**
+     * 创建一次路由调用，调用 {@link RoutedCall#start()} 后才发出请求
+     *
+     * @param endpoints 按优先级排列的接入点，第一个为主请求
+     * @param messages  对话消息
+     * @param failover  主请求失败时是否改用后续接入点
+     * @param listener  接收胜出一路的事件
+     */
+    public RoutedCall open(List<AIPlatform> endpoints, List<Map<String, String>> messages, boolean failover,
+            StreamListener listener) {
+        return new RoutedCall(this, endpoints, messages, failover, failover && hedgeEnabled, listener);
+    }
+
+    ChatProvider providerOf(AIPlatform endpoint) {
+        return providerRegistry.get(endpoint.getType());
+    }
+
+    ProviderStreamClient streamClient() {
+        return providerStreamClient;
+    }
+
+    ProviderLimiter limiter() {
+        return providerLimiter;
+    }
+
+    ScheduledExecutorService hedgeTimer() {
+        return hedgeTimer;
+    }
+
+    /**
+     * @return 主请求发出后等待多久再发对冲请求
+     */
+    long hedgeDelayMillis(AIPlatform endpoint) {
+        long percentile = statsOf(endpoint).percentile(hedgePercentile);
+        return percentile < 0 ? hedgeDefaultDelayMillis : Math.max(hedgeMinDelayMillis, percentile);
+    }
+
+    void recordFirstToken(AIPlatform endpoint, long nanos) {
+        statsOf(endpoint).recordTtft(TimeUnit.NANOSECONDS.toMillis(nanos));
+        Timer.builder("ai.provider.ttft")
+                .description("首个 token 耗时")
+                .tag("platform", ChatProviderRegistry.configName(endpoint.getType()))
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordSuccess(AIPlatform endpoint) {
+        statsOf(endpoint).recordSuccess();
+    }
+
+    void recordFailure(AIPlatform endpoint) {
+        statsOf(endpoint).recordFailure();
+        Counter.builder("ai.provider.errors")
+                .description("上游请求失败数")
+                .tag("platform", ChatProviderRegistry.configName(endpoint.getType()))
+                .register(meterRegistry)
+                .increment();
+    }
+
+    void recordHedge() {
+        hedgeCounter.increment();
+    }
+
+    void recordHedgeWin() {
+        hedgeWinCounter.increment();
+    }
+
+    private EndpointStats statsOf(AIPlatform endpoint) {
+        return stats.computeIfAbsent(endpoint.getType() + "|" + endpoint.getBaseUrl(),
+                key -> new EndpointStats(window));
+    }
+
+    @PreDestroy
+    public void close() {
+        hedgeTimer.shutdown();
+    }
+}
@@ -0,0 +1,283 @@
+package com.kobeai.hub.service.provider;
+
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.service.stream.StreamListener;
+import com.kobeai.hub.service.stream.UpstreamCall;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 一次经过路由的生成请求，可能包含多路上游调用
+ * 第一路收到数据的调用胜出，其余调用立即取消，之后只转发胜出一路的事件；
+ * 胜出之前某一路失败时改用下一个接入点，全部失败才把最后一次错误交给监听器。
+ * 每一路发出前向 {@link ProviderLimiter} 申请许可，被限流或熔断的接入点直接快速失败
+ */
+@Slf4j
+public class RoutedCall {
+
+    private final ProviderRouter router;
+    private final List<AIPlatform> endpoints;
+    private final List<Map<String, String>> messages;
+    private final boolean failover;
+    private final boolean hedge;
+    private final StreamListener listener;
+    private final List<Attempt> attempts = new ArrayList<>();
+    private final AtomicReference<Attempt> winner = new AtomicReference<>();
+    private int nextEndpoint;
+    private volatile boolean cancelled;
+    private volatile ScheduledFuture<?> hedgeTask;
+
+    RoutedCall(ProviderRouter router, List<AIPlatform> endpoints, List<Map<String, String>> messages,
+            boolean failover, boolean hedge, StreamListener listener) {
+        this.router = router;
+        this.endpoints = endpoints;
+        this.messages = messages;
+        this.failover = failover;
+        this.hedge = hedge;
+        this.listener = listener;
+    }
+
+    /**
+     * 发出主请求，并在需要时安排对冲请求
+     */
+    public void start() {
+        AIPlatform primary = endpoints.get(0);
+        launchNext();
+        if (hedge && endpoints.size() > 1) {
+            long delay = router.hedgeDelayMillis(primary);
+            hedgeTask = router.hedgeTimer().schedule(this::fireHedge, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 取消所有上游调用，之后不再回调监听器
+     */
+    public void cancel() {
+        cancelled = true;
+        cancelHedge();
+        synchronized (this) {
+            for (Attempt attempt : attempts) {
+                attempt.cancel();
+            }
+        }
+    }
+
+    /**
+     * @return 胜出的接入点，尚未收到数据时为主请求的接入点
+     */
+    public AIPlatform getSelected() {
+        Attempt current = winner.get();
+        return current != null ? current.endpoint : endpoints.get(0);
+    }
+
+    private void fireHedge() {
+        if (cancelled || winner.get() != null) {
+            return;
+        }
+        if (launchNext()) {
+            router.recordHedge();
+            log.info("主请求超过 p95 TTFT 仍未出字，向 {} 发出对冲请求", endpoints.get(nextEndpoint - 1).getType());
+        }
+    }
+
+    private boolean launchNext() {
+        Attempt attempt;
+        synchronized (this) {
+            if (cancelled || nextEndpoint >= endpoints.size()) {
+                return false;
+            }
+            attempt = new Attempt(endpoints.get(nextEndpoint), nextEndpoint);
+            nextEndpoint++;
+            attempts.add(attempt);
+        }
+        attempt.launch();
+        return true;
+    }
+
+    private synchronized boolean hasRunning() {
+        for (Attempt attempt : attempts) {
+            if (!attempt.done) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean claim(Attempt attempt) {
+        if (!winner.compareAndSet(null, attempt)) {
+            return winner.get() == attempt;
+        }
+        cancelHedge();
+        synchronized (this) {
+            for (Attempt other : attempts) {
+                if (other != attempt) {
+                    other.cancel();
+                }
+            }
+        }
+        if (attempt.index > 0) {
+            router.recordHedgeWin();
+        }
+        return true;
+    }
+
+    private void cancelHedge() {
+        ScheduledFuture<?> current = hedgeTask;
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+
+    /**
+     * 胜出之前的失败：还有接入点可用时改用下一个，否则在最后一路结束时上报错误
+     *
+     * @return 是否需要把错误交给监听器
+     */
+    private boolean shouldReport(Attempt attempt) {
+        if (cancelled) {
+            return false;
+        }
+        if (winner.get() == attempt) {
+            return true;
+        }
+        if (winner.get() != null) {
+            return false;
+        }
+        if (failover && launchNext()) {
+            log.warn("{} 请求失败，改用 {}", attempt.endpoint.getType(), endpoints.get(nextEndpoint - 1).getType());
+            return false;
+        }
+        return !hasRunning() && winner.compareAndSet(null, attempt);
+    }
+
+    /**
+     * 发往单个接入点的一路调用
+     */
+    private class Attempt implements StreamListener {
+
+        private final AIPlatform endpoint;
+        private final int index;
+        private long startNanos;
+        private volatile ProviderLimiter.Permit permit;
+        private volatile UpstreamCall call;
+        private volatile boolean done;
+        private boolean firstData = true;
+
+        Attempt(AIPlatform endpoint, int index) {
+            this.endpoint = endpoint;
+            this.index = index;
+        }
+
+        void launch() {
+            startNanos = System.nanoTime();
+            permit = router.limiter().tryAcquire(endpoint);
+            if (permit == null) {
+                rejected(router.limiter().rejectionReason(endpoint));
+                return;
+            }
+            try {
+                ChatProvider provider = router.providerOf(endpoint);
+                String body = provider.buildRequestBody(endpoint, messages);
+                call = router.streamClient().stream(provider.completionsUri(endpoint), endpoint.getApiKey(), body,
+                        this);
+                if (cancelled || (winner.get() != null && winner.get() != this)) {
+                    call.cancel();
+                }
+            } catch (Exception e) {
+                notSent(e);
+            }
+        }
+
+        /**
+         * 本地构造请求失败（如接口地址无效），请求未发出，不计入熔断与错误率
+         */
+        private void notSent(Exception error) {
+            done = true;
+            permit.ignore();
+            log.warn("{} 请求未能发出: {}", endpoint.getType(), error.getMessage());
+            if (shouldReport(this)) {
+                listener.onError(error);
+            }
+        }
+
+        /**
+         * 未发出请求即快速失败，不计入接入点的错误率
+         */
+        private void rejected(String reason) {
+            done = true;
+            log.warn("{}，跳过该接入点", reason);
+            if (shouldReport(this)) {
+                listener.onError(new RuntimeException(reason));
+            }
+        }
+
+        void cancel() {
+            done = true;
+            ProviderLimiter.Permit currentPermit = permit;
+            if (currentPermit != null) {
+                currentPermit.ignore();
+            }
+            UpstreamCall current = call;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public void onData(byte[] buffer, int offset, int length) {
+            if (firstData) {
+                firstData = false;
+                if (!claim(this)) {
+                    return;
+                }
+                router.recordFirstToken(endpoint, System.nanoTime() - startNanos);
+            } else if (winner.get() != this) {
+                return;
+            }
+            listener.onData(buffer, offset, length);
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            permit.success();
+            if (claim(this)) {
+                router.recordSuccess(endpoint);
+                listener.onComplete();
+            }
+        }
+
+        @Override
+        public void onHttpError(int statusCode, String body) {
+            done = true;
+            // 只有限流与服务端错误说明上游过载，其余（如鉴权失败）不收缩并发
+            if (statusCode == 429 || statusCode >= 500) {
+                permit.dropped();
+            } else {
+                permit.ignore();
+            }
+            router.recordFailure(endpoint);
+            log.warn("{} 返回错误，状态码: {}", endpoint.getType(), statusCode);
+            if (shouldReport(this)) {
+                listener.onHttpError(statusCode, body);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            done = true;
+            permit.dropped();
+            router.recordFailure(endpoint);
+            log.warn("{} 请求失败: {}", endpoint.getType(), error.getMessage());
+            if (shouldReport(this)) {
+                listener.onError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.kobeai.hub.service.stream;
+
+/**
+ * 一个流式 chunk 中关心的字段
+ * 可复用对象，每个流持有一个实例，解析前由解析器重置
+ */
+public class ChatChunk {
+
+    private String content;
+    private String finishReason;
+    private boolean hasUsage;
+    private int promptTokens;
+    private int completionTokens;
+    private int totalTokens;
+    // 命中平台前缀缓存的提示词 token 数，平台未返回时为 -1
+    private int cacheHitTokens = -1;
+
+    void reset() {
+        content = null;
+        finishReason = null;
+        hasUsage = false;
+        promptTokens = 0;
+        completionTokens = 0;
+        totalTokens = 0;
+        cacheHitTokens = -1;
+    }
+
+    /**
+     * @return choices[0].delta.content，没有内容时为 null
+     */
+    public String getContent() {
+        return content;
+    }
+
+    void setContent(String content) {
+        this.content = content;
+    }
+
+    /**
+     * @return choices[0].finish_reason，未结束时为 null
+     */
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    void setFinishReason(String finishReason) {
+        this.finishReason = finishReason;
+    }
+
+    /**
+     * @return 该 chunk 是否携带 usage 统计
+     */
+    public boolean hasUsage() {
+        return hasUsage;
+    }
+
+    void setHasUsage(boolean hasUsage) {
+        this.hasUsage = hasUsage;
+    }
+
+    public int getPromptTokens() {
+        return promptTokens;
+    }
+
+    void setPromptTokens(int promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    public int getCompletionTokens() {
+        return completionTokens;
+    }
+
+    void setCompletionTokens(int completionTokens) {
+        this.completionTokens = completionTokens;
+    }
+
+    public int getTotalTokens() {
+        return totalTokens;
+    }
+
+    void setTotalTokens(int totalTokens) {
+        this.totalTokens = totalTokens;
+    }
+
+    /**
+     * @return 命中平台前缀缓存的提示词 token 数（DeepSeek 的 prompt_cache_hit_tokens，
+     *         OpenAI 兼容接口的 prompt_tokens_details.cached_tokens），未返回时为 -1
+     */
+    public int getCacheHitTokens() {
+        return cacheHitTokens;
+    }
+
+    void setCacheHitTokens(int cacheHitTokens) {
+        this.cacheHitTokens = cacheHitTokens;
+    }
+}
@@ -0,0 +1,131 @@
+package com.kobeai.hub.service.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * 基于 Jackson JsonParser 的流式 chunk 解析器
+ * 只抽取 choices[0].delta.content、choices[0].finish_reason 和 usage（含前缀缓存命中数），
+ * 其余字段直接跳过，不构建中间 Map / List。线程安全，可全局共享。
+ */
+public class ChatChunkParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * 解析一个 chunk
+     *
+     * @param data   字节数组
+     * @param offset 起始位置
+     * @param length 长度
+     * @param target 结果写入的对象，解析前会被重置
+     * @return target
+     */
+    public ChatChunk parse(byte[] data, int offset, int length, ChatChunk target) throws IOException {
+        target.reset();
+        try (JsonParser parser = JSON_FACTORY.createParser(data, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return target;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    parseChoices(parser, target);
+                } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                    parseUsage(parser, target);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return target;
+    }
+
+    private void parseChoices(JsonParser parser, ChatChunk target) throws IOException {
+        boolean first = true;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (first && token == JsonToken.START_OBJECT) {
+                parseChoice(parser, target);
+            } else {
+                parser.skipChildren();
+            }
+            first = false;
+        }
+    }
+
+    private void parseChoice(JsonParser parser, ChatChunk target) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("delta".equals(field) && value == JsonToken.START_OBJECT) {
+                parseDelta(parser, target);
+            } else if ("finish_reason".equals(field) && value == JsonToken.VALUE_STRING) {
+                target.setFinishReason(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseDelta(JsonParser parser, ChatChunk target) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("content".equals(field) && value == JsonToken.VALUE_STRING) {
+                target.setContent(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseUsage(JsonParser parser, ChatChunk target) throws IOException {
+        target.setHasUsage(true);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("prompt_tokens_details".equals(field) && value == JsonToken.START_OBJECT) {
+                parsePromptTokensDetails(parser, target);
+                continue;
+            }
+            if (value != JsonToken.VALUE_NUMBER_INT) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "prompt_tokens":
+                    target.setPromptTokens(parser.getIntValue());
+                    break;
+                case "completion_tokens":
+                    target.setCompletionTokens(parser.getIntValue());
+                    break;
+                case "total_tokens":
+                    target.setTotalTokens(parser.getIntValue());
+                    break;
+                case "prompt_cache_hit_tokens":
+                    target.setCacheHitTokens(parser.getIntValue());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void parsePromptTokensDetails(JsonParser parser, ChatChunk target) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("cached_tokens".equals(field) && value == JsonToken.VALUE_NUMBER_INT
+                    && target.getCacheHitTokens() < 0) {
+                target.setCacheHitTokens(parser.getIntValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.kobeai.hub.service.stream;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 一条发给前端的 SSE 事件
+ * 数据可以是文本，也可以是直通模式下的上游原始字节
+ */
+public class ChatEvent {
+
+    private final String name;
+    private final String text;
+    private final byte[] raw;
+
+    private ChatEvent(String name, String text, byte[] raw) {
+        this.name = name;
+        this.text = text;
+        this.raw = raw;
+    }
+
+    public static ChatEvent of(String name, String data) {
+        return new ChatEvent(name, data, null);
+    }
+
+    public static ChatEvent raw(String name, byte[] data) {
+        return new ChatEvent(name, null, data);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 写给 SseEmitter 的数据，原始字节不做解码
+     */
+    Object payload() {
+        return raw != null ? raw : text;
+    }
+
+    /**
+     * @return 文本形式的数据
+     */
+    String text() {
+        return raw != null ? new String(raw, StandardCharsets.UTF_8) : text;
+    }
+}
@@ -0,0 +1,89 @@
+package com.kobeai.hub.service.stream;
+
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一条 AI 回复的事件输出
+ * 为每个事件分配单调递增的 id（格式为 {messageId}-{序号}），
+ * 写入前端连接的同时交给 Redis 流日志异步写入，断线后可凭 Last-Event-ID 续传。
+ * 客户端断开后进入 detached 状态，只写日志不再写连接。
+ */
+public class ChatEventStream {
+
+    private final SseEmitter emitter;
+    private final Long messageId;
+    private final StreamJournal.Writer journal;
+    private volatile boolean detached;
+    private long sequence;
+
+    ChatEventStream(SseEmitter emitter, Long messageId, StreamJournal.Writer journal) {
+        this.emitter = emitter;
+        this.messageId = messageId;
+        this.journal = journal;
+    }
+
+    public void send(ChatEvent event) throws IOException {
+        send(Collections.singletonList(event));
+    }
+
+    /**
+     * 发送一批事件，只触发一次 flush
+     */
+    public synchronized void send(List<ChatEvent> events) throws IOException {
+        Set<ResponseBodyEmitter.DataWithMediaType> batch = new LinkedHashSet<>();
+        for (ChatEvent event : events) {
+            long seq = ++sequence;
+            if (journal != null) {
+                // 只入队，不在锁内等待 Redis；Redis 不可用时放弃续传，不影响正常输出
+                journal.append(seq, event);
+            }
+            if (!detached) {
+                batch.addAll(SseEmitter.event()
+                        .id(messageId + "-" + seq)
+                        .name(event.getName())
+                        .data(event.payload())
+                        .build());
+            }
+        }
+        if (!batch.isEmpty()) {
+            emitter.send(batch);
+        }
+    }
+
+    /**
+     * 输出结束
+     */
+    public void complete() {
+        if (journal != null) {
+            journal.finish();
+        }
+        if (!detached) {
+            emitter.complete();
+        }
+    }
+
+    /**
+     * 客户端已断开，之后的事件只写入日志
+     */
+    public void detach() {
+        detached = true;
+    }
+
+    /**
+     * @return 断开后是否还能通过续传接口继续输出
+     */
+    public boolean isResumable() {
+        return journal != null && !journal.isFailed();
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+}
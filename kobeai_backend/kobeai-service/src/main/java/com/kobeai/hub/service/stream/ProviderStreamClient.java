@@ -0,0 +1,189 @@
+package com.kobeai.hub.service.stream;
+
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.repository.AIPlatformRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AI 平台共享流式 HTTP 客户端
+ * 基于 java.net.http.HttpClient，所有平台请求共用一个连接池：
+ * HTTP/2 多路复用 + keep-alive 避免每轮对话重新握手，
+ * 响应体以 Flow.Subscriber 方式异步消费，不为每个生成任务占用阻塞线程。
+ * 每个请求由定时检查兜底：超过 idle-timeout-ms 没有收到 data 事件（包括上游完全无响应）时断开请求，
+ * 以 {@link UpstreamTimeoutException} 结束调用，释放生成任务占用的名额
+ */
+@Slf4j
+@Component
+public class ProviderStreamClient {
+
+    private final AIPlatformRepository platformRepository;
+    private final ExecutorService callbackExecutor;
+    private final ScheduledExecutorService watchdog;
+    private final HttpClient httpClient;
+
+    @Value("${ai.deepseek.base-url:https://api.deepseek.com/v1}")
+    private String defaultBaseUrl;
+
+    // 没有收到 data 事件的最长时间，也作为等待响应头的超时时间
+    @Value("${ai.http.idle-timeout-ms:60000}")
+    private long idleTimeoutMillis;
+
+    @Value("${ai.http.warm-up:true}")
+    private boolean warmUpEnabled;
+
+    public ProviderStreamClient(AIPlatformRepository platformRepository,
+            @Value("${ai.http.connect-timeout-ms:10000}") long connectTimeoutMillis,
+            @Value("${ai.http.client-threads:0}") int clientThreads) {
+        this.platformRepository = platformRepository;
+        int threads = clientThreads > 0 ? clientThreads : Runtime.getRuntime().availableProcessors() * 2;
+        this.callbackExecutor = Executors.newFixedThreadPool(threads, namedThreadFactory("ai-http-"));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("ai-stream-watchdog-"));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .executor(callbackExecutor)
+                .build();
+    }
+
+    /**
+     * 以流式方式发送 chat/completions 请求
+     *
+     * @param uri         请求地址
+     * @param apiKey      平台 API Key
+     * @param requestBody JSON 请求体
+     * @param listener    事件监听器
+     * @return 进行中的调用，可用于取消
+     */
+    public UpstreamCall stream(URI uri, String apiKey, String requestBody, StreamListener listener) {
+        UpstreamCall call = new UpstreamCall(listener);
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Accept", "text/event-stream")
+                .timeout(Duration.ofMillis(idleTimeoutMillis))
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody, StandardCharsets.UTF_8))
+                .build();
+
+        HttpResponse.BodyHandler<Void> handler = info -> info.statusCode() == 200
+                ? HttpResponse.BodySubscribers.fromSubscriber(new SseFrameDecoder(call))
+                : HttpResponse.BodySubscribers.mapping(
+                        HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                        body -> {
+                            call.httpError(info.statusCode(), body);
+                            return null;
+                        });
+
+        CompletableFuture<HttpResponse<Void>> future = httpClient.sendAsync(request, handler);
+        call.attach(future);
+        future.whenComplete((response, error) -> {
+            if (error != null) {
+                call.error(error);
+            }
+        });
+        watchIdle(call, idleTimeoutMillis);
+        return call;
+    }
+
+    /**
+     * 到期时检查调用是否空闲超时，未超时则按剩余时间再次检查。
+     * 超时回调会写数据库与 SSE，交给回调线程执行，不占用定时线程
+     */
+    private void watchIdle(UpstreamCall call, long delayMillis) {
+        try {
+            watchdog.schedule(() -> {
+                if (call.isTerminated()) {
+                    return;
+                }
+                long idle = call.idleMillis();
+                if (idle < idleTimeoutMillis) {
+                    watchIdle(call, idleTimeoutMillis - idle);
+                    return;
+                }
+                log.warn("上游超过 {} ms 没有返回有效数据，断开请求", idle);
+                callbackExecutor.execute(() -> call.timeout(idle));
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("客户端已关闭，不再检查空闲: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 预热到指定平台的连接，使首个用户请求无需再做 TCP/TLS 握手
+     *
+     * @param baseUrl 平台基础地址
+     */
+    public CompletableFuture<Void> warmUp(String baseUrl) {
+        if (baseUrl == null || baseUrl.isBlank()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/models"))
+                    .timeout(Duration.ofSeconds(10))
+                    .GET()
+                    .build();
+            return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(response -> log.info("连接预热完成: {}, 协议: {}", baseUrl, response.version()))
+                    .exceptionally(e -> {
+                        log.warn("连接预热失败: {}, {}", baseUrl, e.getMessage());
+                        return null;
+                    });
+        } catch (IllegalArgumentException e) {
+            log.warn("无效的平台地址，跳过预热: {}", baseUrl);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpConnections() {
+        if (!warmUpEnabled) {
+            return;
+        }
+        Set<String> baseUrls = new LinkedHashSet<>();
+        baseUrls.add(defaultBaseUrl);
+        try {
+            for (AIPlatform platform : platformRepository.findByEnabledTrue()) {
+                baseUrls.add(platform.getBaseUrl());
+            }
+        } catch (Exception e) {
+            log.warn("读取平台配置失败，仅预热默认地址: {}", e.getMessage());
+        }
+        baseUrls.forEach(this::warmUp);
+    }
+
+    @PreDestroy
+    public void close() {
+        watchdog.shutdownNow();
+        callbackExecutor.shutdown();
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
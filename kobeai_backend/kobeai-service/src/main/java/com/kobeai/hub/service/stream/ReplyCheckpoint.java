@@ -0,0 +1,63 @@
+package com.kobeai.hub.service.stream;
+
+import java.util.function.Supplier;
+
+/**
+ * 一次生成的检查点
+ * 生成线程每收到一个增量调用 {@link #onDelta()}，达到 token 数或时间间隔时把内容快照交给 {@link ReplyCheckpointer}；
+ * 生成结束（完成、取消或出错）后调用 {@link #close()}
+ */
+public final class ReplyCheckpoint {
+
+    private static final ReplyCheckpoint DISABLED = new ReplyCheckpoint(null, null, null, 0, 0);
+
+    private final ReplyCheckpointer checkpointer;
+    private final Long messageId;
+    private final Supplier<String> snapshot;
+    private final int everyTokens;
+    private final long everyNanos;
+    // 以下字段只由生成线程访问
+    private int tokensSinceLast;
+    private long lastAt = System.nanoTime();
+
+    ReplyCheckpoint(ReplyCheckpointer checkpointer, Long messageId, Supplier<String> snapshot, int everyTokens,
+            long everyNanos) {
+        this.checkpointer = checkpointer;
+        this.messageId = messageId;
+        this.snapshot = snapshot;
+        this.everyTokens = everyTokens;
+        this.everyNanos = everyNanos;
+    }
+
+    static ReplyCheckpoint disabled() {
+        return DISABLED;
+    }
+
+    public void onDelta() {
+        if (checkpointer == null) {
+            return;
+        }
+        tokensSinceLast++;
+        long now = System.nanoTime();
+        if (tokensSinceLast < everyTokens && now - lastAt < everyNanos) {
+            return;
+        }
+        tokensSinceLast = 0;
+        lastAt = now;
+        checkpointer.offer(messageId, snapshot.get());
+    }
+
+    public void close() {
+        if (checkpointer != null) {
+            checkpointer.close(this);
+        }
+    }
+
+    Long getMessageId() {
+        return messageId;
+    }
+
+    String snapshot() {
+        return snapshot.get();
+    }
+}
@@ -0,0 +1,224 @@
+package com.kobeai.hub.service.stream;
+
+import com.kobeai.hub.model.Message;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 生成中回复的写后缓冲（write-behind）
+ * 生成过程中每收到 every-tokens 个增量或距上次检查点超过 every-ms，把已生成的内容作为检查点放入有界的待写队列；
+ * 队列按消息合并，同一条消息只保留最新的检查点，队列已满时丢弃新的检查点（最终写入仍会保存完整内容）。
+ * 后台线程每隔 flush-interval-ms（或队列积累到 batch-size 条时）取出所有检查点，
+ * 以一次 JDBC 批量 UPDATE 写入各条消息，节点崩溃时最多丢失最近一个检查点之后的内容。
+ * 检查点只更新状态仍为 STREAMING 的消息，晚到的检查点不会覆盖最终写入的回复；
+ * 回复完成、取消或出错时由调用方同步写入最终内容；停止服务时把进行中的生成连同已生成的内容标记为 TRUNCATED。
+ * 节点崩溃遗留的 STREAMING 消息在下次启动时清理：超过 stale-after-ms 未写入检查点的，有内容的标记为 TRUNCATED，
+ * 没有内容的标记为 ERROR。stale-after-ms 需大于检查点间隔与上游空闲超时之和，避免误伤其他节点仍在进行的生成
+ *
+ * 配置项：ai.checkpoint.enabled / every-tokens / every-ms / flush-interval-ms / batch-size / max-pending / stale-after-ms
+ */
+@Slf4j
+@Component
+public class ReplyCheckpointer {
+
+    private static final String PREFIX = "ai.checkpoint.";
+    private static final String UPDATE_SQL = "UPDATE messages SET content = ?, updated_at = ? WHERE id = ? "
+            + "AND status = '" + Message.Status.STREAMING.name() + "'";
+    private static final String TRUNCATE_SQL = "UPDATE messages SET content = ?, status = '"
+            + Message.Status.TRUNCATED.name() + "', updated_at = ? WHERE id = ? AND status = '"
+            + Message.Status.STREAMING.name() + "'";
+    private static final String RECOVER_SQL = "UPDATE messages SET status = CASE WHEN content IS NULL OR content = '' "
+            + "THEN '" + Message.Status.ERROR.name() + "' ELSE '" + Message.Status.TRUNCATED.name() + "' END, "
+            + "updated_at = ? WHERE status = '" + Message.Status.STREAMING.name()
+            + "' AND COALESCE(updated_at, created_at) < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary batchSizes;
+    // 消息ID -> 待写入的最新检查点
+    private final Map<Long, String> pending = new ConcurrentHashMap<>();
+    // 进行中的生成，停止服务时补写检查点
+    private final Map<Long, ReplyCheckpoint> open = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private final boolean enabled;
+    private final int everyTokens;
+    private final long everyNanos;
+    private final int batchSize;
+    private final int maxPending;
+    private final long staleAfterMillis;
+
+    public ReplyCheckpointer(JdbcTemplate jdbcTemplate, Environment environment, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = environment.getProperty(PREFIX + "enabled", Boolean.class, true);
+        this.everyTokens = Math.max(1, environment.getProperty(PREFIX + "every-tokens", Integer.class, 64));
+        this.everyNanos = TimeUnit.MILLISECONDS.toNanos(
+                environment.getProperty(PREFIX + "every-ms", Long.class, 2000L));
+        this.batchSize = Math.max(1, environment.getProperty(PREFIX + "batch-size", Integer.class, 200));
+        this.maxPending = Math.max(1, environment.getProperty(PREFIX + "max-pending", Integer.class, 2000));
+        long flushIntervalMillis = environment.getProperty(PREFIX + "flush-interval-ms", Long.class, 500L);
+        this.staleAfterMillis = Math.max(TimeUnit.NANOSECONDS.toMillis(everyNanos) + flushIntervalMillis,
+                environment.getProperty(PREFIX + "stale-after-ms", Long.class, 180000L));
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-reply-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        this.batchSizes = DistributionSummary.builder("ai.checkpoint.batch.size")
+                .description("每次批量写入的检查点数")
+                .register(meterRegistry);
+        Gauge.builder("ai.checkpoint.pending", pending, Map::size)
+                .description("等待写入的检查点数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 为一次生成创建检查点
+     *
+     * @param messageId 回复消息ID，消息需以 STREAMING 状态插入
+     * @param snapshot  返回已生成内容的快照，需与生成线程的追加互斥
+     */
+    public ReplyCheckpoint open(Long messageId, Supplier<String> snapshot) {
+        if (!enabled || messageId == null) {
+            return ReplyCheckpoint.disabled();
+        }
+        ReplyCheckpoint checkpoint = new ReplyCheckpoint(this, messageId, snapshot, everyTokens, everyNanos);
+        open.put(messageId, checkpoint);
+        return checkpoint;
+    }
+
+    void offer(Long messageId, String content) {
+        if (pending.size() >= maxPending && !pending.containsKey(messageId)) {
+            meterRegistry.counter("ai.checkpoint", "result", "dropped").increment();
+            return;
+        }
+        pending.put(messageId, content);
+        if (pending.size() >= batchSize) {
+            try {
+                flusher.execute(this::flush);
+            } catch (Exception e) {
+                log.debug("提交检查点写入失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    void close(ReplyCheckpoint checkpoint) {
+        open.remove(checkpoint.getMessageId(), checkpoint);
+        // 最终内容由调用方写入，尚未写出的检查点已无意义
+        pending.remove(checkpoint.getMessageId());
+    }
+
+    /**
+     * 取出所有待写入的检查点并批量写入
+     */
+    synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = new ArrayList<>(pending.size());
+        List<Object[]> rows = new ArrayList<>(pending.size());
+        for (Map.Entry<Long, String> entry : pending.entrySet()) {
+            // 只取出仍是该内容的检查点，期间写入的更新的检查点留到下一次
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                ids.add(entry.getKey());
+                rows.add(new Object[] { entry.getValue(), now, entry.getKey() });
+            }
+        }
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            List<Object[]> batch = rows.subList(from, Math.min(rows.size(), from + batchSize));
+            try {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+                batchSizes.record(batch.size());
+                meterRegistry.counter("ai.checkpoint", "result", "written").increment(batch.size());
+            } catch (Exception e) {
+                log.warn("写入回复检查点失败，{} 条将在下次重试，原因: {}", batch.size(), e.getMessage());
+                meterRegistry.counter("ai.checkpoint", "result", "failed").increment(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    Long messageId = ids.get(from + i);
+                    // 已结束的生成不再重试，期间写入的更新的检查点优先
+                    if (open.containsKey(messageId)) {
+                        pending.putIfAbsent(messageId, (String) batch.get(i)[0]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 启动完成时清理节点崩溃遗留的 STREAMING 消息
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverOrphans() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            int recovered = jdbcTemplate.update(RECOVER_SQL, now, now.minus(Duration.ofMillis(staleAfterMillis)));
+            if (recovered > 0) {
+                log.info("已结束 {} 条遗留的生成中回复", recovered);
+                meterRegistry.counter("ai.checkpoint", "result", "recovered").increment(recovered);
+            }
+        } catch (Exception e) {
+            log.warn("清理遗留的生成中回复失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 停止服务：写出已有的检查点，并把进行中的生成连同已生成的内容标记为 TRUNCATED
+     */
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>(open.size());
+        for (ReplyCheckpoint checkpoint : open.values()) {
+            try {
+                rows.add(new Object[] { checkpoint.snapshot(), now, checkpoint.getMessageId() });
+                pending.remove(checkpoint.getMessageId());
+            } catch (Exception e) {
+                log.warn("读取生成中的回复失败，消息ID: {}，原因: {}", checkpoint.getMessageId(), e.getMessage());
+            }
+        }
+        flush();
+        if (rows.isEmpty()) {
+            return;
+        }
+        log.info("停止服务，结束 {} 条生成中的回复", rows.size());
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            try {
+                jdbcTemplate.batchUpdate(TRUNCATE_SQL, rows.subList(from, Math.min(rows.size(), from + batchSize)));
+            } catch (Exception e) {
+                log.warn("写入生成中的回复失败，将在下次启动时清理，原因: {}", e.getMessage());
+            }
+        }
+    }
+}
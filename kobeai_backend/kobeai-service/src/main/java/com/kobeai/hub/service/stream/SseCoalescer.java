@@ -0,0 +1,214 @@
+package com.kobeai.hub.service.stream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 位于上游解析与 SseEmitter 之间的合并发送层
+ * 增量内容先缓存，累计达到字符数阈值或等待超过时间阈值（先到为准）时一次性写出，
+ * 每批只触发一次 flush。普通模式下多个增量合并为一个 message 事件；
+ * 直通模式下上游负载不做改写，同一批的多个事件在一次 send 中写出。
+ * 时间阈值到期时，定时线程只标记待写出并把写出交给写出线程池（有界队列，提交不阻塞），
+ * 定时线程本身从不写连接，一个慢客户端不会推迟其他流的定时写出；
+ * 线程池已满时不等待，由该流下一次追加在生产线程上写出。
+ */
+@Slf4j
+public class SseCoalescer {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final ChatEventStream events;
+    private final int maxChars;
+    private final long maxMillis;
+    private final ScheduledExecutorService timer;
+    private final Executor flushExecutor;
+    private final Counter flushCounter;
+    private final DistributionSummary batchSize;
+
+    private final StringBuilder pendingContent = new StringBuilder();
+    private final List<byte[]> pendingFrames = new ArrayList<>();
+    private int pendingChars;
+    private int pendingDeltas;
+    private ScheduledFuture<?> scheduledFlush;
+    // 时间阈值已到期、缓存内容等待写出；由定时线程设置，不需要持有锁
+    private volatile boolean flushDue;
+    private boolean closed;
+    private volatile Runnable sendFailureHandler;
+
+    SseCoalescer(ChatEventStream events, int maxChars, long maxMillis, ScheduledExecutorService timer,
+            Executor flushExecutor, Counter flushCounter, DistributionSummary batchSize) {
+        this.events = events;
+        this.maxChars = maxChars;
+        this.maxMillis = maxMillis;
+        this.timer = timer;
+        this.flushExecutor = flushExecutor;
+        this.flushCounter = flushCounter;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 追加一段增量内容（普通模式）
+     */
+    public synchronized void append(String content) throws IOException {
+        if (closed || content.isEmpty()) {
+            return;
+        }
+        pendingContent.append(content);
+        pendingChars += content.length();
+        pendingDeltas++;
+        afterAppend();
+    }
+
+    /**
+     * 追加一个上游原始负载（直通模式）
+     *
+     * @param frame        负载字节，调用方需保证不再修改
+     * @param contentChars 其中增量内容的字符数，用于判断是否达到阈值
+     */
+    public synchronized void appendFrame(byte[] frame, int contentChars) throws IOException {
+        if (closed) {
+            return;
+        }
+        pendingFrames.add(frame);
+        pendingChars += contentChars;
+        pendingDeltas++;
+        afterAppend();
+    }
+
+    private void afterAppend() throws IOException {
+        if (maxChars <= 0 || maxMillis <= 0 || pendingChars >= maxChars || flushDue) {
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = timer.schedule(this::onFlushDue, maxMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 立即写出缓存内容
+     */
+    public synchronized void flush() throws IOException {
+        flushDue = false;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pendingDeltas == 0) {
+            return;
+        }
+
+        List<ChatEvent> batch;
+        if (pendingFrames.isEmpty()) {
+            batch = Collections.singletonList(ChatEvent.of("message", messageJson(pendingContent.toString())));
+        } else {
+            batch = new ArrayList<>(pendingFrames.size());
+            for (byte[] frame : pendingFrames) {
+                batch.add(ChatEvent.raw("message", frame));
+            }
+        }
+        flushCounter.increment();
+        batchSize.record(pendingDeltas);
+        pendingContent.setLength(0);
+        pendingFrames.clear();
+        pendingChars = 0;
+        pendingDeltas = 0;
+
+        events.send(batch);
+    }
+
+    /**
+     * 写出剩余内容，之后的追加将被忽略
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+    }
+
+    /**
+     * 丢弃缓存内容并停止写出，用于客户端已断开的场景
+     */
+    public synchronized void discard() {
+        flushDue = false;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        pendingContent.setLength(0);
+        pendingFrames.clear();
+        pendingChars = 0;
+        pendingDeltas = 0;
+        closed = true;
+    }
+
+    /**
+     * 设置定时写出失败（通常是客户端已断开）时的回调
+     */
+    public void onSendFailure(Runnable handler) {
+        this.sendFailureHandler = handler;
+    }
+
+    /**
+     * 在定时线程上执行：只做标记与提交，不获取锁、不写连接
+     */
+    private void onFlushDue() {
+        flushDue = true;
+        try {
+            flushExecutor.execute(this::flushQuietly);
+        } catch (RejectedExecutionException e) {
+            log.debug("写出线程池已满，由下一次追加写出");
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            synchronized (this) {
+                // 生产线程可能已在此之前写出
+                if (flushDue && !closed) {
+                    flush();
+                }
+            }
+        } catch (IOException | IllegalStateException | HttpMessageNotWritableException e) {
+            log.warn("定时合并发送失败: {}", e.getMessage());
+            Runnable handler = sendFailureHandler;
+            if (handler != null) {
+                handler.run();
+            }
+        }
+    }
+
+    /**
+     * 生成与上游相同结构的 {"choices":[{"delta":{"content":...}}]}
+     */
+    private static String messageJson(String content) throws IOException {
+        StringWriter writer = new StringWriter(content.length() + 40);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("choices");
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("delta");
+            generator.writeStringField("content", content);
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
+}
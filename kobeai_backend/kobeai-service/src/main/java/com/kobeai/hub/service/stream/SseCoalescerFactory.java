@@ -0,0 +1,96 @@
+package com.kobeai.hub.service.stream;
+
+import com.kobeai.hub.model.Platform;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 为每个流创建合并发送层，并汇总 flush 次数与批大小指标
+ *
+ * 配置项（可按平台覆盖，如 ai.stream.coalesce.deepseek.max-chars）：
+ * ai.stream.coalesce.max-chars / max-millis，任一为 0 时逐条发送。
+ * 单次请求可通过 StreamOptions 再次覆盖。
+ * 定时写出由写出线程池执行：ai.stream.coalesce.flush-threads（0 表示 CPU 核数 * 2）/ flush-queue
+ */
+@Component
+public class SseCoalescerFactory {
+
+    private static final String PREFIX = "ai.stream.coalesce.";
+    // 单次请求可设置的上限，避免客户端传入过大的值导致长时间无输出
+    private static final int MAX_REQUEST_CHARS = 4096;
+    private static final int MAX_REQUEST_MILLIS = 1000;
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService timer;
+    private final ThreadPoolExecutor flushExecutor;
+
+    public SseCoalescerFactory(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-stream-coalesce");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int threads = environment.getProperty(PREFIX + "flush-threads", Integer.class, 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors() * 2;
+        }
+        int queueCapacity = Math.max(1, environment.getProperty(PREFIX + "flush-queue", Integer.class, 1024));
+        AtomicInteger counter = new AtomicInteger();
+        // 队列满时直接拒绝，提交方（定时线程）不等待
+        this.flushExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "ai-stream-flush-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.flushExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public SseCoalescer create(Platform platform, ChatEventStream events, StreamOptions options) {
+        String name = platform.name().toLowerCase();
+        int maxChars = property(name, "max-chars", 24);
+        int maxMillis = property(name, "max-millis", 40);
+        if (options != null && options.getCoalesceChars() != null) {
+            maxChars = Math.max(0, Math.min(options.getCoalesceChars(), MAX_REQUEST_CHARS));
+        }
+        if (options != null && options.getCoalesceMillis() != null) {
+            maxMillis = Math.max(0, Math.min(options.getCoalesceMillis(), MAX_REQUEST_MILLIS));
+        }
+
+        Counter flushCounter = Counter.builder("ai.stream.flushes")
+                .description("SSE 写出次数")
+                .tag("platform", name)
+                .register(meterRegistry);
+        DistributionSummary batchSize = DistributionSummary.builder("ai.stream.batch.size")
+                .description("每次写出合并的增量条数")
+                .baseUnit("deltas")
+                .tag("platform", name)
+                .register(meterRegistry);
+        return new SseCoalescer(events, maxChars, maxMillis, timer, flushExecutor, flushCounter, batchSize);
+    }
+
+    private int property(String platform, String key, int defaultValue) {
+        int global = environment.getProperty(PREFIX + key, Integer.class, defaultValue);
+        return environment.getProperty(PREFIX + platform + "." + key, Integer.class, global);
+    }
+
+    @PreDestroy
+    public void close() {
+        timer.shutdown();
+        flushExecutor.shutdown();
+    }
+}
@@ -0,0 +1,133 @@
+package com.kobeai.hub.service.stream;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+/**
+ * 字节级 SSE 帧解码器
+ * 直接在响应体的 ByteBuffer 上按 '\n' 切分行，只把 data 字段的字节区间交给监听器，
+ * 不对每行创建 String，也不做 trim / substring。
+ * UTF-8 多字节字符中不会出现 0x0A，因此按字节切行不会截断字符。
+ * 空闲检测（包括只收到 keep-alive 或完全没有数据）由 {@link ProviderStreamClient} 的定时检查负责
+ */
+class SseFrameDecoder implements Flow.Subscriber<List<ByteBuffer>> {
+
+    private static final byte[] DATA_PREFIX = {'d', 'a', 't', 'a', ':'};
+    private static final byte[] DONE = {'[', 'D', 'O', 'N', 'E', ']'};
+    private static final int INITIAL_LINE_CAPACITY = 1024;
+
+    private final UpstreamCall call;
+    private Flow.Subscription subscription;
+    // 跨 ByteBuffer 的未完成行
+    private byte[] line = new byte[INITIAL_LINE_CAPACITY];
+    private int lineLength;
+
+    SseFrameDecoder(UpstreamCall call) {
+        this.call = call;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        call.attach(subscription);
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        try {
+            for (ByteBuffer buffer : buffers) {
+                if (!decode(buffer)) {
+                    return;
+                }
+            }
+            subscription.request(1);
+        } catch (Exception e) {
+            subscription.cancel();
+            call.error(e);
+        }
+    }
+
+    /**
+     * @return 是否继续读取
+     */
+    private boolean decode(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b != '\n') {
+                append(b);
+                continue;
+            }
+            int length = lineLength;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            lineLength = 0;
+            if (!handleLine(length)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(byte b) {
+        if (lineLength == line.length) {
+            byte[] grown = new byte[line.length * 2];
+            System.arraycopy(line, 0, grown, 0, lineLength);
+            line = grown;
+        }
+        line[lineLength++] = b;
+    }
+
+    /**
+     * @return 是否继续读取
+     */
+    private boolean handleLine(int length) {
+        if (length == 0 || call.isTerminated()) {
+            return true;
+        }
+        // keep-alive 注释行与其他字段不计为有效数据
+        if (line[0] == ':' || !startsWith(DATA_PREFIX, 0, length)) {
+            return true;
+        }
+
+        int offset = DATA_PREFIX.length;
+        while (offset < length && line[offset] == ' ') {
+            offset++;
+        }
+        int dataLength = length - offset;
+        if (dataLength == 0) {
+            return true;
+        }
+        if (dataLength == DONE.length && startsWith(DONE, offset, length)) {
+            // 继续读完剩余响应体而不是取消，连接才能归还连接池复用
+            call.complete();
+            return true;
+        }
+        call.data(line, offset, dataLength);
+        return true;
+    }
+
+    private boolean startsWith(byte[] prefix, int offset, int length) {
+        if (length - offset < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        call.error(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        call.complete();
+    }
+}
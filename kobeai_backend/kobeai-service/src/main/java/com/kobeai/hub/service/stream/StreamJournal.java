@@ -0,0 +1,440 @@
+package com.kobeai.hub.service.stream;
+
+import com.kobeai.hub.constant.RedisKeyConstant;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 基于 Redis Stream 的流式输出日志
+ * 每条 AI 回复对应一个限长的 Stream，记录 id 直接使用事件序号（0-{序号}），
+ * 续传时从 Last-Event-ID 之后开始重放，再轮询跟随仍在生成的尾部，
+ * 因此重连落到其他节点也能继续输出。
+ * 事件先进入每条回复自己的写入队列，由写入线程按顺序以 pipeline 批量写入 Redis，
+ * 输出线程不等待 Redis；队列积压超过 max-len 时放弃该回复的续传。
+ * 续传轮询与断开后的宽限期检查由定时线程触发、在续传线程池（有界队列，提交不阻塞）中执行，
+ * 定时线程本身不访问 Redis、不写连接；线程池已满时顺延到下一次触发，同一续传连接同时只有一次轮询
+ */
+@Slf4j
+@Component
+public class StreamJournal {
+
+    private static final String FIELD_EVENT = "e";
+    private static final String FIELD_DATA = "d";
+    private static final int REPLAY_BATCH = 256;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService writers;
+    private final ThreadPoolExecutor workers;
+
+    @Value("${ai.stream.resume.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.stream.resume.max-len:4096}")
+    private long maxLength;
+
+    @Value("${ai.stream.resume.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${ai.stream.resume.grace-ms:15000}")
+    private long graceMillis;
+
+    @Value("${ai.stream.resume.poll-interval-ms:200}")
+    private long pollIntervalMillis;
+
+    @Value("${ai.stream.resume.idle-timeout-ms:120000}")
+    private long idleTimeoutMillis;
+
+    public StreamJournal(StringRedisTemplate redisTemplate,
+            @Value("${ai.stream.resume.writer-threads:2}") int writerThreads,
+            @Value("${ai.stream.resume.worker-threads:8}") int workerThreads,
+            @Value("${ai.stream.resume.worker-queue:256}") int workerQueue) {
+        this.redisTemplate = redisTemplate;
+        AtomicInteger counter = new AtomicInteger();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-stream-resume-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger writerCounter = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(Math.max(1, writerThreads), runnable -> {
+            Thread thread = new Thread(runnable, "ai-stream-journal-" + writerCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int threads = Math.max(1, workerThreads);
+        AtomicInteger workerCounter = new AtomicInteger();
+        // 队列满时直接拒绝，提交方（定时线程）不等待
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, workerQueue)), runnable -> {
+                    Thread thread = new Thread(runnable, "ai-stream-resume-worker-" + workerCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 为一条 AI 回复创建事件输出
+     */
+    public ChatEventStream open(SseEmitter emitter, Long messageId) {
+        return new ChatEventStream(emitter, messageId, enabled && messageId != null ? new Writer(messageId) : null);
+    }
+
+    /**
+     * 一条回复的日志写入队列
+     * 输出线程只入队，同一时刻最多有一个写入任务在执行，保证按序号顺序写入；
+     * 结束标记同样入队，过期时间在所有事件写入之后设置
+     */
+    final class Writer {
+
+        private final Long messageId;
+        private final String key;
+        // 事件为 null 的条目表示输出结束
+        private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean failed;
+
+        private Writer(Long messageId) {
+            this.messageId = messageId;
+            this.key = streamKey(messageId);
+        }
+
+        /**
+         * 追加一条事件，不等待写入
+         */
+        void append(long sequence, ChatEvent event) {
+            if (failed) {
+                return;
+            }
+            if (size.incrementAndGet() > maxLength) {
+                fail("写入积压超过 " + maxLength + " 条");
+                return;
+            }
+            pending.add(new Entry(sequence, event));
+            schedule();
+        }
+
+        /**
+         * 输出结束，日志在 TTL 内仍可用于重放
+         */
+        void finish() {
+            size.incrementAndGet();
+            pending.add(new Entry(0, null));
+            schedule();
+        }
+
+        /**
+         * @return 是否已放弃续传
+         */
+        boolean isFailed() {
+            return failed;
+        }
+
+        private void schedule() {
+            if (!draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                writers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                fail("服务正在停止");
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                List<Entry> batch = new ArrayList<>();
+                Entry entry;
+                while (batch.size() < REPLAY_BATCH && (entry = pending.poll()) != null) {
+                    batch.add(entry);
+                }
+                if (!batch.isEmpty()) {
+                    write(batch);
+                    continue;
+                }
+                draining.set(false);
+                // 释放后又有条目入队，且入队方没有抢到写入权时由当前任务继续写
+                if (pending.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        private void write(List<Entry> batch) {
+            size.addAndGet(-batch.size());
+            if (failed) {
+                return;
+            }
+            try {
+                redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) {
+                        RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                        for (Entry entry : batch) {
+                            if (entry.event == null) {
+                                redis.expire(key, Duration.ofSeconds(ttlSeconds));
+                                continue;
+                            }
+                            MapRecord<String, String, String> record = StreamRecords.newRecord()
+                                    .in(key)
+                                    .withId(RecordId.of(0, entry.sequence))
+                                    .ofMap(Map.of(FIELD_EVENT, entry.event.getName(), FIELD_DATA,
+                                            entry.event.text()));
+                            redis.opsForStream().add(record,
+                                    RedisStreamCommands.XAddOptions.maxlen(maxLength).approximateTrimming(true));
+                            if (entry.sequence == 1 || entry.sequence % REPLAY_BATCH == 0) {
+                                redis.expire(key, Duration.ofSeconds(ttlSeconds));
+                            }
+                        }
+                        return null;
+                    }
+                });
+            } catch (RuntimeException e) {
+                fail(e.getMessage());
+            }
+        }
+
+        private void fail(String reason) {
+            if (!failed) {
+                failed = true;
+                log.warn("写入流式输出日志失败，本次回复不再支持续传，消息ID: {}，原因: {}", messageId, reason);
+            }
+            pending.clear();
+        }
+    }
+
+    private static final class Entry {
+
+        private final long sequence;
+        private final ChatEvent event;
+
+        private Entry(long sequence, ChatEvent event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+    }
+
+    /**
+     * 客户端断开后等待续传：宽限期内没有续传连接则执行 onAbandoned，
+     * 有续传连接则继续等待，直到生成结束
+     *
+     * @param messageId   AI 消息ID
+     * @param finished    生成是否已结束
+     * @param onAbandoned 无人续传时的回调
+     */
+    public void watchDetached(Long messageId, BooleanSupplier finished, Runnable onAbandoned) {
+        runLater(() -> {
+            if (finished.getAsBoolean()) {
+                return;
+            }
+            if (hasReader(messageId)) {
+                watchDetached(messageId, finished, onAbandoned);
+            } else {
+                onAbandoned.run();
+            }
+        }, graceMillis);
+    }
+
+    /**
+     * 延迟后把任务交给续传线程池，线程池已满时隔一个轮询间隔再提交
+     */
+    private void runLater(Runnable task, long delayMillis) {
+        try {
+            scheduler.schedule(() -> {
+                try {
+                    workers.execute(task);
+                } catch (RejectedExecutionException e) {
+                    runLater(task, pollIntervalMillis);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("服务正在停止，放弃续传任务");
+        }
+    }
+
+    private boolean hasReader(Long messageId) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(readerKey(messageId)));
+        } catch (RuntimeException e) {
+            log.warn("查询续传连接失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 从指定序号之后重放，并跟随仍在生成的尾部
+     *
+     * @param messageId    AI 消息ID
+     * @param lastSequence 客户端已收到的最后一个事件序号
+     */
+    public SseEmitter resume(Long messageId, long lastSequence) {
+        return resume(new SseEmitter(30 * 60 * 1000L), messageId, lastSequence);
+    }
+
+    SseEmitter resume(SseEmitter emitter, Long messageId, long lastSequence) {
+        ResumeSession session = new ResumeSession(messageId, lastSequence, emitter);
+        session.start();
+        emitter.onCompletion(session::stop);
+        emitter.onTimeout(session::stop);
+        emitter.onError(e -> session.stop());
+        return emitter;
+    }
+
+    private class ResumeSession {
+
+        private final Long messageId;
+        private final SseEmitter emitter;
+        private long lastSequence;
+        private long lastActivity = System.currentTimeMillis();
+        private volatile ScheduledFuture<?> task;
+        private volatile boolean stopped;
+        // 上一次轮询（可能阻塞在慢客户端上）尚未结束时跳过本次触发
+        private final AtomicBoolean polling = new AtomicBoolean();
+
+        ResumeSession(Long messageId, long lastSequence, SseEmitter emitter) {
+            this.messageId = messageId;
+            this.lastSequence = lastSequence;
+            this.emitter = emitter;
+        }
+
+        void start() {
+            task = scheduler.scheduleWithFixedDelay(this::trigger, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 在定时线程上执行：只提交轮询，不等待
+         */
+        private void trigger() {
+            if (stopped || !polling.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                workers.execute(() -> {
+                    try {
+                        poll();
+                    } finally {
+                        polling.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                polling.set(false);
+            }
+        }
+
+        void stop() {
+            stopped = true;
+            ScheduledFuture<?> current = task;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+
+        private void poll() {
+            if (stopped) {
+                return;
+            }
+            try {
+                String key = streamKey(messageId);
+                // 标记存在续传连接，生成端据此决定是否继续生成
+                redisTemplate.opsForValue().set(readerKey(messageId), "1", Duration.ofMillis(graceMillis));
+
+                List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream().range(key,
+                        Range.rightUnbounded(Range.Bound.inclusive(RecordId.of(0, lastSequence + 1).getValue())),
+                        Limit.limit().count(REPLAY_BATCH));
+                if (records == null || records.isEmpty()) {
+                    if (!Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                        finish("error", "没有可续传的输出");
+                    } else if (System.currentTimeMillis() - lastActivity > idleTimeoutMillis) {
+                        finish("error", "续传等待超时");
+                    }
+                    return;
+                }
+
+                boolean terminal = false;
+                Set<ResponseBodyEmitter.DataWithMediaType> batch = new LinkedHashSet<>();
+                for (MapRecord<String, Object, Object> record : records) {
+                    long sequence = record.getId().getSequence();
+                    String event = String.valueOf(record.getValue().get(FIELD_EVENT));
+                    batch.addAll(SseEmitter.event()
+                            .id(messageId + "-" + sequence)
+                            .name(event)
+                            .data(String.valueOf(record.getValue().get(FIELD_DATA)))
+                            .build());
+                    lastSequence = sequence;
+                    if ("done".equals(event) || "error".equals(event)) {
+                        terminal = true;
+                        break;
+                    }
+                }
+                emitter.send(batch);
+                lastActivity = System.currentTimeMillis();
+                if (terminal) {
+                    stop();
+                    emitter.complete();
+                }
+            } catch (Exception e) {
+                log.warn("续传输出失败: {}", e.getMessage());
+                stop();
+                emitter.completeWithError(e);
+            }
+        }
+
+        private void finish(String event, String data) throws Exception {
+            stop();
+            emitter.send(SseEmitter.event().name(event).data(data).build());
+            emitter.complete();
+        }
+    }
+
+    private static String streamKey(Long messageId) {
+        return RedisKeyConstant.CHAT_STREAM_KEY + messageId;
+    }
+
+    private static String readerKey(Long messageId) {
+        return RedisKeyConstant.CHAT_STREAM_READER_KEY + messageId;
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdown();
+        writers.shutdown();
+        workers.shutdown();
+    }
+}
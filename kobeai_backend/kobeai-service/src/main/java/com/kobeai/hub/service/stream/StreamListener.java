@@ -0,0 +1,38 @@
+package com.kobeai.hub.service.stream;
+
+/**
+ * 上游 SSE 流事件监听器
+ * 回调在 HttpClient 的执行线程上触发，且 onComplete / onError / onHttpError 三者只会触发其一
+ */
+public interface StreamListener {
+
+    /**
+     * 收到一条 data 事件（已去掉 "data:" 前缀，不包含 [DONE]）
+     * 字节数组由解码器复用，只在回调期间有效
+     *
+     * @param buffer 字节数组
+     * @param offset 事件数据起始位置
+     * @param length 事件数据长度
+     */
+    void onData(byte[] buffer, int offset, int length);
+
+    /**
+     * 流正常结束（收到 [DONE] 或连接关闭）
+     */
+    void onComplete();
+
+    /**
+     * 上游返回非 200 状态码
+     *
+     * @param statusCode 状态码
+     * @param body       错误响应体
+     */
+    void onHttpError(int statusCode, String body);
+
+    /**
+     * 连接或读取过程中发生异常，空闲超时时为 {@link UpstreamTimeoutException}
+     *
+     * @param error 异常
+     */
+    void onError(Throwable error);
+}
@@ -0,0 +1,29 @@
+package com.kobeai.hub.service.stream;
+
+import lombok.Data;
+
+/**
+ * 单次请求的流式输出选项，未设置的字段使用平台配置
+ */
+@Data
+public class StreamOptions {
+
+    /**
+     * 合并发送的字符数阈值，0 表示逐条发送
+     */
+    private Integer coalesceChars;
+
+    /**
+     * 合并发送的最长等待时间（毫秒），0 表示逐条发送
+     */
+    private Integer coalesceMillis;
+
+    /**
+     * 是否使用回复缓存，false 表示跳过缓存重新生成
+     */
+    private Boolean useCache;
+
+    public static StreamOptions defaults() {
+        return new StreamOptions();
+    }
+}
@@ -0,0 +1,113 @@
+package com.kobeai.hub.service.stream;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次进行中的上游流式调用
+ * 负责保证监听器的终止回调只触发一次，并支持主动取消
+ */
+public class UpstreamCall {
+
+    private final StreamListener listener;
+    private final AtomicBoolean terminated = new AtomicBoolean(false);
+    private volatile Flow.Subscription subscription;
+    private volatile CompletableFuture<?> responseFuture;
+    private volatile boolean cancelled;
+    // 最后一次收到 data 事件的时间，用于空闲检测
+    private volatile long lastDataNanos = System.nanoTime();
+
+    UpstreamCall(StreamListener listener) {
+        this.listener = listener;
+    }
+
+    void attach(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (cancelled) {
+            subscription.cancel();
+        }
+    }
+
+    void attach(CompletableFuture<?> responseFuture) {
+        this.responseFuture = responseFuture;
+        if (cancelled) {
+            responseFuture.cancel(true);
+        }
+    }
+
+    void data(byte[] buffer, int offset, int length) {
+        lastDataNanos = System.nanoTime();
+        if (!terminated.get()) {
+            listener.onData(buffer, offset, length);
+        }
+    }
+
+    void complete() {
+        if (terminated.compareAndSet(false, true)) {
+            listener.onComplete();
+        }
+    }
+
+    void httpError(int statusCode, String body) {
+        if (terminated.compareAndSet(false, true)) {
+            listener.onHttpError(statusCode, body);
+        }
+    }
+
+    void error(Throwable error) {
+        if (terminated.compareAndSet(false, true)) {
+            listener.onError(error);
+        }
+    }
+
+    /**
+     * 空闲超时：断开上游请求并以 {@link UpstreamTimeoutException} 通知监听器
+     */
+    void timeout(long idleMillis) {
+        if (terminated.compareAndSet(false, true)) {
+            cancelTransport();
+            listener.onError(new UpstreamTimeoutException(idleMillis));
+        }
+    }
+
+    /**
+     * @return 距最后一次收到 data 事件（或发起请求）的毫秒数
+     */
+    long idleMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastDataNanos);
+    }
+
+    /**
+     * 取消上游请求，HTTP/2 下只会重置当前流，连接本身继续复用。
+     * 取消后不再向监听器回调任何事件。
+     */
+    public void cancel() {
+        terminated.set(true);
+        cancelTransport();
+    }
+
+    private void cancelTransport() {
+        cancelled = true;
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+        CompletableFuture<?> future = responseFuture;
+        if (future != null) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * @return HTTP 响应的 Future，响应体读完（连接归还连接池）时完成，请求尚未发出时为 null
+     */
+    CompletableFuture<?> responseFuture() {
+        return responseFuture;
+    }
+
+    public boolean isTerminated() {
+        return terminated.get();
+    }
+}
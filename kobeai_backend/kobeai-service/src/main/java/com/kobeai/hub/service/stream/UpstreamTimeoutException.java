@@ -0,0 +1,14 @@
+package com.kobeai.hub.service.stream;
+
+import java.io.IOException;
+
+/**
+ * 上游在空闲超时时间内没有返回有效数据（包括完全没有字节到达、只有 keep-alive 注释行）
+ * 已生成的内容不完整，调用方应按截断处理，不能当作正常完成的回复缓存
+ */
+public class UpstreamTimeoutException extends IOException {
+
+    public UpstreamTimeoutException(long idleMillis) {
+        super("上游超过 " + idleMillis + " ms 没有返回有效数据");
+    }
+}
@@ -0,0 +1,180 @@
+package com.kobeai.hub.service.tokenizer;
+
+import com.knuddels.jtokkit.api.Encoding;
+
+/**
+ * 带分词缓存的 BPE 编码
+ * 文本先按 BPE 预分词规则一定会断开的位置切成片段（单词、标点前），每个片段的 token id
+ * 以 int 数组缓存；命中缓存时只做字符比较，不产生任何对象分配。
+ *
+ * 只在以下两处切分，保证与直接对整段文本编码的结果完全一致（cl100k / o200k / p50k 预分词规则都满足）：
+ * <ul>
+ * <li>非空白字符之后、字母之前的单个空格：空格总是与其后的字母组成同一个片段</li>
+ * <li>字母之后的标点符号（撇号除外，避免拆开 's 等缩写）</li>
+ * </ul>
+ * 缓存为两路组相联，每组淘汰最近未使用的一路；并发读写无锁，条目不可变，竞争时最多重复编码一次
+ */
+class CachedEncoding {
+
+    /**
+     * 超过该长度的片段（如不含空格和标点的长串）不缓存，直接编码
+     */
+    static final int MAX_CACHED_PIECE = 64;
+
+    private final Encoding encoding;
+    private final Entry[] slots;
+    private final byte[] recent;
+    private final int setMask;
+
+    /**
+     * @param encoding  jtokkit 编码
+     * @param cacheSize 缓存条目数，向上取整为 2 的幂
+     */
+    CachedEncoding(Encoding encoding, int cacheSize) {
+        this.encoding = encoding;
+        int capacity = Integer.highestOneBit(Math.max(2, cacheSize) - 1) << 1;
+        int sets = capacity / 2;
+        this.slots = new Entry[sets * 2];
+        this.recent = new byte[sets];
+        this.setMask = sets - 1;
+    }
+
+    String getName() {
+        return encoding.getName();
+    }
+
+    /**
+     * @return 文本的 token 数
+     */
+    int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        int start = 0;
+        int length = text.length();
+        while (start < length) {
+            int end = nextBoundary(text, start);
+            tokens += piece(text, start, end).length;
+            start = end;
+        }
+        return tokens;
+    }
+
+    /**
+     * @return 文本的 token id
+     */
+    int[] encode(String text) {
+        if (text == null || text.isEmpty()) {
+            return new int[0];
+        }
+        int[] tokens = new int[16];
+        int size = 0;
+        int start = 0;
+        int length = text.length();
+        while (start < length) {
+            int end = nextBoundary(text, start);
+            int[] ids = piece(text, start, end);
+            if (size + ids.length > tokens.length) {
+                int[] grown = new int[Math.max(tokens.length * 2, size + ids.length)];
+                System.arraycopy(tokens, 0, grown, 0, size);
+                tokens = grown;
+            }
+            System.arraycopy(ids, 0, tokens, size, ids.length);
+            size += ids.length;
+            start = end;
+        }
+        int[] result = new int[size];
+        System.arraycopy(tokens, 0, result, 0, size);
+        return result;
+    }
+
+    private int[] piece(String text, int start, int end) {
+        int length = end - start;
+        if (length > MAX_CACHED_PIECE) {
+            return encoding.encodeOrdinary(text.substring(start, end)).toArray();
+        }
+        int hash = hash(text, start, end);
+        int set = hash & setMask;
+        int base = set << 1;
+        for (int way = 0; way < 2; way++) {
+            Entry entry = slots[base + way];
+            if (entry != null && entry.hash == hash && entry.piece.length() == length
+                    && entry.piece.regionMatches(0, text, start, length)) {
+                recent[set] = (byte) way;
+                return entry.tokens;
+            }
+        }
+        String piece = text.substring(start, end);
+        int[] tokens = encoding.encodeOrdinary(piece).toArray();
+        // 替换最近未使用的一路
+        int victim = recent[set] == 0 ? 1 : 0;
+        slots[base + victim] = new Entry(piece, hash, tokens);
+        recent[set] = (byte) victim;
+        return tokens;
+    }
+
+    /**
+     * @return 从 start 开始的片段的结束位置
+     */
+    static int nextBoundary(String text, int start) {
+        int length = text.length();
+        int previous = text.codePointAt(start);
+        int i = start + Character.charCount(previous);
+        while (i < length) {
+            int current = text.codePointAt(i);
+            if (current == ' ' && !isSpace(previous) && i + 1 < length
+                    && Character.isLetter(text.codePointAt(i + 1))) {
+                return i;
+            }
+            if (Character.isLetter(previous) && isPunctuation(current)) {
+                return i;
+            }
+            previous = current;
+            i += Character.charCount(current);
+        }
+        return length;
+    }
+
+    private static boolean isSpace(int codePoint) {
+        return Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint);
+    }
+
+    private static boolean isPunctuation(int codePoint) {
+        if (codePoint == '\'' || isSpace(codePoint) || Character.isLetter(codePoint)) {
+            return false;
+        }
+        switch (Character.getType(codePoint)) {
+            case Character.DECIMAL_DIGIT_NUMBER:
+            case Character.LETTER_NUMBER:
+            case Character.OTHER_NUMBER:
+            case Character.NON_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static int hash(String text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        // 混淆高位，避免组索引只取到低位
+        return hash ^ (hash >>> 16) ^ (hash >>> 7);
+    }
+
+    private static final class Entry {
+        private final String piece;
+        private final int hash;
+        private final int[] tokens;
+
+        private Entry(String piece, int hash, int[] tokens) {
+            this.piece = piece;
+            this.hash = hash;
+            this.tokens = tokens;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.kobeai.hub.service.tokenizer;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.GptBytePairEncodingParams;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.service.provider.ChatProviderRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 本地 BPE 分词器，统一提供 token 计数
+ * 内置 cl100k_base / o200k_base 等 OpenAI 词表（随 jtokkit 打包在 classpath 中），
+ * 也可以从 classpath 加载 tiktoken 格式（每行「base64 字节 排名」）的自定义词表，
+ * 按 o200k 的预分词规则编码。各平台可使用不同的词表。
+ *
+ * 配置项：ai.tokenizer.encoding（默认 o200k_base）/ ai.tokenizer.&lt;platform&gt;.encoding /
+ * ai.tokenizer.cache-size / ai.tokenizer.vocabularies.&lt;name&gt;（自定义词表的 classpath 路径）
+ */
+@Slf4j
+@Component
+public class Tokenizer {
+
+    private static final String PREFIX = "ai.tokenizer.";
+
+    /**
+     * o200k_base 的预分词规则，用于自定义词表
+     */
+    private static final Pattern O200K_PATTERN = Pattern.compile(String.join("|",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "\\p{N}{1,3}",
+            " ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*",
+            "\\s*[\\r\\n]+",
+            "\\s+(?!\\S)",
+            "\\s+"), Pattern.UNICODE_CHARACTER_CLASS);
+
+    private final CachedEncoding defaultEncoding;
+    private final Map<Platform, CachedEncoding> platformEncodings = new EnumMap<>(Platform.class);
+
+    public Tokenizer(Environment environment) {
+        int cacheSize = environment.getProperty(PREFIX + "cache-size", Integer.class, 65536);
+        EncodingRegistry registry = Encodings.newLazyEncodingRegistry();
+        Map<String, String> vocabularies = Binder.get(environment)
+                .bind(PREFIX + "vocabularies", Bindable.mapOf(String.class, String.class))
+                .orElse(Collections.emptyMap());
+        vocabularies.forEach((name, path) -> registry.registerGptBytePairEncoding(new GptBytePairEncodingParams(
+                name, O200K_PATTERN, loadVocabulary(path), Collections.emptyMap())));
+
+        // 同名词表共享一份编码与缓存，启动时加载，避免首个请求等待
+        Map<String, CachedEncoding> loaded = new HashMap<>();
+        String defaultName = environment.getProperty(PREFIX + "encoding", "o200k_base");
+        this.defaultEncoding = loaded.computeIfAbsent(defaultName,
+                name -> new CachedEncoding(resolve(registry, name), cacheSize));
+        for (Platform platform : Platform.values()) {
+            String name = environment.getProperty(
+                    PREFIX + ChatProviderRegistry.configName(platform) + ".encoding", defaultName);
+            platformEncodings.put(platform,
+                    loaded.computeIfAbsent(name, key -> new CachedEncoding(resolve(registry, key), cacheSize)));
+        }
+        log.info("分词器已加载，默认词表: {}，缓存条目: {}", defaultName, cacheSize);
+    }
+
+    /**
+     * @return 按默认词表计算的 token 数
+     */
+    public int count(String text) {
+        return defaultEncoding.count(text);
+    }
+
+    /**
+     * @param platform 平台类型，为空时使用默认词表
+     * @return 按该平台词表计算的 token 数
+     */
+    public int count(Platform platform, String text) {
+        return encoding(platform).count(text);
+    }
+
+    /**
+     * @param platform 平台类型，为空时使用默认词表
+     * @return 按该平台词表编码的 token id
+     */
+    public int[] encode(Platform platform, String text) {
+        return encoding(platform).encode(text);
+    }
+
+    private CachedEncoding encoding(Platform platform) {
+        return platform != null ? platformEncodings.get(platform) : defaultEncoding;
+    }
+
+    private static Encoding resolve(EncodingRegistry registry, String name) {
+        return registry.getEncoding(name)
+                .orElseThrow(() -> new IllegalArgumentException("未知的分词词表: " + name));
+    }
+
+    private static Map<byte[], Integer> loadVocabulary(String path) {
+        Map<byte[], Integer> ranks = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ClassPathResource(path).getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(' ');
+                if (separator <= 0) {
+                    continue;
+                }
+                ranks.put(Base64.getDecoder().decode(line.substring(0, separator)),
+                        Integer.parseInt(line.substring(separator + 1).trim()));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("加载分词词表失败: " + path, e);
+        }
+        return ranks;
+    }
+}
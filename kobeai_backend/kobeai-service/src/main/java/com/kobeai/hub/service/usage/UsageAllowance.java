@@ -0,0 +1,87 @@
+package com.kobeai.hub.service.usage;
+
+import com.kobeai.hub.model.Platform;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次生成的用量额度
+ * 请求平台前按提示词预占，生成过程中按增量继续预占，预占失败表示用户当日额度已用完；
+ * 结束时记录实际用量并释放预占，未记录用量（出错）时也需调用 {@link #close()} 释放
+ */
+public final class UsageAllowance {
+
+    private static final UsageAllowance UNMETERED = new UsageAllowance(null, null, 0, null);
+
+    private final UsageMeter meter;
+    private final Long userId;
+    // 每日额度，0 表示不限
+    private final long quota;
+    private final UsageMeter.DailyBudget budget;
+    private final AtomicLong reserved = new AtomicLong();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    UsageAllowance(UsageMeter meter, Long userId, long quota, UsageMeter.DailyBudget budget) {
+        this.meter = meter;
+        this.userId = userId;
+        this.quota = quota;
+        this.budget = budget;
+    }
+
+    /**
+     * 不计量也不限额的额度（如匿名请求）
+     */
+    static UsageAllowance unmetered() {
+        return UNMETERED;
+    }
+
+    /**
+     * @return 用户当日额度是否已用完
+     */
+    public boolean isExhausted() {
+        return quota > 0 && budget.used() >= quota;
+    }
+
+    /**
+     * 预占 token
+     *
+     * @return 预占后仍未超出额度时为 true
+     */
+    public boolean reserve(long tokens) {
+        if (budget == null || closed.get()) {
+            return true;
+        }
+        reserved.addAndGet(tokens);
+        budget.inflight.add(tokens);
+        if (quota > 0 && budget.used() > quota) {
+            meter.quotaExceeded();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 记录本次生成的实际用量并释放预占
+     *
+     * @param cacheHitTokens 提示词命中平台前缀缓存的 token 数，平台未返回时为负数，不计入缓存统计
+     */
+    public void record(Platform platform, long promptTokens, long completionTokens, long cacheHitTokens) {
+        if (meter == null) {
+            return;
+        }
+        boolean reported = cacheHitTokens >= 0;
+        meter.record(userId, platform, promptTokens, completionTokens, reported ? cacheHitTokens : 0,
+                reported ? Math.max(0, promptTokens - cacheHitTokens) : 0);
+        close();
+    }
+
+    /**
+     * 释放预占，可重复调用
+     */
+    public void close() {
+        if (budget != null && closed.compareAndSet(false, true)) {
+            budget.inflight.add(-reserved.get());
+        }
+    }
+}
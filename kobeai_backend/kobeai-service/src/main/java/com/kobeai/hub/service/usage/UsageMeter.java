@@ -0,0 +1,334 @@
+package com.kobeai.hub.service.usage;
+
+import com.kobeai.hub.constant.UserRole;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.model.User;
+import com.kobeai.hub.repository.TokenUsageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按用户、平台、日期统计 token 用量（含提示词命中平台前缀缓存的 token 数）并执行每日额度
+ * 每次生成的用量先累加到内存中的 LongAdder（按 用户/平台/日期 分桶），
+ * 每隔 flush-interval-ms 取出增量，以 JDBC 批量 upsert 累加到 token_usage 表，写入失败的增量放回内存等待下次写入。
+ * 额度按用户角色配置（每日 token 数，0 表示不限）：已用量 = 库中当日用量（定期刷新）+ 未写入的增量 + 进行中生成已产生的 token，
+ * 生成过程中按增量预占，用完即中止。多节点部署时其他节点的用量在刷新后才计入，额度为近似值，可能少量超出。
+ * 本节点写入某用户的用量期间不刷新该用户的库中用量，读取期间发生过写入的刷新结果作废，
+ * 避免刚写入的增量既被读入库中用量、又仍计在未写入的增量中
+ *
+ * 配置项：ai.usage.enabled / flush-interval-ms / batch-size / refresh-ms / daily-quota.{normal|vip|svip|admin}
+ */
+@Slf4j
+@Component
+public class UsageMeter {
+
+    private static final String PREFIX = "ai.usage.";
+    private static final String UPSERT_SQL = "INSERT INTO token_usage "
+            + "(user_id, platform, usage_date, prompt_tokens, completion_tokens, request_count, cache_hit_tokens, "
+            + "cache_miss_tokens, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, NOW(6)) ON DUPLICATE KEY UPDATE "
+            + "prompt_tokens = prompt_tokens + VALUES(prompt_tokens), "
+            + "completion_tokens = completion_tokens + VALUES(completion_tokens), "
+            + "request_count = request_count + VALUES(request_count), "
+            + "cache_hit_tokens = cache_hit_tokens + VALUES(cache_hit_tokens), "
+            + "cache_miss_tokens = cache_miss_tokens + VALUES(cache_miss_tokens), updated_at = VALUES(updated_at)";
+    private static final Map<UserRole, Long> DEFAULT_QUOTAS = Map.of(
+            UserRole.NORMAL, 200000L, UserRole.VIP, 1000000L, UserRole.SVIP, 5000000L, UserRole.ADMIN, 0L);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TokenUsageRepository tokenUsageRepository;
+    private final MeterRegistry meterRegistry;
+    private final Map<UsageKey, Counters> pending = new ConcurrentHashMap<>();
+    private final Map<Long, DailyBudget> budgets = new ConcurrentHashMap<>();
+    private final Map<UserRole, Long> quotas = new EnumMap<>(UserRole.class);
+    private final ScheduledExecutorService flusher;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long refreshMillis;
+
+    public UsageMeter(JdbcTemplate jdbcTemplate, TokenUsageRepository tokenUsageRepository, Environment environment,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tokenUsageRepository = tokenUsageRepository;
+        this.meterRegistry = meterRegistry;
+        this.enabled = environment.getProperty(PREFIX + "enabled", Boolean.class, true);
+        this.batchSize = Math.max(1, environment.getProperty(PREFIX + "batch-size", Integer.class, 500));
+        this.refreshMillis = environment.getProperty(PREFIX + "refresh-ms", Long.class, 60000L);
+        for (UserRole role : UserRole.values()) {
+            quotas.put(role, environment.getProperty(PREFIX + "daily-quota." + role.name().toLowerCase(), Long.class,
+                    DEFAULT_QUOTAS.get(role)));
+        }
+        long flushIntervalMillis = environment.getProperty(PREFIX + "flush-interval-ms", Long.class, 5000L);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-usage-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        Gauge.builder("ai.usage.pending", pending, Map::size)
+                .description("尚未写入数据库的用量分桶数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 为一次生成创建用量额度，首次访问或缓存过期时从数据库读取用户当日用量
+     *
+     * @param user 发起生成的用户，为空时不计量也不限额
+     */
+    public UsageAllowance open(User user) {
+        if (!enabled || user == null || user.getId() == null) {
+            return UsageAllowance.unmetered();
+        }
+        UserRole role = user.getUserRole() != null ? user.getUserRole() : UserRole.NORMAL;
+        return new UsageAllowance(this, user.getId(), quotas.getOrDefault(role, 0L), budget(user.getId()));
+    }
+
+    /**
+     * 累加一次生成的用量，只写内存，由后台线程批量入库
+     *
+     * @param cacheHitTokens  提示词命中平台前缀缓存的 token 数，平台未返回时为 0
+     * @param cacheMissTokens 提示词未命中平台前缀缓存的 token 数，平台未返回时为 0
+     */
+    void record(Long userId, Platform platform, long promptTokens, long completionTokens, long cacheHitTokens,
+            long cacheMissTokens) {
+        LocalDate day = LocalDate.now();
+        String platformName = platform != null ? platform.name() : "UNKNOWN";
+        Counters counters = pending.computeIfAbsent(new UsageKey(userId, platformName, day), key -> new Counters());
+        counters.promptTokens.add(promptTokens);
+        counters.completionTokens.add(completionTokens);
+        counters.requests.increment();
+        counters.cacheHitTokens.add(cacheHitTokens);
+        counters.cacheMissTokens.add(cacheMissTokens);
+        DailyBudget budget = budgets.get(userId);
+        if (budget != null && budget.day.equals(day)) {
+            budget.pending.add(promptTokens + completionTokens);
+        }
+        meterRegistry.counter("ai.usage.tokens", "platform", platformName, "type", "prompt").increment(promptTokens);
+        meterRegistry.counter("ai.usage.tokens", "platform", platformName, "type", "completion")
+                .increment(completionTokens);
+    }
+
+    void quotaExceeded() {
+        meterRegistry.counter("ai.usage.quota.exceeded").increment();
+    }
+
+    private DailyBudget budget(Long userId) {
+        LocalDate today = LocalDate.now();
+        long now = System.currentTimeMillis();
+        DailyBudget budget = budgets.get(userId);
+        if (budget == null || !budget.day.equals(today)) {
+            budget = new DailyBudget(today);
+            budgets.put(userId, budget);
+        } else if (now - budget.loadedAt < refreshMillis) {
+            return budget;
+        }
+        // 读取失败时沿用已有数值，不阻塞生成
+        try {
+            long version = budget.version.get();
+            if (budget.flushing.get() > 0) {
+                return budget;
+            }
+            long persisted = tokenUsageRepository.sumTokens(userId, today);
+            synchronized (budget) {
+                // 读取期间有本节点的写入，结果可能与未写入的增量重复，留到下次刷新
+                if (budget.flushing.get() == 0 && budget.version.get() == version) {
+                    budget.persisted.set(persisted);
+                    budget.loadedAt = now;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取用户当日用量失败，用户ID: {}，原因: {}", userId, e.getMessage());
+        }
+        return budget;
+    }
+
+    /**
+     * 取出各分桶的增量并批量写入数据库
+     */
+    synchronized void flush() {
+        LocalDate today = LocalDate.now();
+        List<Drained> drained = new ArrayList<>();
+        for (Map.Entry<UsageKey, Counters> entry : pending.entrySet()) {
+            Counters counters = entry.getValue();
+            long promptTokens = counters.promptTokens.sumThenReset();
+            long completionTokens = counters.completionTokens.sumThenReset();
+            long requests = counters.requests.sumThenReset();
+            long cacheHitTokens = counters.cacheHitTokens.sumThenReset();
+            long cacheMissTokens = counters.cacheMissTokens.sumThenReset();
+            if (promptTokens == 0 && completionTokens == 0 && requests == 0 && cacheHitTokens == 0
+                    && cacheMissTokens == 0) {
+                // 前一天的分桶不会再有新的用量
+                if (entry.getKey().day.isBefore(today)) {
+                    pending.remove(entry.getKey(), counters);
+                }
+                continue;
+            }
+            drained.add(new Drained(entry.getKey(), counters, promptTokens, completionTokens, requests,
+                    cacheHitTokens, cacheMissTokens));
+        }
+        budgets.values().removeIf(budget -> budget.day.isBefore(today));
+        for (int from = 0; from < drained.size(); from += batchSize) {
+            List<Drained> batch = drained.subList(from, Math.min(drained.size(), from + batchSize));
+            List<Object[]> rows = new ArrayList<>(batch.size());
+            // 写入期间暂停刷新对应用户的库中用量，写入结束时用同一个对象恢复
+            List<DailyBudget> held = new ArrayList<>(batch.size());
+            for (Drained row : batch) {
+                DailyBudget budget = budgets.get(row.key.userId);
+                if (budget != null) {
+                    budget.flushing.incrementAndGet();
+                }
+                held.add(budget);
+                rows.add(new Object[] { row.key.userId, row.key.platform, Date.valueOf(row.key.day),
+                        row.promptTokens, row.completionTokens, row.requests, row.cacheHitTokens,
+                        row.cacheMissTokens });
+            }
+            boolean written;
+            try {
+                jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+                written = true;
+                meterRegistry.counter("ai.usage.flush", "result", "success").increment();
+            } catch (Exception e) {
+                written = false;
+                log.warn("写入 token 用量失败，{} 条将在下次重试，原因: {}", batch.size(), e.getMessage());
+                meterRegistry.counter("ai.usage.flush", "result", "failed").increment();
+                for (Drained row : batch) {
+                    row.counters.promptTokens.add(row.promptTokens);
+                    row.counters.completionTokens.add(row.completionTokens);
+                    row.counters.requests.add(row.requests);
+                    row.counters.cacheHitTokens.add(row.cacheHitTokens);
+                    row.counters.cacheMissTokens.add(row.cacheMissTokens);
+                }
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                DailyBudget budget = held.get(i);
+                if (budget == null) {
+                    continue;
+                }
+                Drained row = batch.get(i);
+                synchronized (budget) {
+                    if (written && budget.day.equals(row.key.day)) {
+                        long tokens = row.promptTokens + row.completionTokens;
+                        budget.persisted.addAndGet(tokens);
+                        budget.pending.add(-tokens);
+                    }
+                    budget.flushing.decrementAndGet();
+                    budget.version.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flusher.shutdown();
+        if (enabled) {
+            flush();
+        }
+    }
+
+    /**
+     * 用户当日的额度使用情况
+     */
+    static final class DailyBudget {
+        private final LocalDate day;
+        // 库中已有的用量
+        private final AtomicLong persisted = new AtomicLong();
+        // 已记录但尚未入库的用量
+        private final LongAdder pending = new LongAdder();
+        // 进行中的生成预占的用量
+        final LongAdder inflight = new LongAdder();
+        // 本节点正在写入的分桶数，以及已完成的写入次数
+        private final AtomicInteger flushing = new AtomicInteger();
+        private final AtomicLong version = new AtomicLong();
+        private volatile long loadedAt;
+
+        private DailyBudget(LocalDate day) {
+            this.day = day;
+        }
+
+        long used() {
+            return persisted.get() + pending.sum() + inflight.sum();
+        }
+    }
+
+    private static final class Counters {
+        private final LongAdder promptTokens = new LongAdder();
+        private final LongAdder completionTokens = new LongAdder();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder cacheHitTokens = new LongAdder();
+        private final LongAdder cacheMissTokens = new LongAdder();
+    }
+
+    private static final class Drained {
+        private final UsageKey key;
+        private final Counters counters;
+        private final long promptTokens;
+        private final long completionTokens;
+        private final long requests;
+        private final long cacheHitTokens;
+        private final long cacheMissTokens;
+
+        private Drained(UsageKey key, Counters counters, long promptTokens, long completionTokens, long requests,
+                long cacheHitTokens, long cacheMissTokens) {
+            this.key = key;
+            this.counters = counters;
+            this.promptTokens = promptTokens;
+            this.completionTokens = completionTokens;
+            this.requests = requests;
+            this.cacheHitTokens = cacheHitTokens;
+            this.cacheMissTokens = cacheMissTokens;
+        }
+    }
+
+    private static final class UsageKey {
+        private final Long userId;
+        private final String platform;
+        private final LocalDate day;
+
+        private UsageKey(Long userId, String platform, LocalDate day) {
+            this.userId = userId;
+            this.platform = platform;
+            this.day = day;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof UsageKey)) {
+                return false;
+            }
+            UsageKey other = (UsageKey) o;
+            return userId.equals(other.userId) && platform.equals(other.platform) && day.equals(other.day);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, platform, day);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.kobeai.hub.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ID 生成器单元测试：递增、序列号用完时进位、时钟回拨、节点号与租约
+ */
+class SnowflakeIdGeneratorTest {
+
+    private static final long NOW = SnowflakeIdGenerator.EPOCH + 1000000L;
+
+    @Test
+    void testIdsIncreaseWithinAndAcrossMilliseconds() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3, 0, clock::get);
+        Set<Long> ids = new HashSet<>();
+        long previous = -1;
+        // 超过单毫秒的序列号上限，不允许等待时钟时借用下一毫秒
+        for (int i = 0; i < 1000; i++) {
+            if (i % 300 == 0) {
+                clock.addAndGet(1);
+            }
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            assertTrue(id < (1L << 53));
+            assertTrue(ids.add(id));
+            previous = id;
+        }
+    }
+
+    @Test
+    void testLargeClockRollbackKeepsIdsIncreasing() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 5, clock::get);
+        long before = generator.nextId();
+        clock.addAndGet(-10000);
+        long during = generator.nextId();
+        assertTrue(during > before);
+        clock.set(NOW + 1);
+        assertTrue(generator.nextId() > during);
+    }
+
+    @Test
+    void testNodeIdIsEncoded() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID, 5, () -> NOW);
+        long id = generator.nextId();
+        assertEquals(SnowflakeIdGenerator.MAX_NODE_ID, (id >> SnowflakeIdGenerator.SEQUENCE_BITS)
+                & SnowflakeIdGenerator.MAX_NODE_ID);
+        generator.setNodeId(2);
+        assertEquals(2, (generator.nextId() >> SnowflakeIdGenerator.SEQUENCE_BITS)
+                & SnowflakeIdGenerator.MAX_NODE_ID);
+        assertThrows(IllegalArgumentException.class, () -> generator.setNodeId(SnowflakeIdGenerator.MAX_NODE_ID + 1));
+    }
+
+    @Test
+    void testNoIdsWithoutValidLease() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(4, 0, clock::get);
+        generator.lease(4, System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        long before = generator.nextId();
+
+        generator.lease(4, System.nanoTime() - 1);
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        generator.release();
+        assertEquals(-1, generator.getNodeId());
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        generator.lease(6, System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        long after = generator.nextId();
+        assertTrue(after > before);
+        assertEquals(6, (after >> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_NODE_ID);
+    }
+}
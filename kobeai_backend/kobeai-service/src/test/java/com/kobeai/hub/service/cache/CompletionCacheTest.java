@@ -0,0 +1,71 @@
+package com.kobeai.hub.service.cache;
+
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.service.stream.ChatEventStream;
+import com.kobeai.hub.service.stream.SseCoalescerFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * 回复缓存回放单元测试：一个客户端写出阻塞时，其他回放不受影响
+ */
+class CompletionCacheTest {
+
+    private CompletionCache cache;
+    private SseCoalescerFactory coalescerFactory;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        cache = new CompletionCache(mock(StringRedisTemplate.class), new SimpleMeterRegistry(), 2, 16);
+        ReflectionTestUtils.setField(cache, "replayChunkChars", 4);
+        ReflectionTestUtils.setField(cache, "replayIntervalMillis", 5L);
+        // 每块都立即写出
+        coalescerFactory = new SseCoalescerFactory(new MockEnvironment()
+                .withProperty("ai.stream.coalesce.max-chars", "1"), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        cache.close();
+        coalescerFactory.close();
+    }
+
+    @Test
+    void testBlockedClientDoesNotDelayOtherReplays() throws Exception {
+        CountDownLatch blockedSending = new CountDownLatch(1);
+        ChatEventStream blocked = mock(ChatEventStream.class);
+        doAnswer(invocation -> {
+            blockedSending.countDown();
+            release.await();
+            return null;
+        }).when(blocked).send(anyList());
+        ChatEventStream healthy = mock(ChatEventStream.class);
+
+        CompletableFuture<Void> slow = cache.replay("阻塞的客户端收到的回复",
+                coalescerFactory.create(Platform.DEEPSEEK, blocked, null), () -> false);
+        assertTrue(blockedSending.await(5, TimeUnit.SECONDS));
+
+        String content = "正常客户端收到的完整回复内容";
+        cache.replay(content, coalescerFactory.create(Platform.DEEPSEEK, healthy, null), () -> false)
+                .get(2, TimeUnit.SECONDS);
+
+        // 按 4 个字符一块写出
+        verify(healthy, times((content.length() + 3) / 4)).send(anyList());
+        assertFalse(slow.isDone());
+    }
+}
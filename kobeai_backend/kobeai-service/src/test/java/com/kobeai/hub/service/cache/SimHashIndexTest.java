@@ -0,0 +1,45 @@
+package com.kobeai.hub.service.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimHashIndexTest {
+
+    @Test
+    void testNearDuplicatesMatchInChineseAndEnglish() {
+        SimHashIndex index = new SimHashIndex(0.85, 100);
+        index.put(1L, "请介绍一下如何在 Spring Boot 项目中配置 Redis 连接池", "zh");
+        index.put(1L, "How do I configure a Redis connection pool in a Spring Boot project?", "en");
+
+        assertEquals("zh", index.get(1L, "请介绍一下如何在Spring Boot项目中配置Redis连接池？"));
+        assertEquals("en", index.get(1L, "how do I configure a redis connection pool in a spring boot project"));
+        assertNull(index.get(1L, "请写一首关于秋天的七言绝句"));
+        // 不同作用域（模型或系统提示不同）互不命中
+        assertNull(index.get(2L, "请介绍一下如何在 Spring Boot 项目中配置 Redis 连接池"));
+    }
+
+    @Test
+    void testNumbersMustMatch() {
+        SimHashIndex index = new SimHashIndex(0.85, 100);
+        index.put(1L, "计算 123 乘以 456 的结果是多少", "56088");
+
+        assertEquals("56088", index.get(1L, "计算123乘以456的结果是多少？"));
+        assertNull(index.get(1L, "计算 123 乘以 457 的结果是多少"));
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        SimHashIndex index = new SimHashIndex(0.9, 2);
+        index.put(1L, "what is the capital city of france", "paris");
+        index.put(1L, "explain the theory of general relativity", "relativity");
+        // 访问后 france 成为最近使用，插入第三条时淘汰 relativity
+        assertEquals("paris", index.get(1L, "what is the capital city of france"));
+        index.put(1L, "list the planets of the solar system", "planets");
+
+        assertEquals(2, index.size());
+        assertEquals("paris", index.get(1L, "what is the capital city of france"));
+        assertNull(index.get(1L, "explain the theory of general relativity"));
+        assertEquals("planets", index.get(1L, "list the planets of the solar system"));
+    }
+}
@@ -0,0 +1,165 @@
+package com.kobeai.hub.service.context;
+
+import com.kobeai.hub.model.Conversation;
+import com.kobeai.hub.model.Message;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.service.compression.CompressionStrategy;
+import com.kobeai.hub.service.tokenizer.Tokenizer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 上下文组装单元测试（测试中 1 个字符按 1 个 token 计）
+ */
+class ContextBuilderTest {
+
+    private CompressionStrategy compressionStrategy;
+    private ContextBuilder contextBuilder;
+
+    @BeforeEach
+    void setUp() {
+        Tokenizer tokenizer = mock(Tokenizer.class);
+        when(tokenizer.count(any(), anyString())).thenAnswer(i -> ((String) i.getArgument(1)).length());
+        compressionStrategy = mock(CompressionStrategy.class);
+        when(compressionStrategy.isApplicable(anyString())).thenReturn(true);
+        when(compressionStrategy.compress(anyString(), anyInt())).thenReturn("摘要");
+
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai.context.budget-tokens", "100")
+                .withProperty("ai.context.compress-threshold-tokens", "30")
+                .withProperty("ai.context.deepseek.budget-tokens", "11")
+                .withProperty("ai.context.claude.budget-tokens", "20");
+        contextBuilder = new ContextBuilder(environment, tokenizer,
+                Collections.singletonList(compressionStrategy));
+    }
+
+    @Test
+    void testNewestTurnsArePackedInChronologicalOrder() {
+        List<Message> history = Arrays.asList(
+                message(4L, Message.Role.ASSISTANT, "回答二"),
+                message(3L, Message.Role.USER, "问题二"),
+                message(2L, Message.Role.ASSISTANT, "回答一"),
+                message(1L, Message.Role.USER, "问题一"));
+
+        // 平台预算 11：系统提示 2 + 本次消息 3，历史只能再装下最近两条
+        List<Map<String, String>> messages = contextBuilder.build(Platform.DEEPSEEK, "系统", history, "问题三");
+
+        assertEquals(Arrays.asList("system", "user", "assistant", "user"), roles(messages));
+        assertEquals("问题二", messages.get(1).get("content"));
+        assertEquals("回答二", messages.get(2).get("content"));
+        assertEquals("问题三", messages.get(3).get("content"));
+    }
+
+    @Test
+    void testLongAssistantTurnIsCompressedOnce() {
+        Message longReply = message(2L, Message.Role.ASSISTANT, "很长的回答".repeat(10));
+        List<Message> history = Arrays.asList(longReply, message(1L, Message.Role.USER, "问题一"));
+
+        List<Map<String, String>> first = contextBuilder.build(Platform.DOUBAO, "系统", history, "问题二");
+        contextBuilder.build(Platform.DOUBAO, "系统", history, "问题三");
+
+        assertEquals("摘要", first.get(2).get("content"));
+        verify(compressionStrategy, times(1)).compress(anyString(), anyInt());
+    }
+
+    @Test
+    void testFailedTurnsAreSkipped() {
+        Message failed = message(2L, Message.Role.ASSISTANT, "生成失败");
+        failed.setStatus(Message.Status.ERROR);
+        List<Message> history = Arrays.asList(failed, message(1L, Message.Role.USER, "问题一"));
+
+        List<Map<String, String>> messages = contextBuilder.build(Platform.DOUBAO, "系统", history, "问题二");
+
+        assertEquals(Arrays.asList("system", "user", "user"), roles(messages));
+    }
+
+    @Test
+    void testStoredTokenCountIsUsedWithoutRetokenizing() {
+        Message counted = message(2L, Message.Role.USER, "问题一");
+        counted.setTokenCount(99);
+        List<Message> history = Arrays.asList(counted, message(1L, Message.Role.ASSISTANT, "回答零"));
+
+        // 按保存的 99 个 token 计，超出剩余预算，不再向前装填
+        List<Map<String, String>> messages = contextBuilder.build(Platform.DOUBAO, "系统", history, "问题二");
+
+        assertEquals(Arrays.asList("system", "user"), roles(messages));
+    }
+
+    @Test
+    void testSummaryReplacesSummarizedTurns() {
+        Conversation conversation = new Conversation();
+        conversation.setSummary("用户在问配置");
+        conversation.setSummaryTokens(4);
+        conversation.setSummaryUntilMessageId(2L);
+        List<Message> recent = Arrays.asList(
+                message(4L, Message.Role.ASSISTANT, "回答二"),
+                message(3L, Message.Role.USER, "问题二"),
+                message(2L, Message.Role.ASSISTANT, "回答一"),
+                message(1L, Message.Role.USER, "问题一"));
+
+        List<Map<String, String>> messages = contextBuilder.build(Platform.DOUBAO, "系统",
+                ConversationHistory.of(conversation, recent), "问题三");
+
+        assertEquals(Arrays.asList("system", "system", "user", "assistant", "user"), roles(messages));
+        assertEquals(ContextBuilder.SUMMARY_PREFIX + "用户在问配置", messages.get(1).get("content"));
+        assertEquals("问题二", messages.get(2).get("content"));
+    }
+
+    @Test
+    void testHistoryStartStaysFixedAcrossTurns() {
+        Conversation conversation = new Conversation();
+        conversation.setId(1L);
+        List<Message> turn2 = Arrays.asList(
+                message(6L, Message.Role.ASSISTANT, "回答三"),
+                message(5L, Message.Role.USER, "问题三"),
+                message(4L, Message.Role.ASSISTANT, "回答二"),
+                message(3L, Message.Role.USER, "问题二"),
+                message(2L, Message.Role.ASSISTANT, "回答一"),
+                message(1L, Message.Role.USER, "问题一"));
+        List<Message> turn3 = Arrays.asList(
+                message(8L, Message.Role.ASSISTANT, "回答四"),
+                message(7L, Message.Role.USER, "问题四"),
+                message(6L, Message.Role.ASSISTANT, "回答三"),
+                message(5L, Message.Role.USER, "问题三"),
+                message(4L, Message.Role.ASSISTANT, "回答二"));
+
+        // 平台预算 20，历史可用 20 - 2 - 2 - 3 = 13：第一轮全部装下；
+        // 第二轮放不下时起点后移到一半预算以内，第三轮仍从同一条消息开始
+        contextBuilder.build(Platform.CLAUDE, "系统", "指令", ConversationHistory.of(conversation,
+                turn2.subList(2, 6)), "问题三");
+        List<Map<String, String>> second = contextBuilder.build(Platform.CLAUDE, "系统", "指令",
+                ConversationHistory.of(conversation, turn2), "问题四");
+        List<Map<String, String>> third = contextBuilder.build(Platform.CLAUDE, "系统", "指令",
+                ConversationHistory.of(conversation, turn3), "问题五");
+
+        assertEquals(Arrays.asList("system", "user", "assistant", "system", "user"), roles(second));
+        assertEquals(second.subList(0, 3), third.subList(0, 3));
+        assertEquals(Arrays.asList("system", "user", "assistant", "user", "assistant", "system", "user"),
+                roles(third));
+        assertEquals("指令", third.get(5).get("content"));
+    }
+
+    private static Message message(Long id, Message.Role role, String content) {
+        Message message = new Message();
+        message.setId(id);
+        message.setRole(role);
+        message.setContent(content);
+        return message;
+    }
+
+    private static List<String> roles(List<Map<String, String>> messages) {
+        return messages.stream().map(message -> message.get("role")).toList();
+    }
+}
@@ -0,0 +1,91 @@
+package com.kobeai.hub.service.context;
+
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.model.Conversation;
+import com.kobeai.hub.model.Message;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.repository.ConversationRepository;
+import com.kobeai.hub.repository.MessageRepository;
+import com.kobeai.hub.service.generation.GenerationScheduler;
+import com.kobeai.hub.service.generation.GenerationTask;
+import com.kobeai.hub.service.provider.ProviderRouter;
+import com.kobeai.hub.service.provider.RoutedCall;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 会话摘要单元测试：生成中的回复不并入摘要
+ */
+class ConversationSummarizerTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStreamingReplyIsNotSummarized() {
+        ConversationRepository conversationRepository = mock(ConversationRepository.class);
+        MessageRepository messageRepository = mock(MessageRepository.class);
+        ProviderRouter providerRouter = mock(ProviderRouter.class);
+        GenerationScheduler scheduler = mock(GenerationScheduler.class);
+        doAnswer(invocation -> ((GenerationTask) invocation.getArgument(0)).start())
+                .when(scheduler).submitBackground(any(), any());
+        when(providerRouter.open(anyList(), anyList(), anyBoolean(), any())).thenReturn(mock(RoutedCall.class));
+
+        Conversation conversation = new Conversation();
+        conversation.setId(1L);
+        when(conversationRepository.findById(1L)).thenReturn(Optional.of(conversation));
+        Message streaming = message(4L, Message.Role.ASSISTANT, "生成到一半的回答");
+        streaming.setStatus(Message.Status.STREAMING);
+        when(messageRepository.findMessagesAfter(1L, 0L)).thenReturn(Arrays.asList(
+                message(1L, Message.Role.USER, "问题一"),
+                message(2L, Message.Role.ASSISTANT, "回答一"),
+                message(3L, Message.Role.USER, "问题二"),
+                streaming));
+
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai.context.summary.trigger-tokens", "25")
+                .withProperty("ai.context.summary.keep-tokens", "0");
+        ConversationSummarizer summarizer = new ConversationSummarizer(conversationRepository, messageRepository,
+                providerRouter, scheduler, null, environment, new SimpleMeterRegistry());
+        AIPlatform endpoint = new AIPlatform();
+        endpoint.setType(Platform.DEEPSEEK);
+
+        // 生成中的回复计入时超过触发阈值，跳过后不足阈值
+        summarizer.onTurnCompleted(1L, endpoint);
+        verify(providerRouter, never()).open(anyList(), anyList(), anyBoolean(), any());
+
+        environment.setProperty("ai.context.summary.trigger-tokens", "10");
+        summarizer = new ConversationSummarizer(conversationRepository, messageRepository, providerRouter,
+                scheduler, null, environment, new SimpleMeterRegistry());
+        summarizer.onTurnCompleted(1L, endpoint);
+
+        ArgumentCaptor<List<Map<String, String>>> messages = ArgumentCaptor.forClass(List.class);
+        verify(providerRouter).open(eq(List.of(endpoint)), messages.capture(), eq(false), any());
+        String prompt = messages.getValue().get(1).get("content");
+        assertTrue(prompt.contains("回答一"));
+        assertFalse(prompt.contains("问题二"));
+        assertFalse(prompt.contains("生成到一半的回答"));
+    }
+
+    private static Message message(Long id, Message.Role role, String content) {
+        Message message = new Message();
+        message.setId(id);
+        message.setRole(role);
+        message.setContent(content);
+        message.setTokenCount(content.length() * 2);
+        message.setStatus(Message.Status.COMPLETED);
+        return message;
+    }
+}
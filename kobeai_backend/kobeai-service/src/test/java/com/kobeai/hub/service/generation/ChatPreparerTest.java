@@ -0,0 +1,126 @@
+package com.kobeai.hub.service.generation;
+
+import com.kobeai.hub.model.Conversation;
+import com.kobeai.hub.model.Message;
+import com.kobeai.hub.repository.ConversationRepository;
+import com.kobeai.hub.repository.MessageRepository;
+import com.kobeai.hub.service.PromptOptimizationService;
+import com.kobeai.hub.service.context.ContextBuilder;
+import com.kobeai.hub.service.provider.ChatProviderRegistry;
+import com.kobeai.hub.service.provider.ProviderRouter;
+import com.kobeai.hub.service.stream.ProviderStreamClient;
+import com.kobeai.hub.service.tokenizer.Tokenizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 预热单元测试：发送已取用后才完成的预热不留下旧历史
+ */
+class ChatPreparerTest {
+
+    private static final Long USER_ID = 1L;
+    private static final Long CONVERSATION_ID = 10L;
+
+    private MessageRepository messageRepository;
+    private PromptOptimizationService promptOptimizationService;
+    private ChatPreparer preparer;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        ConversationRepository conversationRepository = mock(ConversationRepository.class);
+        Conversation conversation = new Conversation();
+        conversation.setId(CONVERSATION_ID);
+        when(conversationRepository.findByIdAndUserId(CONVERSATION_ID, USER_ID)).thenReturn(Optional.of(conversation));
+        messageRepository = mock(MessageRepository.class);
+        Message reply = new Message();
+        reply.setRole(Message.Role.ASSISTANT);
+        reply.setContent("上一轮的回答");
+        reply.setTokenCount(6);
+        when(messageRepository.findRecentMessages(eq(CONVERSATION_ID), anyInt())).thenReturn(List.of(reply));
+        promptOptimizationService = mock(PromptOptimizationService.class);
+
+        // 单线程执行，后提交的预热在前一个完成后才开始
+        MockEnvironment environment = new MockEnvironment().withProperty("ai.prepare.threads", "1");
+        preparer = new ChatPreparer(conversationRepository, messageRepository, mock(ChatProviderRegistry.class),
+                mock(ProviderRouter.class), mock(ProviderStreamClient.class), promptOptimizationService,
+                mock(ContextBuilder.class), mock(Tokenizer.class), environment, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        preparer.close();
+    }
+
+    @Test
+    void testPreparedEntryIsUsedOnce() {
+        preparer.prepare(USER_ID, CONVERSATION_ID, null);
+        awaitPrepares(1);
+
+        ChatPreparer.Prepared entry = preparer.take(USER_ID, CONVERSATION_ID);
+        assertNotNull(entry);
+        assertEquals(1, entry.getRecentMessages().size());
+        assertNull(preparer.take(USER_ID, CONVERSATION_ID));
+    }
+
+    @Test
+    void testPrepareFinishingAfterTakeIsDiscarded() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            reading.countDown();
+            release.await();
+            return null;
+        }).when(promptOptimizationService).preloadTemplates(anyString());
+
+        preparer.prepare(USER_ID, CONVERSATION_ID, null);
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        // 发送请求在预热完成前到达，按正常流程读取并写入本轮
+        assertNull(preparer.take(USER_ID, CONVERSATION_ID));
+        release.countDown();
+
+        // 单线程池中排在其后的任务执行时，前一个预热已结束
+        preparer.prepare(USER_ID, null, null);
+        awaitPrepares(2);
+        verify(messageRepository).findRecentMessages(eq(CONVERSATION_ID), anyInt());
+        assertNull(preparer.take(USER_ID, CONVERSATION_ID));
+    }
+
+    @Test
+    void testInvalidateDiscardsInFlightPrepare() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            reading.countDown();
+            release.await();
+            return null;
+        }).when(promptOptimizationService).preloadTemplates(anyString());
+
+        preparer.prepare(USER_ID, CONVERSATION_ID, null);
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        // 本轮已写入
+        preparer.invalidate(USER_ID);
+        release.countDown();
+
+        preparer.prepare(USER_ID, null, null);
+        awaitPrepares(2);
+        assertNull(preparer.take(USER_ID, CONVERSATION_ID));
+    }
+
+    private void awaitPrepares(int count) {
+        verify(promptOptimizationService, timeout(5000).times(count)).preloadTemplates("chat");
+    }
+}
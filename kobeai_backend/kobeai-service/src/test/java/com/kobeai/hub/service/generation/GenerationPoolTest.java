@@ -0,0 +1,110 @@
+package com.kobeai.hub.service.generation;
+
+import com.kobeai.hub.constant.UserRole;
+import com.kobeai.hub.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 生成任务池单元测试：按角色加权排队、单用户并发上限与排队位置
+ */
+class GenerationPoolTest {
+
+    private ScheduledExecutorService timer;
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, CompletableFuture<Void>> running = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    void testHigherWeightRoleIsAdmittedFirst() {
+        GenerationPool pool = pool(1, 0);
+        pool.submit(admission(1L, UserRole.NORMAL, null), task("blocker"), reason -> fail(reason));
+        pool.submit(admission(2L, UserRole.NORMAL, null), task("normal-1"), reason -> fail(reason));
+        pool.submit(admission(3L, UserRole.NORMAL, null), task("normal-2"), reason -> fail(reason));
+        pool.submit(admission(4L, UserRole.SVIP, null), task("svip"), reason -> fail(reason));
+
+        finish("blocker");
+        finish("svip");
+        finish("normal-1");
+
+        assertEquals(Arrays.asList("blocker", "svip", "normal-1", "normal-2"), started);
+    }
+
+    @Test
+    void testPerUserLimitLeavesSlotsForOtherUsers() {
+        GenerationPool pool = pool(2, 1);
+        pool.submit(admission(1L, UserRole.SVIP, null), task("a-1"), reason -> fail(reason));
+        pool.submit(admission(1L, UserRole.SVIP, null), task("a-2"), reason -> fail(reason));
+        pool.submit(admission(2L, UserRole.NORMAL, null), task("b-1"), reason -> fail(reason));
+
+        assertEquals(Arrays.asList("a-1", "b-1"), started);
+        assertEquals(1, pool.getQueued());
+
+        finish("a-1");
+        assertEquals(Arrays.asList("a-1", "b-1", "a-2"), started);
+    }
+
+    @Test
+    void testQueuedPositionIsReported() {
+        GenerationPool pool = pool(1, 0);
+        List<Integer> first = new ArrayList<>();
+        List<Integer> second = new ArrayList<>();
+        pool.submit(admission(1L, UserRole.NORMAL, null), task("blocker"), reason -> fail(reason));
+        pool.submit(admission(2L, UserRole.NORMAL, first::add), task("first"), reason -> fail(reason));
+        pool.submit(admission(3L, UserRole.NORMAL, second::add), task("second"), reason -> fail(reason));
+
+        assertEquals(Collections.singletonList(1), first);
+        assertEquals(Collections.singletonList(2), second);
+    }
+
+    private GenerationPool pool(int maxConcurrency, int maxPerUser) {
+        Map<UserRole, Integer> weights = Map.of(UserRole.NORMAL, 1, UserRole.VIP, 2, UserRole.SVIP, 4,
+                UserRole.ADMIN, 4);
+        return new GenerationPool("test", maxConcurrency, 16, 60000, weights, maxPerUser, 0, Runnable::run,
+                timer, new SimpleMeterRegistry());
+    }
+
+    private GenerationTask task(String name) {
+        return () -> {
+            started.add(name);
+            CompletableFuture<Void> finished = new CompletableFuture<>();
+            running.put(name, finished);
+            return finished;
+        };
+    }
+
+    private void finish(String name) {
+        running.get(name).complete(null);
+    }
+
+    private static Admission admission(Long userId, UserRole role, IntConsumer onQueued) {
+        User user = new User();
+        user.setId(userId);
+        user.setUserRole(role);
+        return Admission.of(user, onQueued);
+    }
+}
@@ -0,0 +1,85 @@
+package com.kobeai.hub.service.generation;
+
+import com.kobeai.hub.model.Platform;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 前置步骤并行执行测试：互不依赖的阶段同时执行，耗时分解每个请求只上报一次
+ */
+class PreflightExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private PreflightExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        executor = new PreflightExecutor(new MockEnvironment()
+                .withProperty("ai.generation.preflight-threads", "4"), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void testIndependentStagesRunConcurrently() throws Exception {
+        PreflightTrace trace = new PreflightTrace();
+        // 两个阶段互相等待对方开始，串行执行时会超时
+        CountDownLatch started = new CountDownLatch(2);
+        CompletableFuture<Boolean> history = executor.supply(trace, "history", () -> meet(started));
+        CompletableFuture<Boolean> endpoint = executor.supply(trace, "endpoint", () -> meet(started));
+
+        assertTrue(history.get(5, TimeUnit.SECONDS));
+        assertTrue(endpoint.get(5, TimeUnit.SECONDS));
+        assertEquals(2, trace.stages().size());
+        assertTrue(trace.stages().containsKey("history"));
+        assertTrue(trace.stages().containsKey("endpoint"));
+    }
+
+    @Test
+    void testAwaitRethrowsStageFailure() {
+        PreflightTrace trace = new PreflightTrace();
+        CompletableFuture<Object> failed = executor.supply(trace, "template", () -> {
+            throw new IllegalArgumentException("模板不存在");
+        });
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> PreflightExecutor.await(failed));
+        assertEquals("模板不存在", error.getMessage());
+        assertTrue(trace.stages().containsKey("template"));
+    }
+
+    @Test
+    void testReportIsRecordedOncePerRequest() {
+        PreflightTrace trace = new PreflightTrace();
+        trace.time("queue", () -> null);
+
+        executor.report(trace, Platform.DEEPSEEK);
+        executor.report(trace, Platform.DEEPSEEK);
+
+        assertEquals(1, meterRegistry.get("ai.request.ttft").tag("platform", "deepseek").timer().count());
+        assertEquals(1, meterRegistry.get("ai.preflight.stage").tag("stage", "queue").timer().count());
+    }
+
+    private static boolean meet(CountDownLatch started) {
+        started.countDown();
+        try {
+            return started.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
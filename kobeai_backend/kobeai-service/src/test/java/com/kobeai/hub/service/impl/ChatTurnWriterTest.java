@@ -0,0 +1,131 @@
+package com.kobeai.hub.service.impl;
+
+import com.kobeai.hub.id.SnowflakeIdGenerator;
+import com.kobeai.hub.model.Conversation;
+import com.kobeai.hub.model.Message;
+import com.kobeai.hub.repository.ConversationRepository;
+import com.kobeai.hub.repository.MessageRepository;
+import com.kobeai.hub.service.id.NodeIdLease;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对话轮次写入测试：两条消息一个批次插入，会话统计一条 UPDATE，全部在同一事务内
+ */
+class ChatTurnWriterTest {
+
+    private static final int NODE_ID = 3;
+
+    private JdbcTemplate jdbcTemplate;
+    private MessageRepository messageRepository;
+    private ConversationRepository conversationRepository;
+    private ChatTurnWriter writer;
+    private final AtomicBoolean inTransaction = new AtomicBoolean();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        messageRepository = mock(MessageRepository.class);
+        conversationRepository = mock(ConversationRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            inTransaction.set(true);
+            try {
+                invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            } finally {
+                inTransaction.set(false);
+            }
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        NodeIdLease nodeIdLease = mock(NodeIdLease.class);
+        when(nodeIdLease.getGenerator()).thenReturn(new SnowflakeIdGenerator(NODE_ID, 5));
+        writer = new ChatTurnWriter(jdbcTemplate, transactionTemplate, messageRepository, conversationRepository,
+                nodeIdLease);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testInsertTurnBatchesMessagesAndUpdatesConversationInOneTransaction() {
+        doAnswer(invocation -> {
+            assertTrue(inTransaction.get(), "消息插入不在事务内");
+            return new int[] { 1, 1 };
+        }).when(jdbcTemplate).batchUpdate(anyString(), anyList());
+        doAnswer(invocation -> {
+            assertTrue(inTransaction.get(), "会话统计更新不在事务内");
+            return 1;
+        }).when(jdbcTemplate).update(anyString(), any(Object[].class));
+        Conversation conversation = new Conversation();
+        conversation.setId(42L);
+        Message userMessage = message(Message.Role.USER, "你好", 5);
+        Message aiMessage = message(Message.Role.ASSISTANT, "", null);
+        aiMessage.setStatus(Message.Status.STREAMING);
+
+        writer.insertTurn(conversation, userMessage, aiMessage, "你好");
+
+        assertTrue(aiMessage.getId() > userMessage.getId());
+        // ID 来自注入的生成器
+        assertEquals(NODE_ID,
+                (userMessage.getId() >> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_NODE_ID);
+        assertSame(conversation, userMessage.getConversation());
+        assertSame(conversation, aiMessage.getConversation());
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("INSERT INTO messages"), rows.capture());
+        assertEquals(2, rows.getValue().size());
+        assertEquals(userMessage.getId(), rows.getValue().get(0)[0]);
+        assertEquals(42L, rows.getValue().get(0)[1]);
+        assertEquals("USER", rows.getValue().get(0)[3]);
+        assertEquals(aiMessage.getId(), rows.getValue().get(1)[0]);
+        assertEquals("STREAMING", rows.getValue().get(1)[5]);
+        // 标题、新增消息数、用户消息的 token 数、会话ID
+        verify(jdbcTemplate, times(1)).update(startsWith("UPDATE conversations"), eq("你好"), eq(2), eq(5L), eq(42L));
+    }
+
+    @Test
+    void testCompleteReplyAddsTokensAndFailReplyDoesNot() {
+        Conversation conversation = new Conversation();
+        conversation.setId(42L);
+        Message aiMessage = message(Message.Role.ASSISTANT, "回复", 12);
+        aiMessage.setId(7L);
+        aiMessage.setConversation(conversation);
+        doAnswer(invocation -> {
+            assertTrue(inTransaction.get(), "累加会话统计不在事务内");
+            return 1;
+        }).when(conversationRepository).addTokens(anyLong(), anyLong(), anyLong());
+
+        writer.completeReply(aiMessage, 30);
+
+        verify(messageRepository).updateReply(7L, "回复", Message.Status.COMPLETED, 12, null, null);
+        verify(conversationRepository).addTokens(42L, 12L, 30L);
+
+        aiMessage.setStatus(Message.Status.ERROR);
+        writer.failReply(aiMessage);
+
+        verify(messageRepository).updateReply(7L, "回复", Message.Status.ERROR, 12, null, null);
+        verifyNoMoreInteractions(conversationRepository);
+    }
+
+    private static Message message(Message.Role role, String content, Integer tokenCount) {
+        Message message = new Message();
+        message.setRole(role);
+        message.setSenderId(1L);
+        message.setContent(content);
+        message.setTokenCount(tokenCount);
+        message.setCreatedAt(LocalDateTime.now());
+        return message;
+    }
+}
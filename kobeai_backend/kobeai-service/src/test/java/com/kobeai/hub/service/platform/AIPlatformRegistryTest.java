@@ -0,0 +1,91 @@
+package com.kobeai.hub.service.platform;
+
+import com.kobeai.hub.constant.RedisKeyConstant;
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.repository.AIPlatformRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 平台配置内存索引测试：用户配置优先、回退系统配置，变更后重新加载并通知其他节点
+ */
+class AIPlatformRegistryTest {
+
+    private AIPlatformRepository platformRepository;
+    private StringRedisTemplate redisTemplate;
+    private AIPlatformRegistry registry;
+
+    private final AIPlatform system = platform(Platform.DEEPSEEK, 0L);
+    private final AIPlatform custom = platform(Platform.DEEPSEEK, 7L);
+
+    @BeforeEach
+    void setUp() {
+        platformRepository = mock(AIPlatformRepository.class);
+        redisTemplate = mock(StringRedisTemplate.class);
+        when(platformRepository.findAll()).thenReturn(Arrays.asList(system, custom));
+        registry = new AIPlatformRegistry(platformRepository, redisTemplate,
+                mock(RedisMessageListenerContainer.class));
+        registry.load();
+    }
+
+    @Test
+    void testResolvePrefersUserPlatformWithoutQueryingDatabase() {
+        assertSame(custom, registry.resolve(Platform.DEEPSEEK, 7L).orElseThrow());
+        assertSame(system, registry.resolve(Platform.DEEPSEEK, 8L).orElseThrow());
+        assertSame(system, registry.resolve(Platform.DEEPSEEK, null).orElseThrow());
+        assertFalse(registry.resolve(Platform.DOUBAO, 7L).isPresent());
+
+        verify(platformRepository, times(1)).findAll();
+    }
+
+    @Test
+    void testInvalidateReloadsAndNotifiesOtherNodes() {
+        AIPlatform doubao = platform(Platform.DOUBAO, 0L);
+        when(platformRepository.findAll()).thenReturn(Arrays.asList(system, doubao));
+
+        registry.invalidate();
+
+        assertSame(doubao, registry.resolve(Platform.DOUBAO, null).orElseThrow());
+        // 用户配置已删除，回退到系统配置
+        assertSame(system, registry.resolve(Platform.DEEPSEEK, 7L).orElseThrow());
+        ArgumentCaptor<String> sender = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(RedisKeyConstant.PLATFORM_INVALIDATE_CHANNEL), sender.capture());
+
+        // 本节点发出的通知不再重复加载，其他节点的通知触发重新加载
+        registry.onMessage(message(sender.getValue()), null);
+        verify(platformRepository, times(2)).findAll();
+        when(platformRepository.findAll()).thenReturn(Collections.singletonList(system));
+        registry.onMessage(message("other-node"), null);
+        verify(platformRepository, times(3)).findAll();
+        assertFalse(registry.resolve(Platform.DOUBAO, null).isPresent());
+        verify(redisTemplate, times(1)).convertAndSend(anyString(), anyString());
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(RedisKeyConstant.PLATFORM_INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static AIPlatform platform(Platform type, Long userId) {
+        AIPlatform platform = new AIPlatform();
+        platform.setType(type);
+        platform.setUserId(userId);
+        platform.setBaseUrl("https://example.com/v1");
+        platform.setApiKey("key");
+        return platform;
+    }
+}
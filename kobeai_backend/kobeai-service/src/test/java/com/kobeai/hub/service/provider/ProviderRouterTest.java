@@ -0,0 +1,236 @@
+package com.kobeai.hub.service.provider;
+
+import com.kobeai.hub.model.AIPlatform;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.repository.AIPlatformRepository;
+import com.kobeai.hub.service.stream.ProviderStreamClient;
+import com.kobeai.hub.service.stream.StreamListener;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 使用本地模拟的快、慢、故障三个平台验证对冲与失败切换
+ */
+class ProviderRouterTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private ProviderStreamClient client;
+    private SimpleMeterRegistry meterRegistry;
+    private ProviderRouter router;
+    private final AtomicInteger brokenHits = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fast/chat/completions", exchange -> stream(exchange, "fast", 0));
+        server.createContext("/slow/chat/completions", exchange -> stream(exchange, "slow", 2000));
+        server.createContext("/broken/chat/completions", exchange -> {
+            brokenHits.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "{\"error\":\"overloaded\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(503, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        client = new ProviderStreamClient(mock(AIPlatformRepository.class), 2000, 2);
+        ReflectionTestUtils.setField(client, "idleTimeoutMillis", 60000L);
+        ChatProviderRegistry registry = mock(ChatProviderRegistry.class);
+        when(registry.get(any())).thenReturn(new OpenAiCompatibleProvider(Platform.DEEPSEEK, "test", "", "",
+                "test-model", 100, 0.7, false));
+
+        meterRegistry = new SimpleMeterRegistry();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai.limiter.failure-threshold", "3")
+                .withProperty("ai.limiter.open-ms", "60000");
+        router = new ProviderRouter(registry, client, new ProviderLimiter(environment, meterRegistry), meterRegistry);
+        ReflectionTestUtils.setField(router, "window", 64);
+        ReflectionTestUtils.setField(router, "maxErrorRate", 0.5);
+        ReflectionTestUtils.setField(router, "recoveryMillis", 30000L);
+        ReflectionTestUtils.setField(router, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(router, "hedgePercentile", 0.95);
+        ReflectionTestUtils.setField(router, "hedgeMinDelayMillis", 100L);
+        ReflectionTestUtils.setField(router, "hedgeDefaultDelayMillis", 200L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.close();
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void testHedgeWinsWhenPrimaryIsSlow() throws Exception {
+        AIPlatform slow = endpoint(Platform.DEEPSEEK, "slow");
+        AIPlatform fast = endpoint(Platform.CHATGPT, "fast");
+        RecordingListener listener = new RecordingListener();
+
+        RoutedCall call = router.open(Arrays.asList(slow, fast), messages(), true, listener);
+        call.start();
+
+        assertEquals("done", listener.result.get(5, TimeUnit.SECONDS));
+        assertTrue(listener.content.toString().startsWith("{\"choices\""));
+        assertSame(fast, call.getSelected());
+        assertEquals(1.0, meterRegistry.get("ai.router.hedges").counter().count());
+        assertEquals(1.0, meterRegistry.get("ai.router.hedge.wins").counter().count());
+        assertEquals(1, meterRegistry.get("ai.provider.ttft").timer().count());
+    }
+
+    @Test
+    void testFailoverAndRankingAfterErrors() throws Exception {
+        AIPlatform broken = endpoint(Platform.DOUBAO, "broken");
+        AIPlatform fast = endpoint(Platform.CHATGPT, "fast");
+
+        for (int i = 0; i < 8; i++) {
+            RecordingListener listener = new RecordingListener();
+            RoutedCall call = router.open(Arrays.asList(broken, fast), messages(), true, listener);
+            call.start();
+            assertEquals("done", listener.result.get(5, TimeUnit.SECONDS));
+            assertSame(fast, call.getSelected());
+        }
+
+        assertEquals(Arrays.asList(fast, broken), router.rank(Arrays.asList(broken, fast)));
+        // 连续失败后熔断，之后的请求不再发往故障接入点
+        assertTrue(brokenHits.get() < 8);
+    }
+
+    @Test
+    void testErrorIsReportedWithoutFailover() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        router.open(Collections.singletonList(endpoint(Platform.DOUBAO, "broken")), messages(), false, listener)
+                .start();
+
+        assertEquals("http 503", listener.result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testCircuitOpensAfterConsecutiveFailures() throws Exception {
+        AIPlatform broken = endpoint(Platform.DOUBAO, "broken");
+        for (int i = 0; i < 3; i++) {
+            RecordingListener listener = new RecordingListener();
+            router.open(Collections.singletonList(broken), messages(), false, listener).start();
+            assertEquals("http 503", listener.result.get(5, TimeUnit.SECONDS));
+        }
+
+        int hits = brokenHits.get();
+        RecordingListener listener = new RecordingListener();
+        router.open(Collections.singletonList(broken), messages(), false, listener).start();
+
+        assertTrue(listener.result.get(5, TimeUnit.SECONDS).contains("暂停调用"));
+        assertEquals(hits, brokenHits.get());
+        assertEquals(1.0, meterRegistry.get("ai.provider.rejected").tag("reason", "circuit").counter().count());
+        assertEquals(2, meterRegistry.get("ai.provider.circuit.state").gauge().value());
+    }
+
+    @Test
+    void testLocalBuildFailureDoesNotTripCircuit() throws Exception {
+        AIPlatform invalid = endpoint(Platform.CLAUDE, "broken");
+        invalid.setBaseUrl("not a url");
+        for (int i = 0; i < 5; i++) {
+            RecordingListener listener = new RecordingListener();
+            router.open(Collections.singletonList(invalid), messages(), false, listener).start();
+            assertTrue(listener.result.get(5, TimeUnit.SECONDS).startsWith("error"));
+        }
+
+        assertNull(meterRegistry.find("ai.provider.errors").counter());
+        assertNull(meterRegistry.find("ai.provider.rejected").counter());
+        assertEquals(0, meterRegistry.get("ai.provider.circuit.state").gauge().value());
+    }
+
+    @Test
+    void testPlatformTemperatureOverridesDefault() throws Exception {
+        OpenAiCompatibleProvider provider = new OpenAiCompatibleProvider(Platform.DEEPSEEK, "test", "", "",
+                "test-model", 100, 0.7, false);
+        AIPlatform platform = endpoint(Platform.DEEPSEEK, "fast");
+
+        assertEquals(0.7, provider.getTemperature(platform));
+        platform.setTemperature(0.2);
+        assertEquals(0.2, provider.getTemperature(platform));
+        assertTrue(provider.buildRequestBody(platform, messages()).contains("\"temperature\":0.2"));
+    }
+
+    private AIPlatform endpoint(Platform type, String path) {
+        AIPlatform platform = new AIPlatform();
+        platform.setType(type);
+        platform.setApiKey("key");
+        platform.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/" + path);
+        return platform;
+    }
+
+    private static List<Map<String, String>> messages() {
+        return Collections.singletonList(Map.of("role", "user", "content", "hi"));
+    }
+
+    private static void stream(com.sun.net.httpserver.HttpExchange exchange, String name, long delayMillis)
+            throws java.io.IOException {
+        exchange.getRequestBody().readAllBytes();
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            Thread.sleep(delayMillis);
+            String chunk = "data: {\"choices\":[{\"delta\":{\"content\":\"" + name + "\"}}]}\n\n";
+            out.write(chunk.getBytes(StandardCharsets.UTF_8));
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (java.io.IOException e) {
+            // 对冲失败的一路被取消后连接已重置
+        }
+    }
+
+    private static class RecordingListener implements StreamListener {
+
+        private final StringBuilder content = new StringBuilder();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        @Override
+        public synchronized void onData(byte[] buffer, int offset, int length) {
+            content.append(new String(buffer, offset, length, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete("done");
+        }
+
+        @Override
+        public void onHttpError(int statusCode, String body) {
+            result.complete("http " + statusCode);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            result.complete("error " + error.getMessage());
+        }
+    }
+}
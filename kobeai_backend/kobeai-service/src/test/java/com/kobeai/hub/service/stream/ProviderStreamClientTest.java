@@ -0,0 +1,222 @@
+package com.kobeai.hub.service.stream;
+
+import com.kobeai.hub.repository.AIPlatformRepository;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 使用本地模拟的 AI 平台验证共享流式客户端
+ */
+class ProviderStreamClientTest {
+
+    private static final int CHUNKS = 5;
+    private static final int CLIENT_THREADS = 4;
+    // 模拟新建连接的握手耗时（本地回环上 TCP/TLS 握手几乎没有开销）
+    private static final long CONNECT_MILLIS = 200;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final Set<Integer> remotePorts = ConcurrentHashMap.newKeySet();
+    private ProviderStreamClient client;
+    private URI endpoint;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            simulateConnectionSetup(exchange.getRemoteAddress().getPort());
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < CHUNKS; i++) {
+                    String chunk = "data: {\"choices\":[{\"delta\":{\"content\":\"t" + i + "\"}}]}\n\n";
+                    out.write(chunk.getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(20);
+                }
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        // 返回一个 chunk 后不再发送任何字节
+        server.createContext("/v1/silent", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write("data: {\"choices\":[{\"delta\":{\"content\":\"t0\"}}]}\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            try {
+                Thread.sleep(30000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        client = new ProviderStreamClient(mock(AIPlatformRepository.class), 2000, CLIENT_THREADS);
+        ReflectionTestUtils.setField(client, "idleTimeoutMillis", 60000L);
+        endpoint = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions");
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * 首轮请求需先建立连接；之后各轮复用该连接，首 token 耗时不再包含建立连接的时间
+     */
+    @Test
+    void testConnectionIsReusedAcrossTurns() throws Exception {
+        long coldTtft = completeTurn();
+        assertTrue(coldTtft >= CONNECT_MILLIS, "cold ttft=" + coldTtft);
+
+        for (int turn = 1; turn <= 3; turn++) {
+            long warmTtft = completeTurn();
+            assertTrue(warmTtft < CONNECT_MILLIS && warmTtft < coldTtft,
+                    "turn=" + turn + ", warm ttft=" + warmTtft + ", cold ttft=" + coldTtft);
+        }
+
+        // 四轮对话共用同一条连接
+        assertEquals(1, remotePorts.size());
+    }
+
+    /**
+     * 完成一轮对话并等待连接归还连接池
+     *
+     * @return 首 token 耗时（毫秒）
+     */
+    private long completeTurn() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        UpstreamCall call = client.stream(endpoint, "test-key", "{}", listener);
+        assertEquals("t0t1t2t3t4", listener.done.get(5, TimeUnit.SECONDS));
+        // [DONE] 之后响应体读到结尾，响应完成时连接才归还连接池
+        call.responseFuture().get(5, TimeUnit.SECONDS);
+        return TimeUnit.NANOSECONDS.toMillis(listener.firstTokenAt - listener.startedAt);
+    }
+
+    private void simulateConnectionSetup(int remotePort) {
+        if (remotePorts.add(remotePort)) {
+            try {
+                Thread.sleep(CONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentStreamsDoNotParkOneThreadEach() throws Exception {
+        int streams = 100;
+        RecordingListener[] listeners = new RecordingListener[streams];
+        CountDownLatch started = new CountDownLatch(streams);
+        for (int i = 0; i < streams; i++) {
+            listeners[i] = new RecordingListener(started);
+            client.stream(endpoint, "test-key", "{}", listeners[i]);
+        }
+
+        // 所有流都已收到首 token 时统计客户端线程数
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        long clientThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().startsWith("ai-http-"))
+                .count();
+        assertTrue(clientThreads <= CLIENT_THREADS, "client threads=" + clientThreads);
+
+        for (RecordingListener listener : listeners) {
+            assertEquals("t0t1t2t3t4", listener.done.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testCancelStopsDelivery() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        UpstreamCall call = client.stream(endpoint, "test-key", "{}", listener);
+        call.cancel();
+
+        Thread.sleep(CHUNKS * 40L);
+        assertTrue(call.isTerminated());
+        assertFalse(listener.done.isDone());
+    }
+
+    @Test
+    void testSilentUpstreamFailsWithTimeout() throws Exception {
+        ReflectionTestUtils.setField(client, "idleTimeoutMillis", 300L);
+        RecordingListener listener = new RecordingListener();
+        UpstreamCall call = client.stream(URI.create("http://127.0.0.1:" + server.getAddress().getPort()
+                + "/v1/silent"), "test-key", "{}", listener);
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> listener.done.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(UpstreamTimeoutException.class, error.getCause());
+        assertTrue(call.isTerminated());
+        assertEquals("t0", listener.content.toString());
+    }
+
+    private static class RecordingListener implements StreamListener {
+        private final long startedAt = System.nanoTime();
+        private final CountDownLatch firstToken;
+        private volatile long firstTokenAt;
+        private final StringBuilder content = new StringBuilder();
+        private final CompletableFuture<String> done = new CompletableFuture<>();
+
+        RecordingListener() {
+            this(new CountDownLatch(1));
+        }
+
+        RecordingListener(CountDownLatch firstToken) {
+            this.firstToken = firstToken;
+        }
+
+        @Override
+        public void onData(byte[] buffer, int offset, int length) {
+            if (firstTokenAt == 0) {
+                firstTokenAt = System.nanoTime();
+                firstToken.countDown();
+            }
+            String data = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            int start = data.indexOf("\"content\":\"") + 11;
+            content.append(data, start, data.indexOf('"', start));
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(content.toString());
+        }
+
+        @Override
+        public void onHttpError(int statusCode, String body) {
+            done.completeExceptionally(new IllegalStateException(statusCode + ": " + body));
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            done.completeExceptionally(error);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.kobeai.hub.service.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 回复检查点单元测试：按增量数触发、同一消息合并、多条生成批量写入、结束后丢弃、停止时结束进行中的生成与启动时清理遗留
+ */
+class ReplyCheckpointerTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ReplyCheckpointer checkpointer;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai.checkpoint.every-tokens", "2")
+                .withProperty("ai.checkpoint.every-ms", "600000")
+                .withProperty("ai.checkpoint.flush-interval-ms", "600000")
+                .withProperty("ai.checkpoint.stale-after-ms", "90000");
+        checkpointer = new ReplyCheckpointer(jdbcTemplate, environment, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        checkpointer.shutdown();
+    }
+
+    @Test
+    void testCheckpointsFromManyStreamsAreWrittenInOneBatch() {
+        StringBuilder first = new StringBuilder();
+        StringBuilder second = new StringBuilder();
+        ReplyCheckpoint a = checkpointer.open(1L, first::toString);
+        ReplyCheckpoint b = checkpointer.open(2L, second::toString);
+        for (String delta : new String[] { "你", "好", "世", "界" }) {
+            first.append(delta);
+            a.onDelta();
+        }
+        second.append("x");
+        b.onDelta();
+        second.append("y");
+        b.onDelta();
+
+        checkpointer.flush();
+
+        Map<Long, String> written = written(1).get(0);
+        assertEquals(Map.of(1L, "你好世界", 2L, "xy"), written);
+    }
+
+    @Test
+    void testClosedStreamIsNotWritten() {
+        StringBuilder content = new StringBuilder("ab");
+        ReplyCheckpoint checkpoint = checkpointer.open(1L, content::toString);
+        checkpoint.onDelta();
+        checkpoint.onDelta();
+        checkpoint.close();
+
+        checkpointer.flush();
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testShutdownTruncatesOpenStreams() {
+        StringBuilder content = new StringBuilder("部分");
+        ReplyCheckpoint checkpoint = checkpointer.open(7L, content::toString);
+        checkpoint.onDelta();
+
+        checkpointer.shutdown();
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(sql.capture(), rows.capture());
+        assertTrue(sql.getValue().contains("status = 'TRUNCATED'"));
+        assertTrue(sql.getValue().contains("status = 'STREAMING'"));
+        assertEquals("部分", rows.getValue().get(0)[0]);
+        assertEquals(7L, rows.getValue().get(0)[2]);
+    }
+
+    @Test
+    void testStartupFinishesStaleStreamingReplies() {
+        checkpointer.recoverOrphans();
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<LocalDateTime> now = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(jdbcTemplate).update(sql.capture(), now.capture(), cutoff.capture());
+        assertTrue(sql.getValue().contains("WHERE status = 'STREAMING'"));
+        assertTrue(sql.getValue().contains("'TRUNCATED'") && sql.getValue().contains("'ERROR'"));
+        // 只结束长时间未写检查点的消息，时限不小于检查点间隔与写入间隔之和（20 分钟）
+        assertEquals(now.getValue().minusMinutes(20), cutoff.getValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<Long, String>> written(int times) {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(times)).batchUpdate(anyString(), rows.capture());
+        return rows.getAllValues().stream().map(batch -> {
+            Map<Long, String> contents = new HashMap<>();
+            for (Object[] row : batch) {
+                contents.put((Long) row[2], (String) row[0]);
+            }
+            return contents;
+        }).toList();
+    }
+}
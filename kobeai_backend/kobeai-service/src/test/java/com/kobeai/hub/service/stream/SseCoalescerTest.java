@@ -0,0 +1,128 @@
+package com.kobeai.hub.service.stream;
+
+import com.kobeai.hub.model.Platform;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * 合并写出单元测试：一个客户端写出阻塞时，其他流的定时写出不受影响；直通模式原样转发上游负载；
+ * 客户端断开后通知取消生成并停止写出
+ */
+class SseCoalescerTest {
+
+    private static final long MAX_MILLIS = 20;
+
+    private SseCoalescerFactory factory;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai.stream.coalesce.max-chars", "1000")
+                .withProperty("ai.stream.coalesce.max-millis", String.valueOf(MAX_MILLIS))
+                .withProperty("ai.stream.coalesce.flush-threads", "2");
+        factory = new SseCoalescerFactory(environment, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        factory.close();
+    }
+
+    @Test
+    void testBlockedClientDoesNotDelayOtherStreams() throws Exception {
+        CountDownLatch blockedSending = new CountDownLatch(1);
+        ChatEventStream blocked = mock(ChatEventStream.class);
+        doAnswer(invocation -> {
+            blockedSending.countDown();
+            release.await();
+            return null;
+        }).when(blocked).send(anyList());
+        CountDownLatch delivered = new CountDownLatch(1);
+        ChatEventStream healthy = mock(ChatEventStream.class);
+        doAnswer(invocation -> {
+            delivered.countDown();
+            return null;
+        }).when(healthy).send(anyList());
+
+        factory.create(Platform.DEEPSEEK, blocked, null).append("慢");
+        assertTrue(blockedSending.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        factory.create(Platform.DEEPSEEK, healthy, null).append("快");
+        assertTrue(delivered.await(1, TimeUnit.SECONDS), "阻塞的客户端推迟了其他流的写出");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+    }
+
+    @Test
+    void testProducerFlushesWhenDueFlushIsPending() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        ChatEventStream events = mock(ChatEventStream.class);
+        doAnswer(invocation -> {
+            delivered.countDown();
+            return null;
+        }).when(events).send(anyList());
+        SseCoalescer coalescer = factory.create(Platform.DEEPSEEK, events, null);
+        coalescer.append("a");
+        assertTrue(delivered.await(1, TimeUnit.SECONDS));
+        coalescer.close();
+        verify(events, times(1)).send(anyList());
+    }
+
+    @Test
+    void testRelayModeForwardsFramesUnchangedInOneBatch() throws Exception {
+        // 时间阈值足够长，两个负载只会在 close 时一起写出
+        SseCoalescerFactory relayFactory = new SseCoalescerFactory(new MockEnvironment()
+                .withProperty("ai.stream.coalesce.max-chars", "1000")
+                .withProperty("ai.stream.coalesce.max-millis", "60000"), new SimpleMeterRegistry());
+        ChatEventStream events = mock(ChatEventStream.class);
+        SseCoalescer coalescer = relayFactory.create(Platform.DEEPSEEK, events, null);
+        byte[] first = "{\"id\":\"1\",\"choices\":[{\"delta\":{\"content\":\"你\"}}]}".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "{\"id\":\"2\",\"choices\":[{\"delta\":{\"content\":\"好\"}}]}".getBytes(StandardCharsets.UTF_8);
+
+        coalescer.appendFrame(first, 1);
+        coalescer.appendFrame(second, 1);
+        coalescer.close();
+
+        verify(events, times(1)).send(argThat((List<ChatEvent> batch) -> batch.size() == 2
+                && batch.get(0).payload() == first && batch.get(1).payload() == second
+                && "message".equals(batch.get(0).getName())));
+        relayFactory.close();
+    }
+
+    @Test
+    void testTimedWriteFailureReportsDisconnectAndDiscardStopsOutput() throws Exception {
+        ChatEventStream events = mock(ChatEventStream.class);
+        doThrow(new IOException("Broken pipe")).when(events).send(anyList());
+        SseCoalescer coalescer = factory.create(Platform.DEEPSEEK, events, null);
+        CountDownLatch disconnected = new CountDownLatch(1);
+        coalescer.onSendFailure(() -> {
+            // 与生成任务收到断开通知后的处理一致：丢弃缓存，不再写连接
+            coalescer.discard();
+            disconnected.countDown();
+        });
+
+        coalescer.append("a");
+        assertTrue(disconnected.await(1, TimeUnit.SECONDS), "定时写出失败未通知断开");
+
+        coalescer.append("b");
+        coalescer.close();
+        Thread.sleep(MAX_MILLIS * 3);
+        verify(events, times(1)).send(anyList());
+    }
+}
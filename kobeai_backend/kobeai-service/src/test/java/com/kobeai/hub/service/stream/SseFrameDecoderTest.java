@@ -0,0 +1,121 @@
+package com.kobeai.hub.service.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证字节级 SSE 解码与 chunk 解析结果与原先按行 + Map 解析的方式一致
+ */
+class SseFrameDecoderTest {
+
+    private static final String CHUNK = "{\"id\":\"c1\",\"object\":\"chat.completion.chunk\",\"created\":1,"
+            + "\"model\":\"deepseek-chat\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\","
+            + "\"content\":\"你好，\\\"世界\\\"\\n\"},\"logprobs\":null,\"finish_reason\":null}]}";
+    private static final String LAST_CHUNK = "{\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{},"
+            + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":34,"
+            + "\"total_tokens\":46,\"prompt_tokens_details\":{\"cached_tokens\":0}}}";
+
+    private final ChatChunkParser parser = new ChatChunkParser();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testParserMatchesMapBasedExtraction() throws Exception {
+        Map<String, Object> response = new ObjectMapper().readValue(CHUNK, Map.class);
+        List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
+        Map<String, String> delta = (Map<String, String>) choices.get(0).get("delta");
+
+        byte[] bytes = CHUNK.getBytes(StandardCharsets.UTF_8);
+        ChatChunk chunk = parser.parse(bytes, 0, bytes.length, new ChatChunk());
+        assertEquals(delta.get("content"), chunk.getContent());
+        assertNull(chunk.getFinishReason());
+        assertFalse(chunk.hasUsage());
+    }
+
+    @Test
+    void testParserExtractsFinishReasonAndUsage() throws Exception {
+        byte[] bytes = LAST_CHUNK.getBytes(StandardCharsets.UTF_8);
+        ChatChunk chunk = parser.parse(bytes, 0, bytes.length, new ChatChunk());
+        assertNull(chunk.getContent());
+        assertEquals("stop", chunk.getFinishReason());
+        assertTrue(chunk.hasUsage());
+        assertEquals(12, chunk.getPromptTokens());
+        assertEquals(34, chunk.getCompletionTokens());
+        assertEquals(46, chunk.getTotalTokens());
+        assertEquals(0, chunk.getCacheHitTokens());
+
+        // DeepSeek 的前缀缓存命中数
+        byte[] deepSeekUsage = ("{\"choices\":[],\"usage\":{\"prompt_tokens\":100,\"completion_tokens\":5,"
+                + "\"prompt_cache_hit_tokens\":64,\"prompt_cache_miss_tokens\":36}}").getBytes(StandardCharsets.UTF_8);
+        parser.parse(deepSeekUsage, 0, deepSeekUsage.length, chunk);
+        assertEquals(100, chunk.getPromptTokens());
+        assertEquals(64, chunk.getCacheHitTokens());
+    }
+
+    @Test
+    void testDecoderHandlesFramesSplitAcrossBuffers() {
+        String body = ": keep-alive\r\n\r\n"
+                + "data: " + CHUNK + "\r\n\r\n"
+                + "data:" + LAST_CHUNK + "\n\n"
+                + "data: [DONE]\n\n";
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        // 按不同步长切分投递，覆盖行和 UTF-8 字符跨 ByteBuffer 的情况
+        for (int step : new int[] { 1, 7, bytes.length }) {
+            CollectingListener listener = new CollectingListener();
+            SseFrameDecoder decoder = new SseFrameDecoder(new UpstreamCall(listener));
+            decoder.onSubscribe(new NoopSubscription());
+            for (int i = 0; i < bytes.length; i += step) {
+                int end = Math.min(bytes.length, i + step);
+                decoder.onNext(List.of(ByteBuffer.wrap(bytes, i, end - i)));
+            }
+            decoder.onComplete();
+
+            assertEquals(List.of(CHUNK, LAST_CHUNK), listener.events, "step=" + step);
+            assertEquals(1, listener.completions, "step=" + step);
+        }
+    }
+
+    private static class CollectingListener implements StreamListener {
+        private final List<String> events = new ArrayList<>();
+        private int completions;
+
+        @Override
+        public void onData(byte[] buffer, int offset, int length) {
+            events.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void onComplete() {
+            completions++;
+        }
+
+        @Override
+        public void onHttpError(int statusCode, String body) {
+            fail("unexpected http error " + statusCode);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            fail(error);
+        }
+    }
+
+    private static class NoopSubscription implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.kobeai.hub.service.stream;
+
+import com.kobeai.hub.constant.RedisKeyConstant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 流式输出日志单元测试：Redis 写入阻塞时输出不等待，慢的续传客户端不影响其他续传
+ */
+class StreamJournalTest {
+
+    private StringRedisTemplate redisTemplate;
+    private StreamJournal journal;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        journal = new StreamJournal(redisTemplate, 1, 2, 16);
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "pollIntervalMillis", 20L);
+        ReflectionTestUtils.setField(journal, "graceMillis", 1000L);
+        ReflectionTestUtils.setField(journal, "idleTimeoutMillis", 60000L);
+        ReflectionTestUtils.setField(journal, "maxLength", 4096L);
+        ReflectionTestUtils.setField(journal, "ttlSeconds", 600L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        journal.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSendDoesNotWaitForRedis() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return null;
+        });
+        SseEmitter emitter = mock(SseEmitter.class);
+        ChatEventStream events = journal.open(emitter, 1L);
+
+        events.send(ChatEvent.of("message", "a"));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            events.send(ChatEvent.of("message", "b"));
+        }
+        events.complete();
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        verify(emitter, times(101)).send(anySet());
+        verify(emitter).complete();
+        assertTrue(events.isResumable());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBlockedResumeClientDoesNotDelayOtherSessions() throws Exception {
+        when(redisTemplate.opsForValue()).thenReturn(mock(ValueOperations.class));
+        StreamOperations<String, Object, Object> streams = mock(StreamOperations.class);
+        when(redisTemplate.opsForStream()).thenReturn((StreamOperations) streams);
+        when(redisTemplate.hasKey(anyString())).thenReturn(true);
+        when(streams.range(eq(RedisKeyConstant.CHAT_STREAM_KEY + 1L), any(Range.class), any(Limit.class)))
+                .thenReturn(List.of(record(1L, "message")));
+        when(streams.range(eq(RedisKeyConstant.CHAT_STREAM_KEY + 2L), any(Range.class), any(Limit.class)))
+                .thenReturn(List.of(record(2L, "done")));
+
+        CountDownLatch blockedSending = new CountDownLatch(1);
+        SseEmitter blocked = mock(SseEmitter.class);
+        doAnswer(invocation -> {
+            blockedSending.countDown();
+            release.await();
+            return null;
+        }).when(blocked).send(anySet());
+        journal.resume(blocked, 1L, 0);
+        assertTrue(blockedSending.await(5, TimeUnit.SECONDS));
+
+        SseEmitter healthy = mock(SseEmitter.class);
+        journal.resume(healthy, 2L, 0);
+        verify(healthy, timeout(1000)).complete();
+        // 阻塞中的续传连接不会重复提交轮询
+        verify(blocked, times(1)).send(anySet());
+    }
+
+    private static MapRecord<String, Object, Object> record(Long messageId, String event) {
+        return StreamRecords.newRecord()
+                .in(RedisKeyConstant.CHAT_STREAM_KEY + messageId)
+                .withId(RecordId.of(0, 1))
+                .ofMap(Map.<Object, Object>of("e", event, "d", "x"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.kobeai.hub.service.tokenizer;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.kobeai.hub.model.Platform;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分词器单元测试：分段缓存后的结果必须与直接整段编码一致
+ */
+class TokenizerTest {
+
+    static final List<String> SAMPLES = Arrays.asList(
+            "请介绍一下如何在 Spring Boot 项目中配置 Redis 连接池，并给出示例代码。",
+            "It's a well-known fact: don't re-tokenize what you've already counted!",
+            "```java\npublic int count(String text) {\n    return text == null ? 0 : text.length();\n}\n```",
+            "订单号 20240315-0042 的金额为 ¥1,234.56，请在 3 天内（含周末）完成支付。",
+            "  多个   空格\t和\n\n换行  混合 text   with\r\ntrailing spaces   ",
+            "URL: https://api.deepseek.com/v1/chat/completions?stream=true&max_tokens=2000",
+            "naïve café — ÜBER straße, 東京タワー와 서울 😀 emoji 🚀🚀",
+            "camelCaseIdentifier, snake_case_name, SCREAMING_CASE and kebab-case-words");
+
+    @Test
+    void testCountsMatchWholeTextEncoding() {
+        for (EncodingType type : Arrays.asList(EncodingType.CL100K_BASE, EncodingType.O200K_BASE)) {
+            Encoding reference = Encodings.newLazyEncodingRegistry().getEncoding(type);
+            CachedEncoding cached = new CachedEncoding(reference, 1024);
+            for (String sample : SAMPLES) {
+                assertEquals(reference.countTokensOrdinary(sample), cached.count(sample), type + ": " + sample);
+                // 第二次全部命中缓存，结果不变
+                assertEquals(reference.countTokensOrdinary(sample), cached.count(sample), type + ": " + sample);
+                assertArrayEquals(reference.encodeOrdinary(sample).toArray(), cached.encode(sample));
+            }
+        }
+    }
+
+    @Test
+    void testSmallCacheEvictsWithoutChangingResults() {
+        Encoding reference = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.O200K_BASE);
+        CachedEncoding cached = new CachedEncoding(reference, 2);
+        String text = String.join(" ", SAMPLES);
+        assertEquals(reference.countTokensOrdinary(text), cached.count(text));
+        assertEquals(reference.countTokensOrdinary(text), cached.count(text));
+    }
+
+    @Test
+    void testPlatformEncodingOverride() {
+        Tokenizer tokenizer = new Tokenizer(new MockEnvironment()
+                .withProperty("ai.tokenizer.encoding", "o200k_base")
+                .withProperty("ai.tokenizer.chatgpt.encoding", "cl100k_base"));
+        Encoding cl100k = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+        Encoding o200k = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.O200K_BASE);
+        String text = SAMPLES.get(0);
+
+        assertEquals(cl100k.countTokensOrdinary(text), tokenizer.count(Platform.CHATGPT, text));
+        assertEquals(o200k.countTokensOrdinary(text), tokenizer.count(Platform.DEEPSEEK, text));
+        assertEquals(o200k.countTokensOrdinary(text), tokenizer.count(null, text));
+        assertEquals(0, tokenizer.count(""));
+    }
+}
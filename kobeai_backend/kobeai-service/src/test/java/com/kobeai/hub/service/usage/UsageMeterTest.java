@@ -0,0 +1,143 @@
+package com.kobeai.hub.service.usage;
+
+import com.kobeai.hub.constant.UserRole;
+import com.kobeai.hub.model.Platform;
+import com.kobeai.hub.model.User;
+import com.kobeai.hub.repository.TokenUsageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 用量统计单元测试：每日额度、批量写入与刷新和写入并发
+ */
+class UsageMeterTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TokenUsageRepository repository;
+    private UsageMeter meter;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        repository = mock(TokenUsageRepository.class);
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai.usage.flush-interval-ms", "3600000")
+                .withProperty("ai.usage.daily-quota.normal", "1000");
+        meter = new UsageMeter(jdbcTemplate, repository, environment, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        reset(jdbcTemplate);
+        meter.close();
+    }
+
+    @Test
+    void testReserveFailsOnceQuotaIsUsed() {
+        when(repository.sumTokens(eq(1L), any(LocalDate.class))).thenReturn(900L);
+        UsageAllowance allowance = meter.open(user(1L, UserRole.NORMAL));
+
+        assertFalse(allowance.isExhausted());
+        assertTrue(allowance.reserve(80));
+        assertFalse(allowance.reserve(30));
+
+        allowance.record(Platform.DEEPSEEK, 50, 60, -1);
+        assertTrue(meter.open(user(1L, UserRole.NORMAL)).isExhausted());
+    }
+
+    @Test
+    void testUnlimitedRoleIsNeverExhausted() {
+        when(repository.sumTokens(eq(2L), any(LocalDate.class))).thenReturn(1_000_000L);
+        UsageAllowance allowance = meter.open(user(2L, UserRole.ADMIN));
+
+        assertFalse(allowance.isExhausted());
+        assertTrue(allowance.reserve(10_000));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedFlushIsRetried() {
+        meter.open(user(1L, UserRole.NORMAL)).record(Platform.DEEPSEEK, 10, 20, 4);
+        meter.open(user(1L, UserRole.NORMAL)).record(Platform.DEEPSEEK, 1, 2, -1);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new RuntimeException("db down"))
+                .thenReturn(new int[] { 1 });
+
+        meter.flush();
+        meter.flush();
+
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), anyList());
+        List<Object[]> rows = (List<Object[]>) mockingDetails(jdbcTemplate).getInvocations().stream()
+                .reduce((first, second) -> second).orElseThrow().getArgument(1);
+        assertEquals(1, rows.size());
+        assertEquals(11L, rows.get(0)[3]);
+        assertEquals(22L, rows.get(0)[4]);
+        assertEquals(2L, rows.get(0)[5]);
+        assertEquals(4L, rows.get(0)[6]);
+        assertEquals(6L, rows.get(0)[7]);
+    }
+
+    @Test
+    void testRefreshDuringFlushDoesNotCountTokensTwice() throws Exception {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("ai.usage.flush-interval-ms", "3600000")
+                .withProperty("ai.usage.refresh-ms", "0")
+                .withProperty("ai.usage.daily-quota.normal", "1000");
+        UsageMeter refreshing = new UsageMeter(jdbcTemplate, repository, environment, new SimpleMeterRegistry());
+        try {
+            when(repository.sumTokens(eq(3L), any(LocalDate.class))).thenReturn(0L);
+            refreshing.open(user(3L, UserRole.NORMAL)).record(Platform.DEEPSEEK, 300, 300, -1);
+
+            // 刷新在写入提交之后读取，但在写入方调整内存计数之前完成
+            CountDownLatch committed = new CountDownLatch(1);
+            CountDownLatch refreshed = new CountDownLatch(1);
+            when(repository.sumTokens(eq(3L), any(LocalDate.class))).thenAnswer(invocation -> {
+                committed.await(5, TimeUnit.SECONDS);
+                return 600L;
+            });
+            when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+                committed.countDown();
+                refreshed.await(5, TimeUnit.SECONDS);
+                return new int[] { 1 };
+            });
+            Thread reader = new Thread(() -> {
+                refreshing.open(user(3L, UserRole.NORMAL));
+                refreshed.countDown();
+            });
+            reader.start();
+            refreshing.flush();
+            reader.join(5000);
+
+            // 实际用量 600，重复计入时为 1200；不再刷新，检查内存中的计数
+            when(repository.sumTokens(eq(3L), any(LocalDate.class))).thenThrow(new RuntimeException("db down"));
+            UsageAllowance allowance = refreshing.open(user(3L, UserRole.NORMAL));
+            assertFalse(allowance.isExhausted());
+            assertTrue(allowance.reserve(399));
+        } finally {
+            reset(jdbcTemplate);
+            refreshing.close();
+        }
+    }
+
+    private static User user(Long id, UserRole role) {
+        User user = new User();
+        user.setId(id);
+        user.setUserRole(role);
+        return user;
+    }
+}
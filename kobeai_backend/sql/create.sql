@@ -79,11 +79,15 @@ create table notifications
 -- 消息表
 create table messages
 (
-    id              bigint auto_increment
+    id              bigint not null comment '由应用按时间递增分配（Snowflake）'
         primary key,
     content         text                 null,
     created_at      datetime(6)          null,
     role            varchar(255)         null,
+    status          varchar(16)          null comment 'COMPLETED/TRUNCATED/ERROR/STREAMING',
+    token_count     int                  null comment '消息内容的 token 数',
+    cache_hit_tokens  int                null comment '提示词命中平台前缀缓存的 token 数',
+    cache_miss_tokens int                null comment '提示词未命中平台前缀缓存的 token 数',
     conversation_id bigint               not null,
     sender_id       bigint               not null,
     is_deleted      tinyint(1) default 0 not null,
@@ -93,15 +97,26 @@ create table messages
 )
     charset = utf8mb4;
 
+-- 启动时按状态查找遗留的生成中回复
+create index idx_messages_status
+    on messages (status);
+
 -- 会话表
 create table conversations
 (
-    id          bigint auto_increment
+    id               bigint not null comment '由应用按时间递增分配（Snowflake）'
         primary key,
-    created_at  datetime(6)  null,
-    title       varchar(255) null,
-    platform_id bigint       not null,
-    user_id     bigint       not null,
+    created_at       datetime(6)  null,
+    title            varchar(255) null,
+    token_count      bigint       default 0 null comment '各消息 token 数之和',
+    usage_tokens     bigint       default 0 null comment '平台计费 token 累计',
+    summary          text         null comment '早期对话的滚动摘要',
+    summary_version  int          default 0 null comment '摘要版本号',
+    summary_until_id bigint       null comment '已并入摘要的最后一条消息 ID',
+    summary_tokens   int          null comment '摘要的 token 数',
+    message_count    int          null comment '消息数，为空表示未统计',
+    platform_id      bigint       not null,
+    user_id          bigint       not null,
     constraint FK8uurqd0mfocwdvi6t3wkclmdt
         foreign key (platform_id) references ai_platforms (id),
     constraint FKpltqvfcbkql9svdqwh0hw4g1d
@@ -119,6 +134,7 @@ create table ai_platforms
     base_url    varchar(255)               null,
     created_at  datetime(6)                null,
     enabled     bit                        not null,
+    stream_relay bit          default b'0' not null comment '流式直通模式，上游 data 负载原样转发',
     name        varchar(255)               not null,
     type        varchar(255)               not null,
     description varchar(255)               not null,
@@ -132,3 +148,21 @@ create table ai_platforms
 create index fk_user_id
     on ai_platforms (user_id);
 
+-- 用户每日 token 用量表（按平台分行，内存聚合后批量累加）
+create table token_usage
+(
+    id                bigint auto_increment
+        primary key,
+    user_id           bigint           not null,
+    platform          varchar(32)      not null,
+    usage_date        date             not null,
+    prompt_tokens     bigint default 0 not null,
+    completion_tokens bigint default 0 not null,
+    request_count     bigint default 0 not null,
+    cache_hit_tokens  bigint default 0 not null comment '提示词命中平台前缀缓存的 token 数',
+    cache_miss_tokens bigint default 0 not null comment '提示词未命中平台前缀缓存的 token 数',
+    updated_at        datetime(6)      null,
+    constraint uk_token_usage_user_platform_date
+        unique (user_id, platform, usage_date)
+)
+    charset = utf8mb4;